@@ -5,6 +5,7 @@ import com.danieldigiovanni.email.auth.dto.LoginRequest;
 import com.danieldigiovanni.email.auth.dto.RegisterRequest;
 import com.danieldigiovanni.email.customer.Customer;
 import com.danieldigiovanni.email.customer.CustomerRepository;
+import com.danieldigiovanni.email.datasource.ReadRouting;
 import jakarta.persistence.EntityExistsException;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.ValidationException;
@@ -23,6 +24,7 @@ import java.util.Optional;
 public class AuthService {
 
     private final CustomerRepository customerRepository;
+    private final ReadRouting readRouting;
     private final PasswordEncoder passwordEncoder;
     private final AuthenticationManager authenticationManager;
     private final AuthUtils authUtils;
@@ -33,6 +35,7 @@ public class AuthService {
     @Autowired
     public AuthService(
         CustomerRepository customerRepository,
+        ReadRouting readRouting,
         PasswordEncoder passwordEncoder,
         AuthenticationManager authenticationManager,
         AuthUtils authUtils,
@@ -41,6 +44,7 @@ public class AuthService {
         @Value("${token-secret-key}") String tokenSecretKey
     ) {
         this.customerRepository = customerRepository;
+        this.readRouting = readRouting;
         this.passwordEncoder = passwordEncoder;
         this.authenticationManager = authenticationManager;
         this.authUtils = authUtils;
@@ -50,8 +54,9 @@ public class AuthService {
     }
 
     public AuthResponse register(@RequestBody RegisterRequest registerRequest) throws EntityExistsException, ValidationException {
-        Optional<Customer> existingCustomer =
-            this.customerRepository.findByEmail(registerRequest.getEmail());
+        Optional<Customer> existingCustomer = this.readRouting.onPrimary(() ->
+            this.customerRepository.findByEmail(registerRequest.getEmail())
+        );
 
         if (existingCustomer.isPresent()) {
             throw new EntityExistsException(
@@ -103,20 +108,25 @@ public class AuthService {
     }
 
     public AuthResponse login(@RequestBody LoginRequest loginRequest) {
-        Customer customer = this.customerRepository
-            .findByEmail(loginRequest.getEmail())
-            .orElseThrow(() -> new EntityNotFoundException(
-                "Customer with email "
-                    + loginRequest.getEmail()
-                    + " does not exist"
-            ));
-
-        this.authenticationManager.authenticate(
-            new UsernamePasswordAuthenticationToken(
-                Long.toString(customer.getId()),
-                loginRequest.getPassword()
-            )
-        );
+        // The password is checked against the primary, so that a changed
+        // password takes effect immediately
+        Customer customer = this.readRouting.onPrimary(() -> {
+            Customer existingCustomer = this.customerRepository
+                .findByEmail(loginRequest.getEmail())
+                .orElseThrow(() -> new EntityNotFoundException(
+                    "Customer with email "
+                        + loginRequest.getEmail()
+                        + " does not exist"
+                ));
+
+            this.authenticationManager.authenticate(
+                new UsernamePasswordAuthenticationToken(
+                    Long.toString(existingCustomer.getId()),
+                    loginRequest.getPassword()
+                )
+            );
+            return existingCustomer;
+        });
 
         customer.setLastLogin(new Date());
         customer = this.customerRepository.save(customer);
@@ -2,6 +2,7 @@ package com.danieldigiovanni.email.auth;
 
 import com.danieldigiovanni.email.customer.Customer;
 import com.danieldigiovanni.email.customer.CustomerRepository;
+import com.danieldigiovanni.email.datasource.ReadRouting;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -11,17 +12,23 @@ import org.springframework.stereotype.Service;
 public class CustomerDetailsService implements UserDetailsService {
 
     private final CustomerRepository customerRepository;
+    private final ReadRouting readRouting;
 
     @Autowired
-    public CustomerDetailsService(CustomerRepository customerRepository) {
+    public CustomerDetailsService(CustomerRepository customerRepository, ReadRouting readRouting) {
         this.customerRepository = customerRepository;
+        this.readRouting = readRouting;
     }
 
     @Override
     public CustomerDetails loadUserByUsername(String username) throws UsernameNotFoundException, NumberFormatException {
         Long customerId = Long.valueOf(username);
 
+        // A customer that just registered may not be on the read replica yet
         Customer customer = this.customerRepository.findById(customerId)
+            .or(() -> this.readRouting.onPrimary(() ->
+                this.customerRepository.findById(customerId)
+            ))
             .orElseThrow(() ->
                 new UsernameNotFoundException("Customer not found")
             );
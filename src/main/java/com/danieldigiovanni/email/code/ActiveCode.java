@@ -0,0 +1,36 @@
+package com.danieldigiovanni.email.code;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.Date;
+
+/**
+ * The slot for the active code of an email.
+ * <p>
+ * The email is the primary key, so the database guarantees that an email has
+ * at most one active code, even when codes are sent to it concurrently. A slot
+ * is claimed when a code is sent, and released when the code is fulfilled or
+ * exhausted. The slot of an expired code is taken over by the next code sent
+ * to the email.
+ */
+@Entity
+public class ActiveCode {
+
+    @Id
+    private String email;
+    @NotNull
+    private Date expiresAt;
+
+    public ActiveCode() { }
+
+    public String getEmail() {
+        return this.email;
+    }
+
+    public Date getExpiresAt() {
+        return this.expiresAt;
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.danieldigiovanni.email.code;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory cache of active codes, keyed by email.
+ * <p>
+ * Most verifications happen within minutes of the code being sent, so the
+ * code is cached when it is sent and the verification is served from memory.
+ * Entries are removed as soon as the code is no longer active (fulfilled,
+ * exhausted, or expired), so a cache hit is always an active code.
+ * <p>
+ * The cache holds at most {@code code.cache.maximum-size} entries. When it is
+ * full, expired entries are evicted, and if it is still full the new code is
+ * simply not cached (the database remains the source of truth).
+ * <p>
+ * The cache is local to this instance. When running several instances, each
+ * verification must still be checked against the database before it is
+ * committed.
+ */
+@Component
+public class ActiveCodeCache implements MeterBinder {
+
+    private final Map<String, Code> codes = new ConcurrentHashMap<>();
+    private final int maximumSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    @Autowired
+    public ActiveCodeCache(@Value("${code.cache.maximum-size}") int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Gets the active code of an email from the cache.
+     *
+     * @param email The email whose active code is being looked up.
+     *
+     * @return The active code, or an empty optional if the email has no
+     * cached active code.
+     */
+    public Optional<Code> get(String email) {
+        Code code = this.codes.get(email);
+
+        if (code == null) {
+            this.misses.increment();
+            return Optional.empty();
+        }
+
+        if (!code.isActive()) {
+            if (this.codes.remove(email, code)) {
+                this.evictions.increment();
+            }
+            this.misses.increment();
+            return Optional.empty();
+        }
+
+        this.hits.increment();
+        return Optional.of(code);
+    }
+
+    /**
+     * Caches a code, or removes the cached code of its email if the code is no
+     * longer active.
+     *
+     * @param code The code to be cached.
+     */
+    public void put(Code code) {
+        if (!code.isActive()) {
+            this.remove(code.getEmail());
+            return;
+        }
+
+        if (this.codes.size() >= this.maximumSize
+            && !this.codes.containsKey(code.getEmail())) {
+            this.evictExpired();
+
+            if (this.codes.size() >= this.maximumSize) {
+                this.rejections.increment();
+                return;
+            }
+        }
+
+        this.codes.put(code.getEmail(), code);
+    }
+
+    /**
+     * Removes the cached code of an email.
+     *
+     * @param email The email whose code is removed.
+     */
+    public void remove(String email) {
+        this.codes.remove(email);
+    }
+
+    /**
+     * Evicts all codes that are no longer active.
+     * <p>
+     * Runs periodically so that expired codes that are never looked up again
+     * do not stay in memory.
+     */
+    @Scheduled(fixedDelayString = "${code.cache.sweep-interval-millis}")
+    public void evictExpired() {
+        this.codes.forEach((email, code) -> {
+            if (!code.isActive() && this.codes.remove(email, code)) {
+                this.evictions.increment();
+            }
+        });
+    }
+
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+        Gauge.builder("code.cache.size", this.codes, Map::size)
+            .description("Number of cached active codes")
+            .register(registry);
+        FunctionCounter.builder("code.cache.hits", this.hits, LongAdder::sum)
+            .description("Active code lookups served from the cache")
+            .register(registry);
+        FunctionCounter.builder("code.cache.misses", this.misses, LongAdder::sum)
+            .description("Active code lookups not found in the cache")
+            .register(registry);
+        FunctionCounter.builder("code.cache.evictions", this.evictions, LongAdder::sum)
+            .description("Codes evicted from the cache because they expired")
+            .register(registry);
+        FunctionCounter.builder("code.cache.rejections", this.rejections, LongAdder::sum)
+            .description("Codes not cached because the cache was full")
+            .register(registry);
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.danieldigiovanni.email.code;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.Date;
+
+public interface ActiveCodeRepository extends JpaRepository<ActiveCode, String> {
+
+    /**
+     * Claims the active code slot of an email.
+     * <p>
+     * The slot is taken over if the code holding it expired, or created if the
+     * email has no slot. Must be called in the transaction that saves the
+     * code, so the slot is released if the code is not saved.
+     *
+     * @param email     The email whose slot is claimed.
+     * @param expiresAt The expiry of the new code.
+     * @param now       The current date.
+     *
+     * @return True if the slot was claimed, false if the email already has an
+     * active code.
+     *
+     * @throws DataIntegrityViolationException If another transaction created
+     *                                         the slot concurrently.
+     */
+    default boolean claim(String email, Date expiresAt, Date now) {
+        return this.takeOverExpired(email, expiresAt, now) == 1
+            || this.insertIfAbsent(email, expiresAt) == 1;
+    }
+
+    @Modifying
+    @Query("""
+        update ActiveCode a
+        set a.expiresAt = :expiresAt
+        where a.email = :email
+            and a.expiresAt <= :now
+        """)
+    int takeOverExpired(@Param("email") String email, @Param("expiresAt") Date expiresAt, @Param("now") Date now);
+
+    @Modifying
+    @Query(nativeQuery = true, value = """
+        insert into active_code (email, expires_at)
+        select :email, :expiresAt from dual
+        where not exists (select 1 from active_code where email = :email)
+        """)
+    int insertIfAbsent(@Param("email") String email, @Param("expiresAt") Date expiresAt);
+
+    /**
+     * Releases the active code slot of an email, unless the email still has
+     * an active code.
+     *
+     * @param email The email whose slot is released.
+     * @param now   The current date.
+     *
+     * @return The number of slots released.
+     */
+    @Modifying
+    @Query("""
+        delete from ActiveCode a
+        where a.email = :email
+            and not exists (
+                select c.id from Code c
+                where c.email = :email
+                    and c.status = com.danieldigiovanni.email.code.CodeStatus.ACTIVE
+                    and c.expiresAt > :now
+            )
+        """)
+    int release(@Param("email") String email, @Param("now") Date now);
+
+    @Modifying
+    @Query("delete from ActiveCode a where a.email in :emails")
+    int deleteByEmailIn(@Param("emails") Collection<String> emails);
+
+}
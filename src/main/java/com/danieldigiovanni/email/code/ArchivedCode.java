@@ -0,0 +1,89 @@
+package com.danieldigiovanni.email.code;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.Date;
+
+/**
+ * A code that is no longer active, moved out of the {@link Code} table by the
+ * {@link CodeArchiver}.
+ * <p>
+ * Archived codes keep the id of the original code, and everything needed to
+ * audit it except for its hash, since it can never be verified again.
+ */
+@Entity
+public class ArchivedCode {
+
+    @Id
+    private Long id;
+    private Long customerId;
+    @NotNull
+    private String email;
+    @NotNull
+    private Date createdAt;
+    private Date expiresAt;
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private CodeStatus status;
+    private Date fulfilledAt;
+    @NotNull
+    private Integer incorrectAttempts;
+    @NotNull
+    private Integer maximumAttempts;
+    @NotNull
+    private Integer maximumDurationInMinutes;
+    @NotNull
+    private Date archivedAt;
+
+    public ArchivedCode() { }
+
+    public Long getId() {
+        return this.id;
+    }
+
+    public Long getCustomerId() {
+        return this.customerId;
+    }
+
+    public String getEmail() {
+        return this.email;
+    }
+
+    public Date getCreatedAt() {
+        return this.createdAt;
+    }
+
+    public Date getExpiresAt() {
+        return this.expiresAt;
+    }
+
+    public CodeStatus getStatus() {
+        return this.status;
+    }
+
+    public Date getFulfilledAt() {
+        return this.fulfilledAt;
+    }
+
+    public Integer getIncorrectAttempts() {
+        return this.incorrectAttempts;
+    }
+
+    public Integer getMaximumAttempts() {
+        return this.maximumAttempts;
+    }
+
+    public Integer getMaximumDurationInMinutes() {
+        return this.maximumDurationInMinutes;
+    }
+
+    public Date getArchivedAt() {
+        return this.archivedAt;
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.danieldigiovanni.email.code;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.Date;
+
+public interface ArchivedCodeRepository extends JpaRepository<ArchivedCode, Long> {
+
+    /**
+     * Copies codes into the archive.
+     * <p>
+     * Must be called in the same transaction as
+     * {@link CodeRepository#deleteByIdIn(Collection)} for the same ids, so a
+     * code is never in both tables or in neither.
+     *
+     * @param ids        The ids of the codes to archive.
+     * @param archivedAt The date at which the codes are archived.
+     *
+     * @return The number of codes archived.
+     */
+    @Modifying
+    @Query("""
+        insert into ArchivedCode (
+            id, customerId, email, createdAt, expiresAt, status, fulfilledAt,
+            incorrectAttempts, maximumAttempts, maximumDurationInMinutes,
+            archivedAt
+        )
+        select c.id, c.customerId, c.email, c.createdAt, c.expiresAt,
+            c.status, c.fulfilledAt, c.incorrectAttempts, c.maximumAttempts,
+            c.maximumDurationInMinutes, :archivedAt
+        from Code c
+        where c.id in :ids
+        """)
+    int archive(@Param("ids") Collection<Long> ids, @Param("archivedAt") Date archivedAt);
+
+}
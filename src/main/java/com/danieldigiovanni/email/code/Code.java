@@ -1,33 +1,49 @@
 package com.danieldigiovanni.email.code;
 
-import com.danieldigiovanni.email.customer.Customer;
+import com.danieldigiovanni.email.id.SnowflakeId;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.Id;
-import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import jakarta.validation.constraints.NotNull;
-import org.hibernate.annotations.OnDelete;
-import org.hibernate.annotations.OnDeleteAction;
 
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
 
 @Entity
+@Table(indexes = {
+    @Index(
+        name = "idx_code_active_lookup",
+        columnList = "email, customerId, status, expiresAt"
+    )
+})
 public class Code {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
-    @ManyToOne
-    @OnDelete(action = OnDeleteAction.CASCADE)
-    private Customer customer;
+    /**
+     * The customer that sent the code. Codes may be on another shard than
+     * their customer, so this is not a foreign key.
+     */
+    private Long customerId;
     @NotNull
     private String email;
-    @NotNull
+    /**
+     * BCrypt hash of codes created before {@link #digest} was introduced.
+     */
     private String hash;
+    @Column(length = HmacSha256CodeHasher.DIGEST_LENGTH)
+    private byte[] digest;
     @NotNull
     private Date createdAt;
+    private Date expiresAt;
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private CodeStatus status;
     private Date fulfilledAt;
     @NotNull
     private Integer incorrectAttempts = 0;
@@ -39,12 +55,17 @@ public class Code {
     public Code() { }
 
     private Code(CodeBuilder codeBuilder) {
-        this.customer = codeBuilder.customer;
+        this.customerId = codeBuilder.customerId;
         this.email = codeBuilder.email;
-        this.hash = codeBuilder.hash;
+        this.digest = codeBuilder.digest;
         this.createdAt = codeBuilder.createdAt;
         this.maximumAttempts = codeBuilder.maximumAttempts;
         this.maximumDurationInMinutes = codeBuilder.maximumDurationInMinutes;
+        this.expiresAt = new Date(
+            this.createdAt.getTime()
+                + TimeUnit.MINUTES.toMillis(this.maximumDurationInMinutes)
+        );
+        this.status = CodeStatus.ACTIVE;
     }
 
     public static CodeBuilder builder() {
@@ -61,9 +82,28 @@ public class Code {
      *     <li>and is not already fulfilled.</li>
      * </ul>
      *
+     * The same check is done in the database by
+     * {@link CodeRepository#findActiveCodeByEmail(String)}, using the persisted
+     * {@link #status} and {@link #expiresAt}.
+     *
      * @return True if the code is active.
      */
     public boolean isActive() {
+        if (this.status == null || this.expiresAt == null) {
+            return this.isActiveLegacy();
+        }
+
+        return this.status == CodeStatus.ACTIVE
+            && this.expiresAt.after(new Date());
+    }
+
+    /**
+     * Checks if a code created before {@link #status} and {@link #expiresAt}
+     * were persisted is active.
+     *
+     * @return True if the code is active.
+     */
+    private boolean isActiveLegacy() {
         boolean codeIsExpired = TimeUnit.MILLISECONDS.toMinutes(
             new Date().getTime() - this.createdAt.getTime()
         ) >= this.maximumDurationInMinutes;
@@ -76,13 +116,6 @@ public class Code {
         return !codeIsFulFilled && !codeIsExpired && !maximumAttemptsReached;
     }
 
-    /**
-     * Increments the number of incorrect attempts by one.
-     */
-    public void incrementIncorrectAttempts() {
-        this.incorrectAttempts++;
-    }
-
     public Long getId() {
         return this.id;
     }
@@ -91,12 +124,12 @@ public class Code {
         this.id = id;
     }
 
-    public Customer getCustomer() {
-        return this.customer;
+    public Long getCustomerId() {
+        return this.customerId;
     }
 
-    public void setCustomer(Customer customer) {
-        this.customer = customer;
+    public void setCustomerId(Long customerId) {
+        this.customerId = customerId;
     }
 
     public String getEmail() {
@@ -115,6 +148,14 @@ public class Code {
         this.hash = hash;
     }
 
+    public byte[] getDigest() {
+        return this.digest;
+    }
+
+    public void setDigest(byte[] digest) {
+        this.digest = digest;
+    }
+
     public Date getCreatedAt() {
         return this.createdAt;
     }
@@ -123,6 +164,22 @@ public class Code {
         this.createdAt = createdAt;
     }
 
+    public Date getExpiresAt() {
+        return this.expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public CodeStatus getStatus() {
+        return this.status;
+    }
+
+    public void setStatus(CodeStatus status) {
+        this.status = status;
+    }
+
     public Date getFulfilledAt() {
         return this.fulfilledAt;
     }
@@ -157,15 +214,15 @@ public class Code {
 
     public static class CodeBuilder {
 
-        private Customer customer;
+        private Long customerId;
         private String email;
-        private String hash;
+        private byte[] digest;
         private Date createdAt;
         private Integer maximumAttempts;
         private Integer maximumDurationInMinutes;
 
-        public CodeBuilder customer(Customer customer) {
-            this.customer = customer;
+        public CodeBuilder customerId(Long customerId) {
+            this.customerId = customerId;
             return this;
         }
 
@@ -174,8 +231,8 @@ public class Code {
             return this;
         }
 
-        public CodeBuilder hash(String hash) {
-            this.hash = hash;
+        public CodeBuilder digest(byte[] digest) {
+            this.digest = digest;
             return this;
         }
 
@@ -0,0 +1,34 @@
+package com.danieldigiovanni.email.code;
+
+/**
+ * The symbols a random code is made of.
+ */
+public enum CodeAlphabet {
+
+    /**
+     * Digits only.
+     */
+    NUMERIC("0123456789"),
+    /**
+     * Digits and upper case letters, without the symbols that are easily
+     * mistaken for one another (0, 1, I and O).
+     */
+    ALPHANUMERIC("23456789ABCDEFGHJKLMNPQRSTUVWXYZ");
+
+    private final char[] symbols;
+
+    CodeAlphabet(String symbols) {
+        this.symbols = symbols.toCharArray();
+    }
+
+    /**
+     * Gets the symbols of the alphabet. The returned array is shared, and must
+     * not be modified.
+     *
+     * @return The symbols of the alphabet.
+     */
+    char[] symbols() {
+        return this.symbols;
+    }
+
+}
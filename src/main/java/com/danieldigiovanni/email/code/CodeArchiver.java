@@ -0,0 +1,185 @@
+package com.danieldigiovanni.email.code;
+
+import com.danieldigiovanni.email.datasource.ShardRouting;
+import com.danieldigiovanni.email.outbox.OutboxRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moves codes that are no longer needed from the {@link Code} table into the
+ * {@link ArchivedCode} table.
+ * <p>
+ * A code is archived once it has been expired or fulfilled for longer than
+ * {@code code.archive.retention-days}. Codes are moved in chunks of
+ * {@code code.archive.chunk-size}, paginated by id, and each chunk is copied
+ * and deleted in its own short transaction, so the job never holds locks on
+ * the code table for long. The job sleeps {@code code.archive.throttle-millis}
+ * between chunks to leave room for regular traffic. Each shard is archived in
+ * turn.
+ * <p>
+ * The outbox messages of the archived codes, long sent by then, are deleted
+ * in the same transaction, so that the outbox does not keep every email ever
+ * sent.
+ */
+@Component
+public class CodeArchiver implements MeterBinder {
+
+    private final CodeRepository codeRepository;
+    private final ArchivedCodeRepository archivedCodeRepository;
+    private final OutboxRepository outboxRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouting shardRouting;
+    private final long retentionMillis;
+    private final int chunkSize;
+    private final long throttleMillis;
+    private final LongAdder archived = new LongAdder();
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Logger log = LoggerFactory.getLogger(CodeArchiver.class);
+
+    @Autowired
+    public CodeArchiver(
+        CodeRepository codeRepository,
+        ArchivedCodeRepository archivedCodeRepository,
+        OutboxRepository outboxRepository,
+        TransactionTemplate transactionTemplate,
+        ShardRouting shardRouting,
+        @Value("${code.archive.retention-days}") long retentionDays,
+        @Value("${code.archive.chunk-size}") int chunkSize,
+        @Value("${code.archive.throttle-millis}") long throttleMillis
+    ) {
+        this.codeRepository = codeRepository;
+        this.archivedCodeRepository = archivedCodeRepository;
+        this.outboxRepository = outboxRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.shardRouting = shardRouting;
+        this.retentionMillis = TimeUnit.DAYS.toMillis(retentionDays);
+        this.chunkSize = chunkSize;
+        this.throttleMillis = throttleMillis;
+    }
+
+    /**
+     * Archives all the codes past the retention window, on every shard.
+     *
+     * @return The number of codes archived.
+     */
+    @Scheduled(
+        initialDelayString = "${code.archive.interval-millis}",
+        fixedDelayString = "${code.archive.interval-millis}"
+    )
+    public long archiveExpiredCodes() {
+        Date cutoff = new Date(System.currentTimeMillis() - this.retentionMillis);
+        long runArchived = this.shardRouting.onEachShard(() ->
+            this.archiveShard(cutoff)
+        ).stream().mapToLong(Long::longValue).sum();
+
+        if (runArchived > 0) {
+            this.log.info("Archived {} codes older than {}", runArchived, cutoff);
+        }
+        return runArchived;
+    }
+
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+        FunctionCounter.builder("code.archive.archived", this.archived, LongAdder::sum)
+            .description("Codes moved to the archive")
+            .register(registry);
+        FunctionCounter.builder("code.archive.chunks", this.chunks, LongAdder::sum)
+            .description("Chunks of codes moved to the archive")
+            .register(registry);
+        FunctionCounter.builder("code.archive.failures", this.failures, LongAdder::sum)
+            .description("Chunks of codes that failed to be archived")
+            .register(registry);
+    }
+
+    /**
+     * Archives the codes of the current shard past the cutoff, chunk by chunk.
+     *
+     * @return The number of codes archived.
+     */
+    private long archiveShard(Date cutoff) {
+        long lastId = 0L;
+        long shardArchived = 0L;
+
+        while (true) {
+            List<Long> ids = this.codeRepository.findArchivableIds(
+                lastId,
+                cutoff,
+                PageRequest.of(0, this.chunkSize)
+            );
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            try {
+                shardArchived += this.archiveChunk(ids);
+            } catch (RuntimeException exception) {
+                // The chunk is rolled back and retried on the next run
+                this.failures.increment();
+                this.log.error(
+                    "Failed to archive codes {} to {}",
+                    ids.get(0),
+                    ids.get(ids.size() - 1),
+                    exception
+                );
+            }
+            lastId = ids.get(ids.size() - 1);
+
+            if (ids.size() < this.chunkSize || !this.throttle()) {
+                break;
+            }
+        }
+
+        return shardArchived;
+    }
+
+    /**
+     * Copies a chunk of codes into the archive and deletes them with their
+     * outbox messages, in one transaction.
+     *
+     * @return The number of codes archived.
+     */
+    private int archiveChunk(List<Long> ids) {
+        Integer count = this.transactionTemplate.execute(status -> {
+            int copied = this.archivedCodeRepository.archive(ids, new Date());
+            this.outboxRepository.deleteByCodeIdIn(ids);
+            this.codeRepository.deleteByIdIn(ids);
+            return copied;
+        });
+
+        this.chunks.increment();
+        this.archived.add(count);
+        return count;
+    }
+
+    /**
+     * Pauses between chunks.
+     *
+     * @return False if the thread was interrupted, and the run should stop.
+     */
+    private boolean throttle() {
+        try {
+            Thread.sleep(this.throttleMillis);
+            return true;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+}
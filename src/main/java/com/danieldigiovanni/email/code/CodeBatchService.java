@@ -0,0 +1,205 @@
+package com.danieldigiovanni.email.code;
+
+import com.danieldigiovanni.email.code.dto.SendCodeBatchResult;
+import com.danieldigiovanni.email.code.dto.SendCodeRequest;
+import com.danieldigiovanni.email.customer.Customer;
+import com.danieldigiovanni.email.customer.CustomerService;
+import com.danieldigiovanni.email.error.ErrorResponseBody;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Sends verification codes from a newline delimited JSON (NDJSON) stream.
+ * <p>
+ * Each line of the request is a {@link SendCodeRequest}. Lines are read and
+ * validated one at a time, and valid lines are sent in chunks through
+ * {@link CodeService#sendCodeChunk(Customer, Map)}. The results of each chunk
+ * are written to the response (in line order) as soon as the chunk is done, so
+ * neither the request nor the response is ever held in memory as a whole.
+ */
+@Service
+public class CodeBatchService {
+
+    private static final String VALIDATION_ERROR = "Validation Error";
+
+    private final CodeService codeService;
+    private final CustomerService customerService;
+    private final Validator validator;
+    private final ObjectReader requestReader;
+    private final ObjectWriter resultWriter;
+    private final int chunkSize;
+    private final Logger log = LoggerFactory.getLogger(CodeBatchService.class);
+
+    @Autowired
+    public CodeBatchService(
+        CodeService codeService,
+        CustomerService customerService,
+        Validator validator,
+        ObjectMapper objectMapper,
+        @Value("${code.batch.chunk-size}") int chunkSize
+    ) {
+        this.codeService = codeService;
+        this.customerService = customerService;
+        this.validator = validator;
+        this.requestReader = objectMapper.readerFor(SendCodeRequest.class);
+        this.resultWriter = objectMapper.writerFor(SendCodeBatchResult.class)
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sends a code for each line of an NDJSON request body, and writes one
+     * NDJSON result line per request line.
+     *
+     * @param principal    The authenticated customer.
+     * @param requestBody  The NDJSON request body.
+     * @param responseBody The stream to write the NDJSON results to.
+     *
+     * @throws IOException If reading the request or writing the response
+     *                     fails.
+     */
+    public void sendCodeBatch(Principal principal, InputStream requestBody, OutputStream responseBody) throws IOException {
+        Customer customer =
+            this.customerService.getCustomerByPrincipal(principal);
+
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(requestBody, StandardCharsets.UTF_8)
+        );
+        Map<Integer, SendCodeRequest> chunk = new LinkedHashMap<>();
+        Map<Integer, SendCodeBatchResult> invalidLines = new HashMap<>();
+
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+
+            SendCodeRequest sendCodeRequest;
+            try {
+                sendCodeRequest = this.requestReader.readValue(line);
+            } catch (JsonProcessingException exception) {
+                invalidLines.put(lineNumber, this.validationFailure(
+                    lineNumber,
+                    exception.getOriginalMessage()
+                ));
+                continue;
+            }
+
+            Set<ConstraintViolation<SendCodeRequest>> violations =
+                this.validator.validate(sendCodeRequest);
+            if (!violations.isEmpty()) {
+                invalidLines.put(lineNumber, this.validationFailure(
+                    lineNumber,
+                    this.describe(violations)
+                ));
+                continue;
+            }
+
+            chunk.put(lineNumber, sendCodeRequest);
+            if (chunk.size() + invalidLines.size() >= this.chunkSize) {
+                this.sendChunk(customer, chunk, invalidLines, responseBody);
+            }
+        }
+
+        this.sendChunk(customer, chunk, invalidLines, responseBody);
+    }
+
+    /**
+     * Sends the codes of a chunk, writes their results along with the results
+     * of the invalid lines of the chunk, and clears the chunk.
+     */
+    private void sendChunk(Customer customer, Map<Integer, SendCodeRequest> chunk, Map<Integer, SendCodeBatchResult> invalidLines, OutputStream responseBody) throws IOException {
+        SortedMap<Integer, SendCodeBatchResult> resultsByLine =
+            new TreeMap<>(invalidLines);
+        if (!chunk.isEmpty()) {
+            this.sendValidLines(customer, chunk).forEach(result ->
+                resultsByLine.put(result.getLine(), result)
+            );
+        }
+
+        for (SendCodeBatchResult result : resultsByLine.values()) {
+            this.write(responseBody, result);
+        }
+        responseBody.flush();
+
+        chunk.clear();
+        invalidLines.clear();
+    }
+
+    /**
+     * Sends the codes of the valid lines of a chunk.
+     * <p>
+     * The response is already being streamed, so a failure of the whole chunk
+     * is reported on each of its lines instead of as an error response.
+     */
+    private List<SendCodeBatchResult> sendValidLines(Customer customer, Map<Integer, SendCodeRequest> chunk) {
+        try {
+            return this.codeService.sendCodeChunk(customer, chunk);
+        } catch (RuntimeException exception) {
+            this.log.error(
+                "Failed to send batch chunk of {} codes",
+                chunk.size(),
+                exception
+            );
+            return chunk.keySet().stream()
+                .map(SendCodeBatchResult::unknownFailure)
+                .toList();
+        }
+    }
+
+    private SendCodeBatchResult validationFailure(int line, String message) {
+        return SendCodeBatchResult.failure(
+            line,
+            ErrorResponseBody.handledErrorResponse(VALIDATION_ERROR, message)
+        );
+    }
+
+    /**
+     * Describes constraint violations the same way as validation errors of
+     * single requests.
+     */
+    private String describe(Set<ConstraintViolation<SendCodeRequest>> violations) {
+        return violations.stream()
+            .map(violation -> String.format(
+                "%s %s",
+                violation.getPropertyPath(),
+                violation.getMessage()
+            ))
+            .sorted()
+            .collect(Collectors.joining(", "));
+    }
+
+    private void write(OutputStream responseBody, SendCodeBatchResult result) throws IOException {
+        this.resultWriter.writeValue(responseBody, result);
+        responseBody.write('\n');
+    }
+
+}
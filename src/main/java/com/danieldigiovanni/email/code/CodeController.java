@@ -4,6 +4,8 @@ import com.danieldigiovanni.email.code.dto.CodeResponse;
 import com.danieldigiovanni.email.code.dto.SendCodeRequest;
 import com.danieldigiovanni.email.code.dto.SendCustomCodeRequest;
 import com.danieldigiovanni.email.code.dto.VerifyCodeRequest;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -11,16 +13,21 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
 import java.security.Principal;
 
 @RestController
 public class CodeController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private final CodeService codeService;
+    private final CodeBatchService codeBatchService;
 
     @Autowired
-    public CodeController(CodeService codeService) {
+    public CodeController(CodeService codeService, CodeBatchService codeBatchService) {
         this.codeService = codeService;
+        this.codeBatchService = codeBatchService;
     }
 
     @PostMapping("/code/send")
@@ -28,6 +35,16 @@ public class CodeController {
         return this.codeService.sendCode(principal, sendCodeRequest);
     }
 
+    @PostMapping(value = "/code/send/batch", consumes = NDJSON, produces = NDJSON)
+    public void sendCodeBatch(Principal principal, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        this.codeBatchService.sendCodeBatch(
+            principal,
+            request.getInputStream(),
+            response.getOutputStream()
+        );
+    }
+
     @PostMapping("/code/verify")
     public ResponseEntity<CodeResponse> verifyCode(Principal principal, @RequestBody @Valid VerifyCodeRequest verifyCodeRequest) {
         return this.codeService.verifyCode(principal, verifyCodeRequest);
@@ -0,0 +1,32 @@
+package com.danieldigiovanni.email.code;
+
+/**
+ * Hashes verification codes and checks codes against stored digests.
+ * <p>
+ * Verification codes are short and only live for a few minutes, so they do
+ * not need a deliberately slow password hash. Implementations should be fast
+ * and compare digests in constant time.
+ */
+public interface CodeHasher {
+
+    /**
+     * Generates a digest of a code.
+     *
+     * @param code The code (in plain-text) to be hashed.
+     *
+     * @return The digest of the provided code.
+     */
+    byte[] hash(String code);
+
+    /**
+     * Checks if a code matches with a digest previously generated by
+     * {@link #hash(String)}.
+     *
+     * @param rawCode The code to compare with the digest.
+     * @param digest  The digest to compare with the code.
+     *
+     * @return True if the code matches with the digest.
+     */
+    boolean matches(String rawCode, byte[] digest);
+
+}
@@ -1,11 +1,145 @@
 package com.danieldigiovanni.email.code;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 public interface CodeRepository extends JpaRepository<Code, Long> {
 
-    List<Code> getCodesByEmail(String email);
+    Optional<Code> findFirstByEmailAndStatusAndExpiresAtAfterOrderByCreatedAtDesc(String email, CodeStatus status, Date now);
+
+    /**
+     * Finds the active code of an email, if there is one.
+     * <p>
+     * The activity check is done in the database (status is
+     * {@link CodeStatus#ACTIVE} and the expiry is in the future), so at most
+     * one row is read no matter how many codes were sent to the email.
+     *
+     * @param email The email whose active code is being looked up.
+     *
+     * @return The active code, or an empty optional if there is none.
+     */
+    default Optional<Code> findActiveCodeByEmail(String email) {
+        return this.findFirstByEmailAndStatusAndExpiresAtAfterOrderByCreatedAtDesc(
+            email,
+            CodeStatus.ACTIVE,
+            new Date()
+        );
+    }
+
+    /**
+     * Marks a code as fulfilled, if it is still active.
+     * <p>
+     * The check and the update are a single statement, so a code can only be
+     * fulfilled once, and never after it expired or was exhausted, even when
+     * it is verified concurrently.
+     *
+     * @param id  The id of the code.
+     * @param now The current date, which is the fulfillment date.
+     *
+     * @return 1 if the code was fulfilled, 0 if it is no longer active.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+        update Code c
+        set c.fulfilledAt = :now,
+            c.status = com.danieldigiovanni.email.code.CodeStatus.FULFILLED
+        where c.id = :id
+            and c.status = com.danieldigiovanni.email.code.CodeStatus.ACTIVE
+            and c.expiresAt > :now
+        """)
+    int fulfillIfActive(@Param("id") Long id, @Param("now") Date now);
+
+    /**
+     * Increments the incorrect attempts of a code by one, if it is still
+     * active, and marks it as exhausted if the maximum number of attempts is
+     * reached.
+     * <p>
+     * The increment is done by the database, so concurrent incorrect attempts
+     * are never lost.
+     * <p>
+     * The status is assigned first: MySQL evaluates the assignments of an
+     * update from left to right, each seeing the values assigned before it,
+     * while other databases evaluate them all against the previous row. Both
+     * compare the previous attempts this way.
+     *
+     * @param id  The id of the code.
+     * @param now The current date.
+     *
+     * @return 1 if the attempt was counted, 0 if the code is no longer active.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+        update Code c
+        set c.status = case
+                when c.incorrectAttempts + 1 >= c.maximumAttempts
+                    then com.danieldigiovanni.email.code.CodeStatus.EXHAUSTED
+                else c.status
+            end,
+            c.incorrectAttempts = c.incorrectAttempts + 1
+        where c.id = :id
+            and c.status = com.danieldigiovanni.email.code.CodeStatus.ACTIVE
+            and c.expiresAt > :now
+        """)
+    int incrementIncorrectAttemptsIfActive(@Param("id") Long id, @Param("now") Date now);
+
+    /**
+     * Finds the ids of codes that can be archived, in id order, starting after
+     * the given id.
+     * <p>
+     * A code can be archived once it expired or was fulfilled before the
+     * cutoff. Codes created before {@link Code#getExpiresAt()} was persisted
+     * are archived once they were created before the cutoff.
+     *
+     * @param afterId  The id after which to start, for keyset pagination.
+     * @param cutoff   The date before which codes can be archived.
+     * @param pageable The maximum number of ids to find.
+     *
+     * @return The ids of the archivable codes.
+     */
+    @Query("""
+        select c.id from Code c
+        where c.id > :afterId
+            and (c.expiresAt < :cutoff
+                or c.fulfilledAt < :cutoff
+                or (c.expiresAt is null and c.createdAt < :cutoff))
+        order by c.id
+        """)
+    List<Long> findArchivableIds(@Param("afterId") Long afterId, @Param("cutoff") Date cutoff, Pageable pageable);
+
+    @Modifying
+    @Query("delete from Code c where c.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Finds the emails of the active codes of a customer.
+     *
+     * @param customerId The id of the customer.
+     * @param now        The current date.
+     *
+     * @return The emails.
+     */
+    @Query("""
+        select c.email from Code c
+        where c.customerId = :customerId
+            and c.status = com.danieldigiovanni.email.code.CodeStatus.ACTIVE
+            and c.expiresAt > :now
+        """)
+    List<String> findActiveEmailsByCustomerId(@Param("customerId") Long customerId, @Param("now") Date now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Code c where c.customerId = :customerId")
+    int deleteByCustomerId(@Param("customerId") Long customerId);
 
 }
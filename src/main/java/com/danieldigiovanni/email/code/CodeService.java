@@ -1,42 +1,72 @@
 package com.danieldigiovanni.email.code;
 
 import com.danieldigiovanni.email.code.dto.CodeResponse;
+import com.danieldigiovanni.email.code.dto.SendCodeBatchResult;
 import com.danieldigiovanni.email.code.dto.SendCodeRequest;
 import com.danieldigiovanni.email.code.dto.SendCustomCodeRequest;
 import com.danieldigiovanni.email.code.dto.VerifyCodeRequest;
 import com.danieldigiovanni.email.code.exception.NotYourCodeException;
 import com.danieldigiovanni.email.customer.Customer;
 import com.danieldigiovanni.email.customer.CustomerService;
-import com.danieldigiovanni.email.emailer.Emailer;
+import com.danieldigiovanni.email.datasource.ReadRouting;
+import com.danieldigiovanni.email.datasource.ShardRouting;
+import com.danieldigiovanni.email.error.ErrorResponseBody;
+import com.danieldigiovanni.email.outbox.OutboxService;
 import jakarta.persistence.EntityExistsException;
 import jakarta.persistence.EntityNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
 
 @Service
 public class CodeService {
 
     private final CodeRepository codeRepository;
+    private final ActiveCodeRepository activeCodeRepository;
+    private final ActiveCodeCache activeCodeCache;
+    private final EmailLocks emailLocks;
     private final CodeUtils codeUtils;
-    private final Emailer emailer;
+    private final OutboxService outboxService;
+    private final TransactionTemplate transactionTemplate;
+    private final ReadRouting readRouting;
+    private final ShardRouting shardRouting;
     private final CustomerService customerService;
+    private final Logger log = LoggerFactory.getLogger(CodeService.class);
 
     @Autowired
-    public CodeService(CodeRepository codeRepository, CodeUtils codeUtils, Emailer emailer, CustomerService customerService) {
+    public CodeService(CodeRepository codeRepository, ActiveCodeRepository activeCodeRepository, ActiveCodeCache activeCodeCache, EmailLocks emailLocks, CodeUtils codeUtils, OutboxService outboxService, TransactionTemplate transactionTemplate, ReadRouting readRouting, ShardRouting shardRouting, CustomerService customerService) {
         this.codeRepository = codeRepository;
+        this.activeCodeRepository = activeCodeRepository;
+        this.activeCodeCache = activeCodeCache;
+        this.emailLocks = emailLocks;
         this.codeUtils = codeUtils;
-        this.emailer = emailer;
+        this.outboxService = outboxService;
+        this.transactionTemplate = transactionTemplate;
+        this.readRouting = readRouting;
+        this.shardRouting = shardRouting;
         this.customerService = customerService;
     }
 
     public CodeResponse sendCode(Principal principal, SendCodeRequest sendCodeRequest) {
         String randomCode = this.codeUtils.generateRandomCode(
-            sendCodeRequest.getLength()
+            sendCodeRequest.getLength(),
+            sendCodeRequest.getAlphabet()
         );
 
         return this.sendCodeHelper(
@@ -52,35 +82,154 @@ public class CodeService {
         Customer customer =
             this.customerService.getCustomerByPrincipal(principal);
 
-        List<Code> codes = this.codeRepository.getCodesByEmail(
-            verifyCodeRequest.getEmail()
-        );
+        // Verification must see the latest state of the code
+        return this.readRouting.onPrimary(() -> this.emailLocks.withLock(
+            verifyCodeRequest.getEmail(),
+            () -> this.verifyCodeHelper(customer, verifyCodeRequest)
+        ));
+    }
+
+    /**
+     * Sends codes for one chunk of a batch request.
+     * <p>
+     * The customer is looked up once by the caller, and the codes of the chunk
+     * (and their outbox messages) are saved in a single transaction per shard.
+     * Lines whose email already has an active code, or that repeat an email
+     * from earlier in the chunk, are rejected individually. If another code is
+     * sent concurrently to one of the emails, or if a shard fails, all the
+     * lines of that shard fail.
+     *
+     * @param customer       The customer sending the codes.
+     * @param requestsByLine The valid requests of the chunk, keyed by their
+     *                       line number in the request body.
+     *
+     * @return The result of each line, in line order.
+     */
+    public List<SendCodeBatchResult> sendCodeChunk(Customer customer, Map<Integer, SendCodeRequest> requestsByLine) {
+        SortedMap<Integer, SendCodeBatchResult> results = new TreeMap<>();
+        Map<Integer, Code> codesByLine = new LinkedHashMap<>();
+        Map<Integer, String> codeStringsByLine = new HashMap<>();
+
+        requestsByLine.forEach((line, sendCodeRequest) -> {
+            String codeString = this.codeUtils.generateRandomCode(
+                sendCodeRequest.getLength(),
+                sendCodeRequest.getAlphabet()
+            );
+            codeStringsByLine.put(line, codeString);
+            codesByLine.put(line, Code.builder()
+                .customerId(customer.getId())
+                .email(sendCodeRequest.getEmail())
+                .digest(this.codeUtils.generateHash(codeString))
+                .createdAt(new Date())
+                .maximumAttempts(sendCodeRequest.getMaximumAttempts())
+                .maximumDurationInMinutes(
+                    sendCodeRequest.getMaximumDurationInMinutes()
+                )
+                .build());
+        });
 
-        Code code = codes.stream()
-            .filter(Code::isActive)
-            .findFirst()
-            .orElseThrow(() -> new EntityNotFoundException(
-                "No active code found for " + verifyCodeRequest.getEmail()
+        // During a re-sharding, the slots on the previous shards are claimed
+        // first, each in its own transaction
+        Map<Integer, Code> claimedOnPreviousShards = new HashMap<>();
+        codesByLine.entrySet().removeIf(entry -> {
+            Code code = entry.getValue();
+            if (this.shardRouting.candidateShardsOf(code.getEmail()).size() == 1) {
+                return false;
+            }
+            if (this.claimOnPreviousShards(code.getEmail(), code.getExpiresAt())) {
+                claimedOnPreviousShards.put(entry.getKey(), code);
+                return false;
+            }
+            results.put(entry.getKey(), SendCodeBatchResult.failure(
+                entry.getKey(),
+                ErrorResponseBody.handledErrorResponse(
+                    "Already Exists Error",
+                    this.alreadyExists(code.getEmail()).getMessage()
+                )
             ));
+            return true;
+        });
 
-        if (!customer.getId().equals(code.getCustomer().getId())) {
-            throw new NotYourCodeException();
-        }
+        Map<Integer, Map<Integer, Code>> codesByShard = new TreeMap<>();
+        codesByLine.forEach((line, code) -> codesByShard
+            .computeIfAbsent(
+                this.shardRouting.shardOf(code.getEmail()),
+                shard -> new LinkedHashMap<>()
+            )
+            .put(line, code));
 
-        boolean codeMatches = this.codeUtils.matches(
-            verifyCodeRequest.getCode(),
-            code.getHash()
-        );
+        codesByLine.clear();
+        codesByShard.forEach((shard, shardCodesByLine) -> {
+            try {
+                this.shardRouting.onShard(shard, () -> {
+                    this.saveChunk(shardCodesByLine, codeStringsByLine, results);
+                    return null;
+                });
+                codesByLine.putAll(shardCodesByLine);
+            } catch (RuntimeException exception) {
+                this.log.error(
+                    "Failed to send {} codes of batch chunk on shard {}",
+                    shardCodesByLine.size(),
+                    shard,
+                    exception
+                );
+                shardCodesByLine.keySet().forEach(line ->
+                    results.put(line, SendCodeBatchResult.unknownFailure(line))
+                );
+            }
+        });
 
-        if (codeMatches) {
-            code.setFulfilledAt(new Date());
-            this.codeRepository.save(code);
-            return ResponseEntity.noContent().build();
-        } else {
-            code.incrementIncorrectAttempts();
-            code = this.codeRepository.save(code);
-            return ResponseEntity.badRequest().body(new CodeResponse(code));
-        }
+        claimedOnPreviousShards.forEach((line, code) -> {
+            if (!codesByLine.containsKey(line)) {
+                this.releaseOnPreviousShards(code.getEmail());
+            }
+        });
+
+        codesByLine.forEach((line, code) -> {
+            this.activeCodeCache.put(code);
+            results.put(
+                line,
+                SendCodeBatchResult.success(line, new CodeResponse(code))
+            );
+        });
+
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * Saves the codes of a chunk that belong to the current shard, in one
+     * transaction. Codes whose slot cannot be claimed are removed from the
+     * chunk, and their failure is added to the results.
+     */
+    private void saveChunk(Map<Integer, Code> codesByLine, Map<Integer, String> codeStringsByLine, Map<Integer, SendCodeBatchResult> results) {
+        this.transactionTemplate.executeWithoutResult(status -> {
+            // All the slots are claimed before any code is saved, so that the
+            // inserts of the codes can be batched
+            codesByLine.entrySet().removeIf(entry -> {
+                Code code = entry.getValue();
+                if (this.claimActiveCode(code.getEmail(), code.getExpiresAt())) {
+                    return false;
+                }
+                results.put(entry.getKey(), SendCodeBatchResult.failure(
+                    entry.getKey(),
+                    ErrorResponseBody.handledErrorResponse(
+                        "Already Exists Error",
+                        this.alreadyExists(code.getEmail()).getMessage()
+                    )
+                ));
+                return true;
+            });
+
+            codesByLine.replaceAll((line, code) -> {
+                Code savedCode = this.codeRepository.save(code);
+                this.outboxService.enqueue(
+                    savedCode,
+                    "Verification Code",
+                    codeStringsByLine.get(line)
+                );
+                return savedCode;
+            });
+        });
     }
 
     public CodeResponse sendCustomCode(Principal principal, SendCustomCodeRequest sendCustomCodeRequest) {
@@ -97,36 +246,238 @@ public class CodeService {
         Customer customer =
             this.customerService.getCustomerByPrincipal(principal);
 
-        List<Code> codes = this.codeRepository.getCodesByEmail(email);
-
-        boolean emailHasActiveCode = codes.stream().anyMatch(Code::isActive);
-        if (emailHasActiveCode) {
-            throw new EntityExistsException(
-                "Email " + email + " already has an active code."
-            );
-        }
-
-        String hash = this.codeUtils.generateHash(codeString);
+        byte[] digest = this.codeUtils.generateHash(codeString);
 
-        Code code = Code.builder()
-            .customer(customer)
+        Code newCode = Code.builder()
+            .customerId(customer.getId())
             .email(email)
-            .hash(hash)
+            .digest(digest)
             .createdAt(new Date())
             .maximumAttempts(maximumAttempts)
             .maximumDurationInMinutes(maximumDurationInMinutes)
             .build();
 
-        code = this.codeRepository.save(code);
+        // The slot, the code and its email are saved together on the shard of
+        // the email, the email is sent later by the outbox dispatcher
+        Code code = this.emailLocks.withLock(email, () -> {
+            if (!this.claimOnPreviousShards(email, newCode.getExpiresAt())) {
+                throw this.alreadyExists(email);
+            }
+            try {
+                return this.shardRouting.onShard(this.shardRouting.shardOf(email), () ->
+                    this.transactionTemplate.execute(status -> {
+                        if (!this.claimActiveCode(email, newCode.getExpiresAt())) {
+                            throw this.alreadyExists(email);
+                        }
+                        Code savedCode = this.codeRepository.save(newCode);
+                        this.outboxService.enqueue(
+                            savedCode,
+                            "Verification Code",
+                            codeString
+                        );
+                        return savedCode;
+                    })
+                );
+            } catch (RuntimeException exception) {
+                this.releaseOnPreviousShards(email);
+                throw exception;
+            }
+        });
+        this.activeCodeCache.put(code);
+
+        return new CodeResponse(code);
+    }
+
+    /**
+     * Verifies a code while holding the lock of its email.
+     */
+    private ResponseEntity<CodeResponse> verifyCodeHelper(Customer customer, VerifyCodeRequest verifyCodeRequest) {
+        Code code = this.findActiveCode(verifyCodeRequest.getEmail())
+            .orElseThrow(() -> this.noActiveCode(verifyCodeRequest.getEmail()));
+
+        if (!customer.getId().equals(code.getCustomerId())) {
+            throw new NotYourCodeException();
+        }
+
+        boolean codeMatches = this.codeUtils.matches(
+            verifyCodeRequest.getCode(),
+            code
+        );
+
+        Long codeId = code.getId();
+        String email = code.getEmail();
+
+        if (codeMatches) {
+            Boolean fulfilled = this.onCodeShards(email, () ->
+                this.transactionTemplate.execute(status -> {
+                    Date now = new Date();
+                    if (this.codeRepository.fulfillIfActive(codeId, now) == 0) {
+                        return null;
+                    }
+                    this.activeCodeRepository.release(email, now);
+                    return true;
+                })
+            );
+            this.activeCodeCache.remove(email);
+            if (fulfilled == null) {
+                throw this.noActiveCode(email);
+            }
+            this.releaseOnPreviousShards(email);
+            return ResponseEntity.noContent().build();
+        } else {
+            Code updatedCode = this.onCodeShards(email, () ->
+                this.transactionTemplate.execute(status -> {
+                    Date now = new Date();
+                    if (this.codeRepository.incrementIncorrectAttemptsIfActive(codeId, now) == 0) {
+                        return null;
+                    }
+
+                    // Read back the attempts, which concurrent verifications
+                    // may have incremented too
+                    Code incrementedCode = this.codeRepository.findById(codeId)
+                        .orElseThrow(() -> this.noActiveCode(email));
+                    if (!incrementedCode.isActive()) {
+                        this.activeCodeRepository.release(email, now);
+                    }
+                    return incrementedCode;
+                })
+            );
+            if (updatedCode == null) {
+                this.activeCodeCache.remove(email);
+                throw this.noActiveCode(email);
+            }
+            if (!updatedCode.isActive()) {
+                this.releaseOnPreviousShards(email);
+            }
+            this.activeCodeCache.put(updatedCode);
+            return ResponseEntity.badRequest().body(new CodeResponse(updatedCode));
+        }
+    }
+
+    /**
+     * Finds the active code of an email, first in the cache and then in the
+     * database. A code found in the database is added to the cache.
+     *
+     * @param email The email whose active code is being looked up.
+     *
+     * @return The active code, or an empty optional if there is none.
+     */
+    private Optional<Code> findActiveCode(String email) {
+        Optional<Code> cachedCode = this.activeCodeCache.get(email);
+        if (cachedCode.isPresent()) {
+            return cachedCode;
+        }
+
+        Optional<Code> code = Optional.ofNullable(this.onCodeShards(email, () ->
+            this.codeRepository.findActiveCodeByEmail(email).orElse(null)
+        ));
+        code.ifPresent(this.activeCodeCache::put);
+        return code;
+    }
+
+    /**
+     * Runs an action on the shard of an email, and then on its shard before
+     * the last re-sharding (if any) as long as the action returns null.
+     * <p>
+     * Codes sent before a re-sharding stay on their previous shard until they
+     * are no longer active, and code ids are unique across shards, so an
+     * update by id that finds nothing on one shard can safely be tried on the
+     * other.
+     *
+     * @param email  The email of the code.
+     * @param action The action to run.
+     * @param <T>    The type of the result of the action.
+     *
+     * @return The first result that is not null, or null.
+     */
+    private <T> T onCodeShards(String email, Supplier<T> action) {
+        for (int shard : this.shardRouting.candidateShardsOf(email)) {
+            T result = this.shardRouting.onShard(shard, action);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Claims the active code slot of an email, in the current transaction.
+     *
+     * @param email     The email whose slot is claimed.
+     * @param expiresAt The expiry of the new code.
+     *
+     * @return True if the slot was claimed, false if the email already has an
+     * active code.
+     *
+     * @throws EntityExistsException If another code was sent to the email
+     *                               concurrently, in which case the current
+     *                               transaction can only be rolled back.
+     */
+    private boolean claimActiveCode(String email, Date expiresAt) {
+        try {
+            return this.activeCodeRepository.claim(email, expiresAt, new Date());
+        } catch (DataIntegrityViolationException exception) {
+            throw this.alreadyExists(email);
+        }
+    }
+
+    /**
+     * Claims the active code slot of an email on its shard before the last
+     * re-sharding, if that is another shard, so that the email cannot get a
+     * second active code while its code is still on the previous shard. The
+     * claim is committed on its own, before the code is saved on the shard of
+     * the email.
+     *
+     * @param email     The email whose slot is claimed.
+     * @param expiresAt The expiry of the new code.
+     *
+     * @return True if the slot was claimed or there is no previous shard,
+     * false if the email already has an active code on its previous shard.
+     */
+    private boolean claimOnPreviousShards(String email, Date expiresAt) {
+        List<Integer> shards = this.shardRouting.candidateShardsOf(email);
+        for (int shard : shards.subList(1, shards.size())) {
+            try {
+                Boolean claimed = this.shardRouting.onShard(shard, () ->
+                    this.transactionTemplate.execute(status ->
+                        this.claimActiveCode(email, expiresAt)
+                    )
+                );
+                if (!Boolean.TRUE.equals(claimed)) {
+                    return false;
+                }
+            } catch (EntityExistsException exception) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Releases the active code slot of an email on its shard before the last
+     * re-sharding, if that is another shard and it has no active code there.
+     *
+     * @param email The email whose slot is released.
+     */
+    private void releaseOnPreviousShards(String email) {
+        List<Integer> shards = this.shardRouting.candidateShardsOf(email);
+        for (int shard : shards.subList(1, shards.size())) {
+            this.shardRouting.onShard(shard, () ->
+                this.transactionTemplate.execute(status ->
+                    this.activeCodeRepository.release(email, new Date())
+                )
+            );
+        }
+    }
 
-        this.emailer.sendEmail(
-            code.getEmail(),
-            "Verification Code",
-            codeString,
-            code.getMaximumDurationInMinutes()
+    private EntityExistsException alreadyExists(String email) {
+        return new EntityExistsException(
+            "Email " + email + " already has an active code."
         );
+    }
 
-        return new CodeResponse(code);
+    private EntityNotFoundException noActiveCode(String email) {
+        return new EntityNotFoundException("No active code found for " + email);
     }
 
 }
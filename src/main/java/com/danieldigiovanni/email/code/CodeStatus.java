@@ -0,0 +1,24 @@
+package com.danieldigiovanni.email.code;
+
+/**
+ * The state of a {@link Code}.
+ * <p>
+ * Expiry is not a status, since it depends on the current time. A code is
+ * only usable if it is {@link #ACTIVE} <i>and</i> not expired.
+ */
+public enum CodeStatus {
+
+    /**
+     * The code can still be verified.
+     */
+    ACTIVE,
+    /**
+     * The code was verified successfully.
+     */
+    FULFILLED,
+    /**
+     * The code reached its maximum number of incorrect attempts.
+     */
+    EXHAUSTED
+
+}
@@ -4,17 +4,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
-import java.security.SecureRandom;
-import java.util.stream.Collectors;
-
 @Component
 public class CodeUtils {
 
-    private final PasswordEncoder codeHasher;
+    private final RandomCodeGenerator randomCodeGenerator;
+    private final CodeHasher codeHasher;
+    private final PasswordEncoder legacyCodeHasher;
 
     @Autowired
-    public CodeUtils(PasswordEncoder codeHasher) {
+    public CodeUtils(RandomCodeGenerator randomCodeGenerator, CodeHasher codeHasher, PasswordEncoder legacyCodeHasher) {
+        this.randomCodeGenerator = randomCodeGenerator;
         this.codeHasher = codeHasher;
+        this.legacyCodeHasher = legacyCodeHasher;
     }
 
     /**
@@ -25,32 +26,55 @@ public class CodeUtils {
      * @return A random string of {@code length} numbers.
      */
     public String generateRandomCode(int length) {
-        return new SecureRandom().ints(length, 0, 10)
-            .mapToObj(String::valueOf)
-            .collect(Collectors.joining());
+        return this.generateRandomCode(length, CodeAlphabet.NUMERIC);
     }
 
     /**
-     * Generates a hash of a code.
+     * Generates a random string of symbols from an alphabet, of the specified
+     * length.
+     *
+     * @param length   The length of the random string.
+     * @param alphabet The symbols the random string is made of.
+     *
+     * @return A random string of {@code length} symbols.
+     */
+    public String generateRandomCode(int length, CodeAlphabet alphabet) {
+        return this.randomCodeGenerator.generate(length, alphabet);
+    }
+
+    /**
+     * Generates a digest of a code.
      *
      * @param code The code (in plain-text) to be hashed.
      *
-     * @return The hash of the provided code.
+     * @return The digest of the provided code.
      */
-    public String generateHash(String code) {
-        return this.codeHasher.encode(code);
+    public byte[] generateHash(String code) {
+        return this.codeHasher.hash(code);
     }
 
     /**
-     * Checks if a code matches with a hash.
+     * Checks if a code matches with the hash stored in a {@link Code}.
+     * <p>
+     * Codes created before the switch to {@link CodeHasher} have no digest,
+     * only a BCrypt hash. Those are still checked with BCrypt so that they can
+     * be verified until they expire.
      *
-     * @param rawCode    The code to compare with the hash.
-     * @param hashedCode The hash to compare with the code.
+     * @param rawCode The code to compare with the hash.
+     * @param code    The code whose hash is compared with the raw code.
      *
-     * @return True if the code matches with the hash.
+     * @return True if the raw code matches with the code's hash.
      */
-    public boolean matches(String rawCode, String hashedCode) {
-        return this.codeHasher.matches(rawCode, hashedCode);
+    public boolean matches(String rawCode, Code code) {
+        if (code.getDigest() != null) {
+            return this.codeHasher.matches(rawCode, code.getDigest());
+        }
+
+        if (code.getHash() != null) {
+            return this.legacyCodeHasher.matches(rawCode, code.getHash());
+        }
+
+        return false;
     }
 
 }
@@ -0,0 +1,111 @@
+package com.danieldigiovanni.email.code;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped locks keyed by email.
+ * <p>
+ * Sending and verifying codes for the same email are serialized on this
+ * instance, so they do not race each other to the database, while requests
+ * for different emails almost never wait for each other. Each email maps to
+ * one of {@code code.lock.stripes} locks (rounded up to a power of two), so
+ * the memory used does not grow with the number of emails.
+ * <p>
+ * The locks are local to this instance. Correctness across instances is still
+ * ensured by the database, the locks only avoid wasted work and conflicts.
+ * <p>
+ * The {@code code.lock.contended} counter and {@code code.lock.wait} timer show
+ * how often and how long requests wait for a lock held by another email of
+ * the same stripe (or the same email), which is used to size the stripes.
+ */
+@Component
+public class EmailLocks implements MeterBinder {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private volatile Timer waitTimer;
+
+    @Autowired
+    public EmailLocks(@Value("${code.lock.stripes}") int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Runs an action while holding the lock of an email.
+     * <p>
+     * Must be called outside any transaction, so that the next holder of the
+     * lock sees the changes of the action once they are committed.
+     *
+     * @param email  The email to lock.
+     * @param action The action to run.
+     * @param <T>    The type of the result of the action.
+     *
+     * @return The result of the action.
+     */
+    public <T> T withLock(String email, Supplier<T> action) {
+        ReentrantLock lock = this.stripeOf(email);
+        this.acquire(lock);
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+        FunctionCounter.builder("code.lock.acquisitions", this.acquisitions, LongAdder::sum)
+            .description("Email locks acquired")
+            .register(registry);
+        FunctionCounter.builder("code.lock.contended", this.contended, LongAdder::sum)
+            .description("Email locks that were held by another request when acquired")
+            .register(registry);
+        this.waitTimer = Timer.builder("code.lock.wait")
+            .description("Time spent waiting for contended email locks")
+            .register(registry);
+    }
+
+    private void acquire(ReentrantLock lock) {
+        this.acquisitions.increment();
+        if (lock.tryLock()) {
+            return;
+        }
+
+        this.contended.increment();
+        long start = System.nanoTime();
+        lock.lock();
+        Timer timer = this.waitTimer;
+        if (timer != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Gets the lock of the stripe of an email.
+     */
+    ReentrantLock stripeOf(String email) {
+        int hash = email.hashCode();
+        // Spreads the high bits, like HashMap, since only the low bits are used
+        return this.stripes[(hash ^ (hash >>> 16)) & this.mask];
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.danieldigiovanni.email.code;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Hashes codes with HMAC-SHA256, keyed with a server-side pepper and a random
+ * per-code salt.
+ * <p>
+ * The digest layout is:
+ * <pre>
+ * | version (1 byte) | salt (16 bytes) | HMAC-SHA256(pepper, salt || code) (32 bytes) |
+ * </pre>
+ * for a total of {@value #DIGEST_LENGTH} bytes.
+ */
+public class HmacSha256CodeHasher implements CodeHasher {
+
+    public static final int DIGEST_LENGTH = 49;
+    private static final byte VERSION = 1;
+    private static final int SALT_LENGTH = 16;
+    private static final int MINIMUM_PEPPER_LENGTH = 32;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final Mac prototype;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    /**
+     * Constructs an HmacSha256CodeHasher with the given pepper.
+     *
+     * @param pepper The server-side secret key. Must be at least
+     *               {@value #MINIMUM_PEPPER_LENGTH} bytes.
+     *
+     * @throws IllegalArgumentException If the pepper is too short.
+     */
+    public HmacSha256CodeHasher(byte[] pepper) {
+        if (pepper.length < MINIMUM_PEPPER_LENGTH) {
+            throw new IllegalArgumentException(
+                "Code hasher pepper must be at least "
+                    + MINIMUM_PEPPER_LENGTH
+                    + " bytes"
+            );
+        }
+
+        this.key = new SecretKeySpec(pepper, ALGORITHM);
+        this.prototype = this.newMac();
+    }
+
+    @Override
+    public byte[] hash(String code) {
+        byte[] digest = new byte[DIGEST_LENGTH];
+        digest[0] = VERSION;
+
+        byte[] salt = new byte[SALT_LENGTH];
+        this.secureRandom.nextBytes(salt);
+        System.arraycopy(salt, 0, digest, 1, SALT_LENGTH);
+
+        byte[] mac = this.mac(salt, code);
+        System.arraycopy(mac, 0, digest, 1 + SALT_LENGTH, mac.length);
+
+        return digest;
+    }
+
+    @Override
+    public boolean matches(String rawCode, byte[] digest) {
+        if (digest == null
+            || digest.length != DIGEST_LENGTH
+            || digest[0] != VERSION) {
+            return false;
+        }
+
+        byte[] salt = new byte[SALT_LENGTH];
+        System.arraycopy(digest, 1, salt, 0, SALT_LENGTH);
+
+        byte[] expectedMac = new byte[DIGEST_LENGTH - 1 - SALT_LENGTH];
+        System.arraycopy(
+            digest,
+            1 + SALT_LENGTH,
+            expectedMac,
+            0,
+            expectedMac.length
+        );
+
+        return MessageDigest.isEqual(expectedMac, this.mac(salt, rawCode));
+    }
+
+    /**
+     * Calculates the HMAC of a salt followed by a code.
+     * <p>
+     * {@link Mac} is not thread-safe, so each call works on a clone of the
+     * initialized prototype, which is much cheaper than initializing a new
+     * instance with the key.
+     *
+     * @param salt The per-code salt.
+     * @param code The code (in plain-text).
+     *
+     * @return The HMAC of the salt and code.
+     */
+    private byte[] mac(byte[] salt, String code) {
+        Mac mac;
+        try {
+            mac = (Mac) this.prototype.clone();
+        } catch (CloneNotSupportedException exception) {
+            mac = this.newMac();
+        }
+
+        mac.update(salt);
+        return mac.doFinal(code.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a new {@link Mac} initialized with the pepper. Used for the
+     * prototype, and for providers that do not support cloning.
+     *
+     * @return A new Mac initialized with the pepper.
+     */
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(this.key);
+            return mac;
+        } catch (GeneralSecurityException exception) {
+            throw new IllegalStateException(
+                "Unable to initialize " + ALGORITHM,
+                exception
+            );
+        }
+    }
+
+}
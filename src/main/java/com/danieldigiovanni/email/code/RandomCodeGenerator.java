@@ -0,0 +1,128 @@
+package com.danieldigiovanni.email.code;
+
+import org.springframework.stereotype.Component;
+
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Generates random codes from a pool of DRBG {@link SecureRandom}s.
+ * <p>
+ * Creating a {@link SecureRandom} gathers entropy from the operating system,
+ * which is slow, so the generators are created once and shared. There is one
+ * generator per available processor, and each call picks one at random, so
+ * concurrent calls rarely wait for each other. Each generator is reseeded from
+ * the operating system after {@value #RESEED_INTERVAL_BYTES} bytes.
+ * <p>
+ * Random bytes are read in blocks into a buffer, and turned into symbols by
+ * rejection sampling: bytes that would make some symbols more likely than
+ * others (because 256 is not a multiple of the alphabet size) are skipped.
+ */
+@Component
+public class RandomCodeGenerator {
+
+    private static final int RESEED_INTERVAL_BYTES = 1 << 20;
+    private static final int BUFFER_SIZE = 64;
+
+    private final Stripe[] stripes;
+
+    public RandomCodeGenerator() {
+        int stripeCount = Integer.highestOneBit(
+            Math.max(1, Runtime.getRuntime().availableProcessors())
+        );
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Generates a random code.
+     *
+     * @param length   The number of symbols in the code.
+     * @param alphabet The symbols the code is made of.
+     *
+     * @return A random code of {@code length} symbols.
+     */
+    public String generate(int length, CodeAlphabet alphabet) {
+        char[] symbols = alphabet.symbols();
+        // The largest multiple of the alphabet size that fits in a byte
+        int limit = 256 - 256 % symbols.length;
+
+        char[] code = new char[length];
+        Stripe stripe = this.stripes[
+            ThreadLocalRandom.current().nextInt(this.stripes.length)
+        ];
+
+        stripe.lock.lock();
+        try {
+            int i = 0;
+            while (i < length) {
+                int value = stripe.nextByte();
+                if (value < limit) {
+                    code[i++] = symbols[value % symbols.length];
+                }
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        return new String(code);
+    }
+
+    /**
+     * A generator and its buffer of random bytes, guarded by a lock.
+     */
+    private static class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final SecureRandom random = newDrbg();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position = BUFFER_SIZE;
+        private int bytesSinceReseed = 0;
+
+        /**
+         * Gets the next random byte, as a value between 0 and 255. Must be
+         * called while holding the lock.
+         */
+        private int nextByte() {
+            if (this.position == BUFFER_SIZE) {
+                if (this.bytesSinceReseed >= RESEED_INTERVAL_BYTES) {
+                    this.random.reseed();
+                    this.bytesSinceReseed = 0;
+                }
+                this.random.nextBytes(this.buffer);
+                this.bytesSinceReseed += BUFFER_SIZE;
+                this.position = 0;
+            }
+
+            int value = this.buffer[this.position] & 0xFF;
+            // Bytes that were used in a code are not kept in memory
+            this.buffer[this.position++] = 0;
+            return value;
+        }
+
+        private static SecureRandom newDrbg() {
+            try {
+                return SecureRandom.getInstance(
+                    "DRBG",
+                    DrbgParameters.instantiation(
+                        256,
+                        DrbgParameters.Capability.RESEED_ONLY,
+                        null
+                    )
+                );
+            } catch (NoSuchAlgorithmException exception) {
+                throw new IllegalStateException(
+                    "DRBG SecureRandom is not available",
+                    exception
+                );
+            }
+        }
+
+    }
+
+}
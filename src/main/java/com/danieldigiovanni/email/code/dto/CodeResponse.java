@@ -65,6 +65,10 @@ public class CodeResponse {
      * @return The code's expiry date.
      */
     private Date calculateExpiry(Code code) {
+        if (code.getExpiresAt() != null) {
+            return code.getExpiresAt();
+        }
+
         long startTimeInMillis = code.getCreatedAt().getTime();
         long maximumDurationInMillis = TimeUnit.MINUTES.toMillis(
             code.getMaximumDurationInMinutes()
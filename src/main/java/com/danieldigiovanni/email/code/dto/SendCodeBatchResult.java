@@ -0,0 +1,77 @@
+package com.danieldigiovanni.email.code.dto;
+
+import com.danieldigiovanni.email.error.ErrorResponseBody;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Format of one line of the response body for sending verification codes in
+ * a batch.
+ * <p>
+ * Each line of the request body gets one line in the response body, with the
+ * same line number. Exactly one of {@code code} and {@code error} is set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SendCodeBatchResult {
+
+    private final Integer line;
+    private final CodeResponse code;
+    private final ErrorResponseBody error;
+
+    private SendCodeBatchResult(Integer line, CodeResponse code, ErrorResponseBody error) {
+        this.line = line;
+        this.code = code;
+        this.error = error;
+    }
+
+    /**
+     * Creates the result of a line whose code was sent.
+     *
+     * @param line The line number in the request body (starting at 1).
+     * @param code The code that was sent.
+     *
+     * @return The successful result.
+     */
+    public static SendCodeBatchResult success(int line, CodeResponse code) {
+        return new SendCodeBatchResult(line, code, null);
+    }
+
+    /**
+     * Creates the result of a line whose code was not sent.
+     *
+     * @param line  The line number in the request body (starting at 1).
+     * @param error The reason the code was not sent.
+     *
+     * @return The failed result.
+     */
+    public static SendCodeBatchResult failure(int line, ErrorResponseBody error) {
+        return new SendCodeBatchResult(line, null, error);
+    }
+
+    /**
+     * Creates the result of a line whose code was not sent because of an
+     * unexpected error.
+     *
+     * @param line The line number in the request body (starting at 1).
+     *
+     * @return The failed result.
+     */
+    public static SendCodeBatchResult unknownFailure(int line) {
+        return failure(line, ErrorResponseBody.unHandledErrorResponse(
+            "Unknown Error",
+            "Code could not be sent"
+        ));
+    }
+
+    public Integer getLine() {
+        return this.line;
+    }
+
+    public CodeResponse getCode() {
+        return this.code;
+    }
+
+    public ErrorResponseBody getError() {
+        return this.error;
+    }
+
+}
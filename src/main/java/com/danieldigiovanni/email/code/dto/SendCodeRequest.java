@@ -1,5 +1,6 @@
 package com.danieldigiovanni.email.code.dto;
 
+import com.danieldigiovanni.email.code.CodeAlphabet;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
@@ -16,6 +17,8 @@ public class SendCodeRequest {
     @Min(2)
     @Max(10)
     private Integer length = 6;
+    @NotNull
+    private CodeAlphabet alphabet = CodeAlphabet.NUMERIC;
     @Min(1)
     private Integer maximumAttempts = 5;
     @Min(1)
@@ -54,4 +57,12 @@ public class SendCodeRequest {
         this.length = length;
     }
 
+    public CodeAlphabet getAlphabet() {
+        return this.alphabet;
+    }
+
+    public void setAlphabet(CodeAlphabet alphabet) {
+        this.alphabet = alphabet;
+    }
+
 }
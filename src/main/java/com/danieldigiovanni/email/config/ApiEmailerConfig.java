@@ -1,56 +1,155 @@
 package com.danieldigiovanni.email.config;
 
 import com.danieldigiovanni.email.emailer.ApiEmailer;
+import com.danieldigiovanni.email.emailer.AsyncApiEmailer;
+import com.danieldigiovanni.email.emailer.BatchingEmailer;
+import com.danieldigiovanni.email.emailer.EmailTemplate;
 import com.danieldigiovanni.email.emailer.Emailer;
+import com.danieldigiovanni.email.emailer.EmailerCircuitBreaker;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+
 @Configuration
 @Profile("api")
 public class ApiEmailerConfig {
 
     private final String fromAddress;
     private final String sendEmailUrl;
+    private final String sendBatchUrl;
     private final String refreshTokenUrl;
     private final String authScheme;
-    private final String emailHtmlTemplate;
+    private final EmailTemplate emailTemplate;
     private final RestTemplate restTemplate;
+    private final long tokenRefreshAheadMillis;
+    private final ObjectMapper objectMapper;
+    private final long connectTimeoutMillis;
+    private final long deadlineMillis;
+    private final EmailerCircuitBreaker circuitBreaker;
+    private final boolean batchEnabled;
+    private final int batchMaximumSize;
+    private final long batchWindowMillis;
     private final Logger log = LoggerFactory.getLogger(ApiEmailerConfig.class);
 
     @Autowired
     public ApiEmailerConfig(
         @Value("${emailer.api.from-address}") String fromAddress,
         @Value("${emailer.api.send-email-url}") String sendEmailUrl,
+        @Value("${emailer.api.send-batch-url:}") String sendBatchUrl,
         @Value("${emailer.api.refresh-token-url}") String refreshTokenUrl,
         @Value("${emailer.api.auth-scheme}") String authScheme,
-        @Qualifier("emailHtmlTemplate") String emailHtmlTemplate,
-        RestTemplate restTemplate
+        EmailTemplate emailTemplate,
+        RestTemplate restTemplate,
+        @Value("${emailer.api.token-refresh-ahead-millis}") long tokenRefreshAheadMillis,
+        ObjectMapper objectMapper,
+        @Value("${emailer.http.connect-timeout-millis}") long connectTimeoutMillis,
+        @Value("${emailer.http.deadline-millis}") long deadlineMillis,
+        EmailerCircuitBreaker circuitBreaker,
+        @Value("${emailer.api.batch.enabled}") boolean batchEnabled,
+        @Value("${emailer.api.batch.max-size}") int batchMaximumSize,
+        @Value("${emailer.api.batch.window-millis}") long batchWindowMillis
     ) {
         this.fromAddress = fromAddress;
         this.sendEmailUrl = sendEmailUrl;
+        this.sendBatchUrl = sendBatchUrl;
         this.refreshTokenUrl = refreshTokenUrl;
         this.authScheme = authScheme;
-        this.emailHtmlTemplate = emailHtmlTemplate;
+        this.emailTemplate = emailTemplate;
         this.restTemplate = restTemplate;
+        this.tokenRefreshAheadMillis = tokenRefreshAheadMillis;
+        this.objectMapper = objectMapper;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.deadlineMillis = deadlineMillis;
+        this.circuitBreaker = circuitBreaker;
+        this.batchEnabled = batchEnabled;
+        this.batchMaximumSize = batchMaximumSize;
+        this.batchWindowMillis = batchWindowMillis;
     }
 
+    /**
+     * Creates an API emailer that calls the API with the pooled rest template.
+     * <p>
+     * If {@code emailer.api.batch.enabled}, emails are collected and sent in
+     * batches with the batch API instead of one by one.
+     *
+     * @return The emailer.
+     *
+     * @throws IllegalStateException If batching is enabled without a batch
+     *                               API URL.
+     */
     @Bean
+    @ConditionalOnProperty(name = "emailer.api.http-client", havingValue = "pooled", matchIfMissing = true)
     public Emailer emailer() {
+        if (this.batchEnabled && this.sendBatchUrl.isBlank()) {
+            throw new IllegalStateException(
+                "emailer.api.send-batch-url must be set when "
+                    + "emailer.api.batch.enabled is true"
+            );
+        }
+
         this.log.info("Initializing API Emailer");
-        return new ApiEmailer(
+        ApiEmailer apiEmailer = new ApiEmailer(
+            this.fromAddress,
+            this.sendEmailUrl,
+            this.sendBatchUrl,
+            this.refreshTokenUrl,
+            this.authScheme,
+            this.emailTemplate,
+            this.restTemplate,
+            this.tokenRefreshAheadMillis
+        );
+
+        if (!this.batchEnabled) {
+            return apiEmailer;
+        }
+        this.log.info(
+            "Sending emails in batches of up to {} every {} ms",
+            this.batchMaximumSize,
+            this.batchWindowMillis
+        );
+        return new BatchingEmailer(
+            apiEmailer,
+            this.circuitBreaker,
+            this.batchMaximumSize,
+            this.batchWindowMillis
+        );
+    }
+
+    /**
+     * Creates an API emailer that does not block while the API responds,
+     * calling it with the JDK HTTP client over HTTP/2.
+     *
+     * @return The emailer.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "emailer.api.http-client", havingValue = "http2")
+    public Emailer asyncEmailer() {
+        this.log.info("Initializing async API Emailer");
+        HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofMillis(this.connectTimeoutMillis))
+            .build();
+
+        return new AsyncApiEmailer(
             this.fromAddress,
             this.sendEmailUrl,
             this.refreshTokenUrl,
             this.authScheme,
-            this.emailHtmlTemplate,
-            this.restTemplate
+            this.emailTemplate,
+            httpClient,
+            this.objectMapper,
+            this.deadlineMillis,
+            this.tokenRefreshAheadMillis
         );
     }
 
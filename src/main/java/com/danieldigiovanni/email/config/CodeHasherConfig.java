@@ -0,0 +1,35 @@
+package com.danieldigiovanni.email.config;
+
+import com.danieldigiovanni.email.code.CodeHasher;
+import com.danieldigiovanni.email.code.HmacSha256CodeHasher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Base64;
+
+@Configuration
+public class CodeHasherConfig {
+
+    private final String pepper;
+
+    @Autowired
+    public CodeHasherConfig(@Value("${code-hasher.pepper}") String pepper) {
+        this.pepper = pepper;
+    }
+
+    /**
+     * Creates the {@link CodeHasher} used for verification codes.
+     * <p>
+     * The pepper is a base64 encoded secret of at least 32 bytes. Changing it
+     * invalidates all active codes.
+     *
+     * @return A code hasher keyed with the configured pepper.
+     */
+    @Bean
+    public CodeHasher codeHasher() {
+        return new HmacSha256CodeHasher(Base64.getDecoder().decode(this.pepper));
+    }
+
+}
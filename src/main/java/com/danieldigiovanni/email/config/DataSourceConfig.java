@@ -0,0 +1,228 @@
+package com.danieldigiovanni.email.config;
+
+import com.danieldigiovanni.email.datasource.ReadRouting;
+import com.danieldigiovanni.email.datasource.Replica;
+import com.danieldigiovanni.email.datasource.ReplicaLagMonitor;
+import com.danieldigiovanni.email.datasource.ReplicaRoutingDataSource;
+import com.danieldigiovanni.email.datasource.ShardRouting;
+import com.danieldigiovanni.email.datasource.ShardRoutingDataSource;
+import com.danieldigiovanni.email.datasource.ShardSchemaIntegrator;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routes transactions across several databases, when read replicas
+ * ({@code datasource.replica.urls}) or shards ({@code datasource.shard.urls})
+ * are configured, each as a comma separated list of JDBC URLs.
+ * <p>
+ * The primary of the main database is configured as usual with the
+ * {@code spring.datasource} properties. Read-only transactions on the main
+ * database are sent to the replicas, and the sharded tables are spread across
+ * the main database and the shards (see {@link ShardRouting}). The replicas
+ * and the shards use the same credentials as the primary, unless their own
+ * {@code username} and {@code password} are set.
+ */
+@Configuration
+@ConditionalOnExpression("'${datasource.replica.urls:}' != '' or '${datasource.shard.urls:}' != ''")
+public class DataSourceConfig {
+
+    private final DataSourceProperties dataSourceProperties;
+
+    @Autowired
+    public DataSourceConfig(DataSourceProperties dataSourceProperties) {
+        this.dataSourceProperties = dataSourceProperties;
+    }
+
+    /**
+     * Creates the data source used by the application, which routes each
+     * transaction to a shard, and then to the primary or a replica.
+     *
+     * @param primaryDataSource    The connection pool of the primary.
+     * @param replicaRoutingSource The routing to the replicas, if configured.
+     * @param shardRoutingSource   The routing to the shards, if configured.
+     *
+     * @return The routing data source, obtaining connections lazily.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(
+        HikariDataSource primaryDataSource,
+        ObjectProvider<ReplicaRoutingDataSource> replicaRoutingSource,
+        ObjectProvider<ShardRoutingDataSource> shardRoutingSource
+    ) {
+        ShardRoutingDataSource shardRoutingDataSource =
+            shardRoutingSource.getIfAvailable();
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource != null
+            ? shardRoutingDataSource
+            : this.mainDataSource(primaryDataSource, replicaRoutingSource));
+    }
+
+    /**
+     * Creates the connection pool of the primary.
+     *
+     * @return The connection pool of the primary.
+     */
+    @Bean
+    public HikariDataSource primaryDataSource() {
+        HikariDataSource primaryDataSource = this.dataSourceProperties
+            .initializeDataSourceBuilder()
+            .type(HikariDataSource.class)
+            .build();
+        primaryDataSource.setPoolName("primary");
+        return primaryDataSource;
+    }
+
+    @Bean
+    @ConditionalOnProperty("datasource.replica.urls")
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+        HikariDataSource primaryDataSource,
+        ReadRouting readRouting,
+        @Value("${datasource.replica.urls}") List<String> replicaUrls,
+        @Value("${datasource.replica.username:}") String replicaUsername,
+        @Value("${datasource.replica.password:}") String replicaPassword
+    ) {
+        List<Replica> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replicaDataSource = this.createPool(
+                "replica-" + i,
+                replicaUrls.get(i),
+                replicaUsername,
+                replicaPassword
+            );
+            replicaDataSource.setReadOnly(true);
+            replicas.add(new Replica("replica-" + i, replicaDataSource));
+        }
+
+        return new ReplicaRoutingDataSource(
+            primaryDataSource,
+            replicas,
+            readRouting
+        );
+    }
+
+    @Bean
+    @ConditionalOnProperty("datasource.replica.urls")
+    public ReplicaLagMonitor replicaLagMonitor(
+        HikariDataSource primaryDataSource,
+        ReplicaRoutingDataSource routingDataSource,
+        @Value("${datasource.replica.max-staleness-millis}") long maximumStalenessMillis,
+        @Value("${datasource.replica.heartbeat-interval-millis}") long heartbeatIntervalMillis
+    ) {
+        ReplicaLagMonitor replicaLagMonitor = new ReplicaLagMonitor(
+            primaryDataSource,
+            routingDataSource.getReplicas(),
+            maximumStalenessMillis,
+            heartbeatIntervalMillis
+        );
+        replicaLagMonitor.start();
+        return replicaLagMonitor;
+    }
+
+    /**
+     * Creates the routing to the shards. Shard 0 is the main database, with
+     * its replicas if any, followed by one connection pool per shard URL.
+     */
+    @Bean
+    @ConditionalOnProperty("datasource.shard.urls")
+    public ShardRoutingDataSource shardRoutingDataSource(
+        HikariDataSource primaryDataSource,
+        ObjectProvider<ReplicaRoutingDataSource> replicaRoutingSource,
+        ShardRouting shardRouting,
+        @Value("${datasource.shard.urls}") List<String> shardUrls,
+        @Value("${datasource.shard.username:}") String shardUsername,
+        @Value("${datasource.shard.password:}") String shardPassword
+    ) {
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(this.mainDataSource(primaryDataSource, replicaRoutingSource));
+        for (int i = 0; i < shardUrls.size(); i++) {
+            shards.add(this.createPool(
+                "shard-" + (i + 1),
+                shardUrls.get(i),
+                shardUsername,
+                shardPassword
+            ));
+        }
+
+        return new ShardRoutingDataSource(shards, shardRouting);
+    }
+
+    /**
+     * Has Hibernate give back its connection at the end of each transaction,
+     * instead of holding it for the whole session, so that every transaction
+     * is routed on its own (a session can span several transactions, for
+     * example with {@code spring.jpa.open-in-view}).
+     */
+    @Bean
+    public HibernatePropertiesCustomizer connectionHandlingCustomizer() {
+        return properties -> properties.put(
+            AvailableSettings.CONNECTION_HANDLING,
+            PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION
+        );
+    }
+
+    /**
+     * Has Hibernate manage the schema of every shard.
+     */
+    @Bean
+    @ConditionalOnProperty("datasource.shard.urls")
+    public HibernatePropertiesCustomizer shardSchemaCustomizer(ShardRouting shardRouting) {
+        IntegratorProvider integratorProvider = () ->
+            List.of(new ShardSchemaIntegrator(shardRouting));
+        return properties -> properties.put(
+            EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER,
+            integratorProvider
+        );
+    }
+
+    /**
+     * Gets the data source of the main database: the routing to its replicas
+     * if configured, otherwise its primary.
+     */
+    private DataSource mainDataSource(HikariDataSource primaryDataSource, ObjectProvider<ReplicaRoutingDataSource> replicaRoutingSource) {
+        ReplicaRoutingDataSource replicaRoutingDataSource =
+            replicaRoutingSource.getIfAvailable();
+        return replicaRoutingDataSource != null
+            ? replicaRoutingDataSource
+            : primaryDataSource;
+    }
+
+    /**
+     * Creates a connection pool with the driver of the primary, and its
+     * credentials unless others are given.
+     */
+    private HikariDataSource createPool(String name, String url, String username, String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+            .type(HikariDataSource.class)
+            .driverClassName(this.dataSourceProperties.determineDriverClassName())
+            .url(url.trim())
+            .username(username.isEmpty()
+                ? this.dataSourceProperties.determineUsername()
+                : username)
+            .password(password.isEmpty()
+                ? this.dataSourceProperties.determinePassword()
+                : password)
+            .build();
+        dataSource.setPoolName(name);
+        return dataSource;
+    }
+
+}
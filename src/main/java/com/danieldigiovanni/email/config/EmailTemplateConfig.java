@@ -1,5 +1,6 @@
 package com.danieldigiovanni.email.config;
 
+import com.danieldigiovanni.email.emailer.EmailTemplate;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
@@ -8,19 +9,31 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.stream.Collectors;
 
 @Configuration
 public class EmailTemplateConfig {
 
-    @Bean("emailHtmlTemplate")
-    public String emailHtmlTemplate() throws IOException {
+    /**
+     * Loads and compiles the template of the verification emails, whose
+     * placeholders are {@code {{code}}} and {@code {{duration}}}, in that
+     * order.
+     *
+     * @return The compiled template.
+     */
+    @Bean
+    public EmailTemplate emailTemplate() throws IOException {
         InputStream inputStream =
             new ClassPathResource("emailTemplate.html").getInputStream();
-        BufferedReader reader =
-            new BufferedReader(new InputStreamReader(inputStream));
-        return reader.lines()
-            .collect(Collectors.joining(System.lineSeparator()));
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(inputStream, StandardCharsets.UTF_8)
+        );
+        return EmailTemplate.compile(
+            reader.lines().collect(Collectors.joining(System.lineSeparator())),
+            "code",
+            "duration"
+        );
     }
 
 }
@@ -1,45 +1,82 @@
 package com.danieldigiovanni.email.config;
 
+import com.danieldigiovanni.email.emailer.BatchingEmailer;
+import com.danieldigiovanni.email.emailer.EmailTemplate;
 import com.danieldigiovanni.email.emailer.Emailer;
+import com.danieldigiovanni.email.emailer.EmailerCircuitBreaker;
 import com.danieldigiovanni.email.emailer.MailtrapEmailer;
+import com.danieldigiovanni.email.emailer.SmtpTransportPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
-import org.springframework.mail.javamail.JavaMailSender;
 
 @Configuration
 @Profile("mailtrap")
 public class MailtrapEmailerConfig {
 
     private final String fromAddress;
-    private final String emailHtmlTemplate;
-    private final JavaMailSender mailSender;
+    private final EmailTemplate emailTemplate;
+    private final SmtpTransportPool transportPool;
+    private final EmailerCircuitBreaker circuitBreaker;
+    private final boolean batchEnabled;
+    private final int batchMaximumSize;
+    private final long batchWindowMillis;
     private final Logger log =
         LoggerFactory.getLogger(MailtrapEmailerConfig.class);
 
     @Autowired
     public MailtrapEmailerConfig(
         @Value("${emailer.api.from-address}") String fromAddress,
-        @Qualifier("emailHtmlTemplate") String emailHtmlTemplate,
-        JavaMailSender mailSender
+        EmailTemplate emailTemplate,
+        SmtpTransportPool transportPool,
+        EmailerCircuitBreaker circuitBreaker,
+        @Value("${emailer.smtp.batch.enabled}") boolean batchEnabled,
+        @Value("${emailer.smtp.batch.max-size}") int batchMaximumSize,
+        @Value("${emailer.smtp.batch.window-millis}") long batchWindowMillis
     ) {
         this.fromAddress = fromAddress;
-        this.emailHtmlTemplate = emailHtmlTemplate;
-        this.mailSender = mailSender;
+        this.emailTemplate = emailTemplate;
+        this.transportPool = transportPool;
+        this.circuitBreaker = circuitBreaker;
+        this.batchEnabled = batchEnabled;
+        this.batchMaximumSize = batchMaximumSize;
+        this.batchWindowMillis = batchWindowMillis;
     }
 
+    /**
+     * Creates a Mailtrap emailer.
+     * <p>
+     * If {@code emailer.smtp.batch.enabled}, emails are collected and sent in
+     * batches over a single SMTP connection instead of one by one.
+     *
+     * @return The emailer.
+     */
     @Bean
     public Emailer mailtrapEmailer() {
         this.log.info("Initializing Mailtrap Emailer");
-        return new MailtrapEmailer(
+        MailtrapEmailer mailtrapEmailer = new MailtrapEmailer(
             this.fromAddress,
-            this.emailHtmlTemplate,
-            this.mailSender
+            this.emailTemplate,
+            this.transportPool
+        );
+
+        if (!this.batchEnabled) {
+            return mailtrapEmailer;
+        }
+        this.log.info(
+            "Sending emails in batches of up to {} every {} ms",
+            this.batchMaximumSize,
+            this.batchWindowMillis
+        );
+        return new BatchingEmailer(
+            mailtrapEmailer,
+            this.circuitBreaker,
+            this.batchMaximumSize,
+            this.batchWindowMillis
         );
     }
 
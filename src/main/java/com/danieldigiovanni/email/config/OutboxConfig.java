@@ -0,0 +1,35 @@
+package com.danieldigiovanni.email.config;
+
+import com.danieldigiovanni.email.outbox.PayloadCipher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Base64;
+
+@Configuration
+public class OutboxConfig {
+
+    private final String secretKey;
+
+    @Autowired
+    public OutboxConfig(@Value("${outbox.secret-key}") String secretKey) {
+        this.secretKey = secretKey;
+    }
+
+    /**
+     * Creates the cipher for codes waiting in the outbox.
+     * <p>
+     * The secret key is a base64 encoded AES key (16, 24, or 32 bytes).
+     * Changing it makes pending messages unreadable, so it should only be
+     * changed once the outbox is drained.
+     *
+     * @return A cipher keyed with the configured secret key.
+     */
+    @Bean
+    public PayloadCipher payloadCipher() {
+        return new PayloadCipher(Base64.getDecoder().decode(this.secretKey));
+    }
+
+}
@@ -1,23 +1,171 @@
 package com.danieldigiovanni.email.config;
 
+import com.danieldigiovanni.email.emailer.RequestDeadline;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.DefaultResponseErrorHandler;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.function.ToIntFunction;
+
 @Configuration
 public class RestTemplateConfig {
 
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final long connectTimeoutMillis;
+    private final long connectionRequestTimeoutMillis;
+    private final long readTimeoutMillis;
+    private final long deadlineMillis;
+    private final long idleTimeoutMillis;
+    private final long validateAfterInactivityMillis;
+
+    @Autowired
+    public RestTemplateConfig(
+        @Value("${emailer.http.max-connections}") int maxConnections,
+        @Value("${emailer.http.max-connections-per-route}") int maxConnectionsPerRoute,
+        @Value("${emailer.http.connect-timeout-millis}") long connectTimeoutMillis,
+        @Value("${emailer.http.connection-request-timeout-millis}") long connectionRequestTimeoutMillis,
+        @Value("${emailer.http.read-timeout-millis}") long readTimeoutMillis,
+        @Value("${emailer.http.deadline-millis}") long deadlineMillis,
+        @Value("${emailer.http.idle-timeout-millis}") long idleTimeoutMillis,
+        @Value("${emailer.http.validate-after-inactivity-millis}") long validateAfterInactivityMillis
+    ) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.deadlineMillis = deadlineMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validateAfterInactivityMillis = validateAfterInactivityMillis;
+    }
+
+    /**
+     * Creates the pool of keep-alive connections to the email provider.
+     * <p>
+     * All TLS connections share one SSL context, so a new connection to a
+     * host resumes the TLS session of a previous one instead of doing a full
+     * handshake. Connections idle for longer than
+     * {@code emailer.http.validate-after-inactivity-millis} are checked before
+     * being reused, since the provider may have closed them.
+     *
+     * @return The connection pool.
+     */
+    @Bean
+    public PoolingHttpClientConnectionManager httpConnectionManager() {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+            .setSSLSocketFactory(
+                SSLConnectionSocketFactoryBuilder.create()
+                    .setSslContext(SSLContexts.createSystemDefault())
+                    .build()
+            )
+            .setMaxConnTotal(this.maxConnections)
+            .setMaxConnPerRoute(this.maxConnectionsPerRoute)
+            .setDefaultSocketConfig(
+                SocketConfig.custom()
+                    .setSoTimeout(Timeout.ofMilliseconds(this.readTimeoutMillis))
+                    .setSoKeepAlive(true)
+                    .setTcpNoDelay(true)
+                    .build()
+            )
+            .setValidateAfterInactivity(
+                TimeValue.ofMilliseconds(this.validateAfterInactivityMillis)
+            )
+            .build();
+    }
+
+    @Bean
+    public RequestDeadline requestDeadline() {
+        return new RequestDeadline(this.deadlineMillis);
+    }
+
+    /**
+     * Creates the HTTP client used to call the email provider.
+     * <p>
+     * Waiting for a pooled connection, connecting and each read are bounded
+     * by their own timeout, and the whole exchange by the
+     * {@link RequestDeadline}. Connections idle for longer than
+     * {@code emailer.http.idle-timeout-millis} are closed in the background.
+     *
+     * @param httpConnectionManager The connection pool.
+     * @param requestDeadline       The total deadline of each exchange.
+     *
+     * @return The HTTP client.
+     */
+    @Bean
+    public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager httpConnectionManager, RequestDeadline requestDeadline) {
+        return HttpClients.custom()
+            .setConnectionManager(httpConnectionManager)
+            .setConnectionManagerShared(true)
+            .setDefaultRequestConfig(
+                RequestConfig.custom()
+                    .setConnectionRequestTimeout(
+                        Timeout.ofMilliseconds(this.connectionRequestTimeoutMillis)
+                    )
+                    .setConnectTimeout(
+                        Timeout.ofMilliseconds(this.connectTimeoutMillis)
+                    )
+                    .setResponseTimeout(
+                        Timeout.ofMilliseconds(this.readTimeoutMillis)
+                    )
+                    .build()
+            )
+            .addExecInterceptorFirst("deadline", requestDeadline)
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.ofMilliseconds(this.idleTimeoutMillis))
+            .build();
+    }
+
+    /**
+     * Exposes the statistics of the connection pool as metrics.
+     *
+     * @param httpConnectionManager The connection pool.
+     *
+     * @return The binder of the connection pool metrics.
+     */
+    @Bean
+    public MeterBinder httpConnectionPoolMetrics(PoolingHttpClientConnectionManager httpConnectionManager) {
+        return registry -> {
+            this.registerPoolGauge(registry, httpConnectionManager, "leased", "Connections in use", PoolStats::getLeased);
+            this.registerPoolGauge(registry, httpConnectionManager, "available", "Idle connections ready to be reused", PoolStats::getAvailable);
+            this.registerPoolGauge(registry, httpConnectionManager, "pending", "Requests waiting for a connection", PoolStats::getPending);
+            this.registerPoolGauge(registry, httpConnectionManager, "max", "Maximum number of connections", PoolStats::getMax);
+        };
+    }
+
     /**
      * Creates a {@link RestTemplate} bean whose error handler does nothing.
      *
+     * @param httpClient The pooled HTTP client.
+     *
      * @return A rest template that does not handle errors.
      */
     @Bean
-    public RestTemplate restTemplate() {
+    public RestTemplate restTemplate(CloseableHttpClient httpClient) {
         return new RestTemplateBuilder()
+            .requestFactory(() ->
+                new HttpComponentsClientHttpRequestFactory(httpClient)
+            )
             .errorHandler(
                 new DefaultResponseErrorHandler() {
                     @Override
@@ -27,4 +175,14 @@ public class RestTemplateConfig {
             .build();
     }
 
+    private void registerPoolGauge(MeterRegistry registry, PoolingHttpClientConnectionManager httpConnectionManager, String name, String description, ToIntFunction<PoolStats> stat) {
+        Gauge.builder(
+                "http.client.pool." + name,
+                httpConnectionManager,
+                manager -> stat.applyAsInt(manager.getTotalStats())
+            )
+            .description(description)
+            .register(registry);
+    }
+
 }
@@ -0,0 +1,136 @@
+package com.danieldigiovanni.email.config;
+
+import com.danieldigiovanni.email.emailer.ApiEmailer;
+import com.danieldigiovanni.email.emailer.EmailTemplate;
+import com.danieldigiovanni.email.emailer.Emailer;
+import com.danieldigiovanni.email.emailer.MailtrapEmailer;
+import com.danieldigiovanni.email.emailer.NoOpEmailer;
+import com.danieldigiovanni.email.emailer.RoutingEmailer;
+import com.danieldigiovanni.email.emailer.SmtpTransportPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routes emails across several mail providers, instead of the single provider
+ * of the {@code api}, {@code mailtrap}, or {@code no-op} profile.
+ * <p>
+ * The providers are listed in {@code emailer.routing.providers}, and each is
+ * configured with {@code emailer.routing.provider.<name>.*} properties: its
+ * {@code type} ({@code api}, {@code mailtrap}, or {@code no-op}), its
+ * {@code weight}, and, for the {@code api} type, the same settings as the
+ * {@code emailer.api.*} properties, so that each provider can be a different
+ * account.
+ */
+@Configuration
+@Profile("routing")
+public class RoutingEmailerConfig {
+
+    private static final String PREFIX = "emailer.routing.provider.";
+
+    private final Environment environment;
+    private final List<String> providerNames;
+    private final double ewmaAlpha;
+    private final EmailTemplate emailTemplate;
+    private final RestTemplate restTemplate;
+    private final SmtpTransportPool transportPool;
+    private final long tokenRefreshAheadMillis;
+    private final Logger log = LoggerFactory.getLogger(RoutingEmailerConfig.class);
+
+    @Autowired
+    public RoutingEmailerConfig(
+        Environment environment,
+        @Value("${emailer.routing.providers}") List<String> providerNames,
+        @Value("${emailer.routing.ewma-alpha}") double ewmaAlpha,
+        EmailTemplate emailTemplate,
+        RestTemplate restTemplate,
+        SmtpTransportPool transportPool,
+        @Value("${emailer.api.token-refresh-ahead-millis}") long tokenRefreshAheadMillis
+    ) {
+        this.environment = environment;
+        this.providerNames = providerNames;
+        this.ewmaAlpha = ewmaAlpha;
+        this.emailTemplate = emailTemplate;
+        this.restTemplate = restTemplate;
+        this.transportPool = transportPool;
+        this.tokenRefreshAheadMillis = tokenRefreshAheadMillis;
+    }
+
+    /**
+     * Creates an emailer that routes emails across the configured providers.
+     *
+     * @return The emailer.
+     *
+     * @throws IllegalStateException If a provider is missing a property or has
+     *                               an unknown type.
+     */
+    @Bean
+    public RoutingEmailer routingEmailer() {
+        List<RoutingEmailer.Provider> providers = new ArrayList<>();
+        for (String name : this.providerNames) {
+            double weight = this.environment.getRequiredProperty(
+                PREFIX + name + ".weight",
+                Double.class
+            );
+            String type = this.environment.getRequiredProperty(PREFIX + name + ".type");
+            this.log.info(
+                "Routing emails to {} provider {} with weight {}",
+                type,
+                name,
+                weight
+            );
+            providers.add(new RoutingEmailer.Provider(
+                name,
+                this.createEmailer(name, type),
+                weight
+            ));
+        }
+        return new RoutingEmailer(providers, this.ewmaAlpha);
+    }
+
+    private Emailer createEmailer(String name, String type) {
+        String prefix = PREFIX + name + ".";
+        return switch (type) {
+            case "api" -> new ApiEmailer(
+                this.fromAddress(prefix),
+                this.environment.getRequiredProperty(prefix + "send-email-url"),
+                this.environment.getProperty(prefix + "send-batch-url", ""),
+                this.environment.getRequiredProperty(prefix + "refresh-token-url"),
+                this.environment.getRequiredProperty(prefix + "auth-scheme"),
+                this.emailTemplate,
+                this.restTemplate,
+                this.tokenRefreshAheadMillis
+            );
+            case "mailtrap" -> new MailtrapEmailer(
+                this.fromAddress(prefix),
+                this.emailTemplate,
+                this.transportPool
+            );
+            case "no-op" -> new NoOpEmailer();
+            default -> throw new IllegalStateException(
+                "Unknown type " + type + " of mail provider " + name
+            );
+        };
+    }
+
+    /**
+     * Gets the from address of a provider, which defaults to
+     * {@code emailer.api.from-address}.
+     */
+    private String fromAddress(String prefix) {
+        String fromAddress = this.environment.getProperty(prefix + "from-address");
+        return fromAddress != null
+            ? fromAddress
+            : this.environment.getRequiredProperty("emailer.api.from-address");
+    }
+
+}
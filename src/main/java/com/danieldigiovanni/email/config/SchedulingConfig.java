@@ -0,0 +1,12 @@
+package com.danieldigiovanni.email.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables {@link org.springframework.scheduling.annotation.Scheduled} methods,
+ * which are used for periodic maintenance tasks.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig { }
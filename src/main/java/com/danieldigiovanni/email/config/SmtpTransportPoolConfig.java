@@ -0,0 +1,90 @@
+package com.danieldigiovanni.email.config;
+
+import com.danieldigiovanni.email.emailer.SmtpTransportPool;
+import jakarta.mail.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Properties;
+
+@Configuration
+public class SmtpTransportPoolConfig {
+
+    private final String host;
+    private final Integer port;
+    private final String username;
+    private final String password;
+    private final int maxConnections;
+    private final int maxMessagesPerConnection;
+    private final long connectTimeoutMillis;
+    private final long timeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long validateAfterInactivityMillis;
+    private final long borrowTimeoutMillis;
+    private final boolean startTls;
+
+    @Autowired
+    public SmtpTransportPoolConfig(
+        @Value("${emailer.mailtrap.host}") String host,
+        @Value("${emailer.mailtrap.port}") Integer port,
+        @Value("${emailer.mailtrap.username}") String username,
+        @Value("${emailer.mailtrap.password}") String password,
+        @Value("${emailer.smtp.max-connections}") int maxConnections,
+        @Value("${emailer.smtp.max-messages-per-connection}") int maxMessagesPerConnection,
+        @Value("${emailer.smtp.connect-timeout-millis}") long connectTimeoutMillis,
+        @Value("${emailer.smtp.timeout-millis}") long timeoutMillis,
+        @Value("${emailer.smtp.idle-timeout-millis}") long idleTimeoutMillis,
+        @Value("${emailer.smtp.validate-after-inactivity-millis}") long validateAfterInactivityMillis,
+        @Value("${emailer.smtp.borrow-timeout-millis}") long borrowTimeoutMillis,
+        @Value("${emailer.smtp.starttls}") boolean startTls
+    ) {
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.maxConnections = maxConnections;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validateAfterInactivityMillis = validateAfterInactivityMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.startTls = startTls;
+    }
+
+    /**
+     * Creates the pool of SMTP connections used to send emails.
+     * <p>
+     * Connections are only opened when an email is sent. Every SMTP command
+     * is bounded by {@code emailer.smtp.timeout-millis}, so a hung server
+     * cannot hold a connection forever.
+     *
+     * @return The connection pool.
+     */
+    @Bean
+    public SmtpTransportPool smtpTransportPool() {
+        Properties properties = new Properties();
+        properties.put("mail.transport.protocol", "smtp");
+        properties.put("mail.smtp.auth", "true");
+        properties.put("mail.smtp.starttls.enable", String.valueOf(this.startTls));
+        properties.put("mail.smtp.connectiontimeout", String.valueOf(this.connectTimeoutMillis));
+        properties.put("mail.smtp.timeout", String.valueOf(this.timeoutMillis));
+        properties.put("mail.smtp.writetimeout", String.valueOf(this.timeoutMillis));
+
+        return new SmtpTransportPool(
+            Session.getInstance(properties),
+            this.host,
+            this.port,
+            this.username,
+            this.password,
+            this.maxConnections,
+            this.maxMessagesPerConnection,
+            this.idleTimeoutMillis,
+            this.validateAfterInactivityMillis,
+            this.borrowTimeoutMillis
+        );
+    }
+
+}
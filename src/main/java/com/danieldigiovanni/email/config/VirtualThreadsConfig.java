@@ -0,0 +1,94 @@
+package com.danieldigiovanni.email.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs requests and the sending of emails on virtual threads.
+ * <p>
+ * Requests and emails mostly wait on the database and the mail provider, so
+ * with virtual threads they no longer each hold a platform thread while
+ * waiting, and the number of concurrent requests is no longer capped by the
+ * Tomcat thread pool.
+ * <p>
+ * The application is built for Java 17, so virtual threads are created by
+ * reflection. The profile fails at startup on a Java version without them.
+ */
+@Configuration
+@Profile("virtual-threads")
+public class VirtualThreadsConfig {
+
+    private final Logger log = LoggerFactory.getLogger(VirtualThreadsConfig.class);
+
+    public VirtualThreadsConfig() {
+        if (!VirtualThreadsConfig.isSupported()) {
+            throw new IllegalStateException(
+                "The virtual-threads profile needs Java 21 or later, but this is "
+                    + "Java " + Runtime.version().feature()
+            );
+        }
+    }
+
+    /**
+     * Replaces the Tomcat thread pool with a new virtual thread per request.
+     *
+     * @return The customizer of the Tomcat protocol handler.
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        this.log.info("Handling requests on virtual threads");
+        ExecutorService executor;
+        try {
+            executor = (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor")
+                .invoke(null);
+        } catch (ReflectiveOperationException exception) {
+            throw new IllegalStateException(
+                "Unable to create virtual threads",
+                exception
+            );
+        }
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    /**
+     * Creates the threads of the email dispatcher as virtual threads.
+     *
+     * @return The thread factory of the email dispatcher.
+     */
+    @Bean
+    public ThreadFactory emailDispatchThreadFactory() {
+        this.log.info("Sending emails on virtual threads");
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                .invoke(builder, "email-dispatch-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory")
+                .invoke(builder);
+        } catch (ReflectiveOperationException exception) {
+            throw new IllegalStateException(
+                "Unable to create virtual threads",
+                exception
+            );
+        }
+    }
+
+    private static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException exception) {
+            return false;
+        }
+    }
+
+}
@@ -1,28 +1,51 @@
 package com.danieldigiovanni.email.customer;
 
 import com.danieldigiovanni.email.auth.AuthUtils;
+import com.danieldigiovanni.email.code.ActiveCodeCache;
+import com.danieldigiovanni.email.code.ActiveCodeRepository;
+import com.danieldigiovanni.email.code.CodeRepository;
 import com.danieldigiovanni.email.customer.dto.UpdateCustomerRequest;
 import com.danieldigiovanni.email.customer.dto.UpdatePasswordRequest;
+import com.danieldigiovanni.email.datasource.ReadRouting;
+import com.danieldigiovanni.email.datasource.ShardRouting;
+import com.danieldigiovanni.email.outbox.OutboxRepository;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.ValidationException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.security.Principal;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class CustomerService {
 
     private final CustomerRepository customerRepository;
+    private final ReadRouting readRouting;
+    private final CodeRepository codeRepository;
+    private final ActiveCodeRepository activeCodeRepository;
+    private final ActiveCodeCache activeCodeCache;
+    private final OutboxRepository outboxRepository;
+    private final ShardRouting shardRouting;
+    private final TransactionTemplate transactionTemplate;
     private final PasswordEncoder passwordEncoder;
     private final AuthUtils authUtils;
 
     @Autowired
-    public CustomerService(CustomerRepository customerRepository, PasswordEncoder passwordEncoder, AuthUtils authUtils) {
+    public CustomerService(CustomerRepository customerRepository, ReadRouting readRouting, CodeRepository codeRepository, ActiveCodeRepository activeCodeRepository, ActiveCodeCache activeCodeCache, OutboxRepository outboxRepository, ShardRouting shardRouting, TransactionTemplate transactionTemplate, PasswordEncoder passwordEncoder, AuthUtils authUtils) {
         this.customerRepository = customerRepository;
+        this.readRouting = readRouting;
+        this.codeRepository = codeRepository;
+        this.activeCodeRepository = activeCodeRepository;
+        this.activeCodeCache = activeCodeCache;
+        this.outboxRepository = outboxRepository;
+        this.shardRouting = shardRouting;
+        this.transactionTemplate = transactionTemplate;
         this.passwordEncoder = passwordEncoder;
         this.authUtils = authUtils;
     }
@@ -30,8 +53,12 @@ public class CustomerService {
     public Customer getCustomerByPrincipal(Principal principal) {
         Long id = Long.valueOf(principal.getName());
 
+        // A customer that just registered may not be on the read replica yet
         Optional<Customer> customerOptional
-            = this.customerRepository.findById(id);
+            = this.customerRepository.findById(id)
+            .or(() -> this.readRouting.onPrimary(() ->
+                this.customerRepository.findById(id)
+            ));
 
         return customerOptional.orElseThrow(() -> new EntityNotFoundException(
             "Customer with ID " + id + " does not exist"
@@ -39,7 +66,10 @@ public class CustomerService {
     }
 
     public Customer updateCustomer(Principal principal, UpdateCustomerRequest updates) {
-        Customer customer = this.getCustomerByPrincipal(principal);
+        // Read from the primary, since the customer is written back
+        Customer customer = this.readRouting.onPrimary(() ->
+            this.getCustomerByPrincipal(principal)
+        );
 
         customer.setName(updates.getName());
         customer.setUpdatedAt(new Date());
@@ -48,7 +78,10 @@ public class CustomerService {
     }
 
     public Customer updatePassword(Principal principal, UpdatePasswordRequest updates) {
-        Customer customer = this.getCustomerByPrincipal(principal);
+        // Read from the primary, since the customer is written back
+        Customer customer = this.readRouting.onPrimary(() ->
+            this.getCustomerByPrincipal(principal)
+        );
 
         boolean oldPasswordCorrect = this.passwordEncoder.matches(
             updates.getOldPassword(),
@@ -92,8 +125,33 @@ public class CustomerService {
     }
 
     public void deleteCustomer(Principal principal) {
-        Customer customer = this.getCustomerByPrincipal(principal);
+        // Read from the primary, since the customer is written back
+        Customer customer = this.readRouting.onPrimary(() ->
+            this.getCustomerByPrincipal(principal)
+        );
 
+        // Codes are sharded, so they are not deleted by a foreign key. The
+        // slots of their emails may also be on the previous shard of the
+        // emails while re-sharding, so they are looked up on every shard
+        // first.
+        Set<String> activeEmails = new HashSet<>();
+        Date now = new Date();
+        this.shardRouting.onEachShard(() -> activeEmails.addAll(
+            this.codeRepository.findActiveEmailsByCustomerId(customer.getId(), now)
+        ));
+
+        // The pending emails of the codes are deleted with them, so that
+        // they are not sent
+        this.shardRouting.onEachShard(() ->
+            this.transactionTemplate.execute(status -> {
+                if (!activeEmails.isEmpty()) {
+                    this.activeCodeRepository.deleteByEmailIn(activeEmails);
+                }
+                this.outboxRepository.deleteByCustomerId(customer.getId());
+                return this.codeRepository.deleteByCustomerId(customer.getId());
+            })
+        );
+        activeEmails.forEach(this.activeCodeCache::remove);
         this.customerRepository.deleteById(customer.getId());
     }
 
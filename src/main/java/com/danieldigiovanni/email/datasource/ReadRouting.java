@@ -0,0 +1,53 @@
+package com.danieldigiovanni.email.datasource;
+
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Decides whether read-only transactions may be routed to a read replica.
+ * <p>
+ * When read replicas are configured, read-only transactions (including the
+ * read methods of the repositories) are sent to a replica, which may be
+ * slightly behind the primary. Reads that must see the latest writes, such as
+ * reads followed by a write, are run with {@link #onPrimary(Supplier)}.
+ * Without replicas, everything already runs on the primary.
+ */
+@Component
+public class ReadRouting {
+
+    private final ThreadLocal<Boolean> pinnedToPrimary = new ThreadLocal<>();
+
+    /**
+     * Runs an action with all of its reads sent to the primary.
+     *
+     * @param action The action to run.
+     * @param <T>    The type of the result of the action.
+     *
+     * @return The result of the action.
+     */
+    public <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = this.pinnedToPrimary.get();
+        this.pinnedToPrimary.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                this.pinnedToPrimary.remove();
+            } else {
+                this.pinnedToPrimary.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Checks if the current thread is running an action with
+     * {@link #onPrimary(Supplier)}.
+     *
+     * @return True if reads must be sent to the primary.
+     */
+    public boolean isPinnedToPrimary() {
+        return Boolean.TRUE.equals(this.pinnedToPrimary.get());
+    }
+
+}
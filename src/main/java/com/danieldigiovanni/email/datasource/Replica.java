@@ -0,0 +1,48 @@
+package com.danieldigiovanni.email.datasource;
+
+import javax.sql.DataSource;
+
+/**
+ * A read replica, and how far behind the primary it was at the last check.
+ */
+public class Replica {
+
+    private final String name;
+    private final DataSource dataSource;
+    private volatile long lagMillis = Long.MAX_VALUE;
+    private volatile boolean fresh = false;
+
+    public Replica(String name, DataSource dataSource) {
+        this.name = name;
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Records the result of a lag check.
+     *
+     * @param lagMillis How far behind the primary the replica is, or
+     *                  {@link Long#MAX_VALUE} if it could not be checked.
+     * @param fresh     True if the replica can serve reads.
+     */
+    void update(long lagMillis, boolean fresh) {
+        this.lagMillis = lagMillis;
+        this.fresh = fresh;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public DataSource getDataSource() {
+        return this.dataSource;
+    }
+
+    public long getLagMillis() {
+        return this.lagMillis;
+    }
+
+    public boolean isFresh() {
+        return this.fresh;
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.danieldigiovanni.email.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how far each read replica is behind the primary.
+ * <p>
+ * The {@link ReplicationHeartbeat} row is updated on the primary with the
+ * current time on every run, and read back from each replica. The difference
+ * with the current time is the lag of the replica (up to one heartbeat
+ * interval more, since the row is only updated once per run). A replica that
+ * lags more than the maximum staleness, or that cannot be reached, is not used
+ * until it catches up.
+ * <p>
+ * The heartbeat runs on its own thread rather than with the other scheduled
+ * tasks, so that a long outbox poll or archiving run cannot delay it past the
+ * maximum staleness and send every read to the primary.
+ */
+public class ReplicaLagMonitor implements AutoCloseable {
+
+    private final JdbcTemplate primary;
+    private final List<Replica> replicas;
+    private final long maximumStalenessMillis;
+    private final long heartbeatIntervalMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    public ReplicaLagMonitor(DataSource primary, List<Replica> replicas, long maximumStalenessMillis, long heartbeatIntervalMillis) {
+        this.primary = new JdbcTemplate(primary);
+        this.replicas = replicas;
+        this.maximumStalenessMillis = maximumStalenessMillis;
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts beating every {@code heartbeatIntervalMillis}.
+     */
+    public void start() {
+        this.scheduler.scheduleAtFixedRate(
+            () -> {
+                try {
+                    this.beat();
+                } catch (RuntimeException exception) {
+                    // Keeps beating, a failed run would cancel the others
+                    this.log.warn("Replication heartbeat failed", exception);
+                }
+            },
+            0,
+            this.heartbeatIntervalMillis,
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    @Override
+    public void close() {
+        this.scheduler.shutdownNow();
+    }
+
+    /**
+     * Updates the heartbeat on the primary and checks the lag of each replica.
+     */
+    public void beat() {
+        this.writeHeartbeat(new Timestamp(System.currentTimeMillis()));
+        for (Replica replica : this.replicas) {
+            this.check(replica);
+        }
+    }
+
+    private void writeHeartbeat(Timestamp now) {
+        try {
+            int updated = this.primary.update(
+                "update replication_heartbeat set beat_at = ? where id = 1",
+                now
+            );
+            if (updated == 0) {
+                this.primary.update(
+                    "insert into replication_heartbeat (id, beat_at) values (1, ?)",
+                    now
+                );
+            }
+        } catch (DuplicateKeyException exception) {
+            // Another instance inserted the row first
+        } catch (DataAccessException exception) {
+            this.log.warn(
+                "Unable to write replication heartbeat: {}",
+                exception.getMessage()
+            );
+        }
+    }
+
+    private void check(Replica replica) {
+        boolean wasFresh = replica.isFresh();
+        try {
+            Timestamp beatAt = new JdbcTemplate(replica.getDataSource())
+                .queryForObject(
+                    "select beat_at from replication_heartbeat where id = 1",
+                    Timestamp.class
+                );
+            long lagMillis = beatAt == null
+                ? Long.MAX_VALUE
+                : Math.max(0, System.currentTimeMillis() - beatAt.getTime());
+            replica.update(lagMillis, lagMillis <= this.maximumStalenessMillis);
+        } catch (DataAccessException exception) {
+            replica.update(Long.MAX_VALUE, false);
+        }
+
+        if (wasFresh && !replica.isFresh()) {
+            this.log.warn(
+                "Replica {} is {} ms behind, reads are sent to the primary",
+                replica.getName(),
+                replica.getLagMillis()
+            );
+        } else if (!wasFresh && replica.isFresh()) {
+            this.log.info("Replica {} is serving reads", replica.getName());
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.danieldigiovanni.email.datasource;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends read-only transactions to the read replicas, and everything else to
+ * the primary.
+ * <p>
+ * Replicas are used in turn, skipping those that are further behind than the
+ * allowed staleness (as measured by the {@link ReplicaLagMonitor}). If no
+ * replica is fresh enough, or if the reads are pinned with
+ * {@link ReadRouting#onPrimary(java.util.function.Supplier)}, the primary is
+ * used.
+ * <p>
+ * The routing decision is made when a connection is obtained, so this data
+ * source must be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy},
+ * which delays obtaining the connection until the read-only flag of the
+ * transaction is known.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements MeterBinder, AutoCloseable {
+
+    private static final String PRIMARY = "primary";
+
+    private final List<Replica> replicas;
+    private final ReadRouting readRouting;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder staleFallbacks = new LongAdder();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<Replica> replicas, ReadRouting readRouting) {
+        this.replicas = replicas;
+        this.readRouting = readRouting;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (Replica replica : replicas) {
+            targets.put(replica.getName(), replica.getDataSource());
+        }
+        this.setTargetDataSources(targets);
+        this.setDefaultTargetDataSource(primary);
+    }
+
+    public List<Replica> getReplicas() {
+        return this.replicas;
+    }
+
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+        FunctionCounter.builder("datasource.routing.replica.reads", this.replicaReads, LongAdder::sum)
+            .description("Read-only transactions sent to a replica")
+            .register(registry);
+        FunctionCounter.builder("datasource.routing.stale.fallbacks", this.staleFallbacks, LongAdder::sum)
+            .description("Read-only transactions sent to the primary because no replica was fresh enough")
+            .register(registry);
+        for (Replica replica : this.replicas) {
+            Gauge.builder("datasource.replica.lag", replica, Replica::getLagMillis)
+                .description("Milliseconds the replica is behind the primary")
+                .tag("replica", replica.getName())
+                .baseUnit("milliseconds")
+                .register(registry);
+        }
+    }
+
+    /**
+     * Closes the connection pools of the replicas. The primary is closed by
+     * its owner.
+     *
+     * @throws Exception If closing a pool fails.
+     */
+    @Override
+    public void close() throws Exception {
+        for (Replica replica : this.replicas) {
+            if (replica.getDataSource() instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+            || this.readRouting.isPinnedToPrimary()) {
+            return PRIMARY;
+        }
+
+        int start = this.nextReplica.getAndIncrement();
+        for (int i = 0; i < this.replicas.size(); i++) {
+            Replica replica = this.replicas.get(
+                Math.floorMod(start + i, this.replicas.size())
+            );
+            if (replica.isFresh()) {
+                this.replicaReads.increment();
+                return replica.getName();
+            }
+        }
+
+        this.staleFallbacks.increment();
+        return PRIMARY;
+    }
+
+}
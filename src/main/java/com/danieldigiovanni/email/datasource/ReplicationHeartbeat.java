@@ -0,0 +1,32 @@
+package com.danieldigiovanni.email.datasource;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.Date;
+
+/**
+ * A single row, updated regularly on the primary by the
+ * {@link ReplicaLagMonitor}. How old the row is on a replica is how far the
+ * replica is behind.
+ */
+@Entity
+public class ReplicationHeartbeat {
+
+    @Id
+    private Integer id;
+    @NotNull
+    private Date beatAt;
+
+    public ReplicationHeartbeat() { }
+
+    public Integer getId() {
+        return this.id;
+    }
+
+    public Date getBeatAt() {
+        return this.beatAt;
+    }
+
+}
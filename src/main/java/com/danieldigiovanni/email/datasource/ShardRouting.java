@@ -0,0 +1,199 @@
+package com.danieldigiovanni.email.datasource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Decides which shard the rows of the {@code code} and {@code metrics} tables
+ * (and the tables that go with them) are stored on.
+ * <p>
+ * Shard 0 is the main database, configured with the {@code spring.datasource}
+ * properties, which also holds every table that is not sharded (such as
+ * {@code customer}). The other shards are listed in
+ * {@code datasource.shard.urls}. Codes (with their active code slots and
+ * outbox messages) are placed by a stable hash of their email, and metrics by
+ * the id of their customer.
+ * <p>
+ * Keys are mapped to shards with a jump consistent hash, so when a shard is
+ * added at the end of the list, only the keys moving to the new shard change
+ * shard. While {@code datasource.shard.previous-count} is set to the number of
+ * shards before the change, active codes are also looked up on the shard they
+ * were on before (see DEPLOYMENT.md).
+ * <p>
+ * Without {@code datasource.shard.urls}, there is a single shard and
+ * everything runs on the main database.
+ */
+@Component
+public class ShardRouting {
+
+    private final int shardCount;
+    private final int previousShardCount;
+    private final ThreadLocal<Integer> currentShard = new ThreadLocal<>();
+
+    @Autowired
+    public ShardRouting(
+        @Value("${datasource.shard.urls:}") List<String> shardUrls,
+        @Value("${datasource.shard.previous-count}") int previousShardCount
+    ) {
+        this.shardCount = 1 + (int) shardUrls.stream()
+            .filter(url -> !url.isBlank())
+            .count();
+        this.previousShardCount = previousShardCount > 0
+            ? previousShardCount
+            : this.shardCount;
+    }
+
+    public int getShardCount() {
+        return this.shardCount;
+    }
+
+    /**
+     * Gets the shard of the codes of an email.
+     *
+     * @param email The email of the codes.
+     *
+     * @return The index of the shard.
+     */
+    public int shardOf(String email) {
+        return jumpConsistentHash(mix(fnv1a(email)), this.shardCount);
+    }
+
+    /**
+     * Gets the shard of the metrics of a customer.
+     *
+     * @param customerId The id of the customer.
+     *
+     * @return The index of the shard.
+     */
+    public int shardOf(Long customerId) {
+        return jumpConsistentHash(mix(customerId), this.shardCount);
+    }
+
+    /**
+     * Gets the shards that may hold the active code of an email: its shard,
+     * followed by its shard before the last re-sharding if that is another
+     * shard.
+     *
+     * @param email The email of the code.
+     *
+     * @return The indexes of the shards, in the order to look them up.
+     */
+    public List<Integer> candidateShardsOf(String email) {
+        long hash = mix(fnv1a(email));
+        int shard = jumpConsistentHash(hash, this.shardCount);
+        int previousShard = jumpConsistentHash(hash, this.previousShardCount);
+
+        List<Integer> shards = new ArrayList<>(2);
+        shards.add(shard);
+        if (previousShard != shard && previousShard < this.shardCount) {
+            shards.add(previousShard);
+        }
+        return shards;
+    }
+
+    /**
+     * Runs an action with all of its transactions sent to a shard.
+     * <p>
+     * The shard is chosen when a transaction obtains its connection, so the
+     * action must start its own transactions.
+     *
+     * @param shard  The index of the shard.
+     * @param action The action to run.
+     * @param <T>    The type of the result of the action.
+     *
+     * @return The result of the action.
+     *
+     * @throws IllegalStateException If called within a transaction on another
+     *                               shard.
+     */
+    public <T> T onShard(int shard, Supplier<T> action) {
+        Integer previous = this.currentShard.get();
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+            && (previous == null ? 0 : previous) != shard) {
+            throw new IllegalStateException(
+                "Cannot switch to shard " + shard + " within a transaction"
+            );
+        }
+
+        this.currentShard.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                this.currentShard.remove();
+            } else {
+                this.currentShard.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs an action on every shard, one after the other.
+     *
+     * @param action The action to run.
+     * @param <T>    The type of the result of the action.
+     *
+     * @return The result of the action on each shard, in shard order.
+     */
+    public <T> List<T> onEachShard(Supplier<T> action) {
+        List<T> results = new ArrayList<>(this.shardCount);
+        for (int shard = 0; shard < this.shardCount; shard++) {
+            results.add(this.onShard(shard, action));
+        }
+        return results;
+    }
+
+    /**
+     * Gets the shard that the current thread is running an action on.
+     *
+     * @return The index of the shard, or 0 (the main database) outside of
+     * {@link #onShard(int, Supplier)}.
+     */
+    public int getCurrentShard() {
+        Integer shard = this.currentShard.get();
+        return shard == null ? 0 : shard;
+    }
+
+    /**
+     * Maps a key to one of {@code buckets} buckets, such that growing the
+     * number of buckets by one only moves the keys that land in the new
+     * bucket (Lamping and Veach, "A Fast, Minimal Memory, Consistent Hash
+     * Algorithm").
+     */
+    static int jumpConsistentHash(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1)
+                * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    private static long fnv1a(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Mixes the bits of a key (the SplitMix64 finalizer).
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+}
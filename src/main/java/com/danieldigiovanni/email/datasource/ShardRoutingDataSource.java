@@ -0,0 +1,85 @@
+package com.danieldigiovanni.email.datasource;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends each transaction to the shard chosen with
+ * {@link ShardRouting#onShard(int, java.util.function.Supplier)}, or to the
+ * main database (shard 0) by default.
+ * <p>
+ * Like the {@link ReplicaRoutingDataSource}, the routing decision is made when
+ * a connection is obtained, so this data source must be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements MeterBinder, AutoCloseable {
+
+    private final List<DataSource> shards;
+    private final ShardRouting shardRouting;
+    private final LongAdder[] connections;
+
+    /**
+     * @param shards       The data source of each shard, starting with the
+     *                     main database.
+     * @param shardRouting The routing of the current thread.
+     */
+    public ShardRoutingDataSource(List<DataSource> shards, ShardRouting shardRouting) {
+        this.shards = shards;
+        this.shardRouting = shardRouting;
+        this.connections = new LongAdder[shards.size()];
+
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+            this.connections[shard] = new LongAdder();
+        }
+        this.setTargetDataSources(targets);
+        this.setDefaultTargetDataSource(shards.get(0));
+        this.setLenientFallback(false);
+    }
+
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+        for (int shard = 0; shard < this.connections.length; shard++) {
+            FunctionCounter.builder("datasource.shard.connections", this.connections[shard], LongAdder::sum)
+                .description("Connections obtained from the shard")
+                .tag("shard", String.valueOf(shard))
+                .register(registry);
+        }
+    }
+
+    /**
+     * Closes the connection pools of the shards. The main database is closed
+     * by its owner.
+     *
+     * @throws Exception If closing a pool fails.
+     */
+    @Override
+    public void close() throws Exception {
+        for (DataSource shard : this.shards.subList(1, this.shards.size())) {
+            if (shard instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        int shard = this.shardRouting.getCurrentShard();
+        if (shard >= this.connections.length) {
+            throw new IllegalStateException("Shard " + shard + " does not exist");
+        }
+        this.connections[shard].increment();
+        return shard;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.danieldigiovanni.email.datasource;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Applies the schema management of Hibernate
+ * ({@code spring.jpa.hibernate.ddl-auto}) to every shard, and not only to the
+ * main database.
+ * <p>
+ * Every shard gets the full schema, so the tables that are not sharded are
+ * also created (empty) on the other shards.
+ */
+public class ShardSchemaIntegrator implements Integrator {
+
+    private final ShardRouting shardRouting;
+    private final Logger log = LoggerFactory.getLogger(ShardSchemaIntegrator.class);
+
+    public ShardSchemaIntegrator(ShardRouting shardRouting) {
+        this.shardRouting = shardRouting;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext, SessionFactoryImplementor sessionFactory) {
+        ServiceRegistry serviceRegistry = sessionFactory.getServiceRegistry();
+        Map<String, Object> settings = new HashMap<>(
+            serviceRegistry.getService(ConfigurationService.class).getSettings()
+        );
+
+        // The main database is handled by Hibernate itself
+        for (int shard = 1; shard < this.shardRouting.getShardCount(); shard++) {
+            this.log.info("Managing the schema of shard {}", shard);
+            this.shardRouting.onShard(shard, () -> {
+                SchemaManagementToolCoordinator.process(
+                    metadata,
+                    serviceRegistry,
+                    settings,
+                    action -> { }
+                );
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) { }
+
+}
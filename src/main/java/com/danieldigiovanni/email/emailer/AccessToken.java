@@ -0,0 +1,118 @@
+package com.danieldigiovanni.email.emailer;
+
+import com.danieldigiovanni.email.emailer.exception.ApiCallResponseBodyException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * An access token to an email API, with the date at which it expires.
+ */
+public class AccessToken {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final String value;
+    private final Long expiresAtMillis;
+
+    /**
+     * @param value           The access token.
+     * @param expiresAtMillis The epoch millisecond at which the token expires,
+     *                        or null if unknown.
+     */
+    public AccessToken(String value, Long expiresAtMillis) {
+        this.value = value;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    /**
+     * Reads an access token from the response body of a refresh token API.
+     * <p>
+     * The expiry of the token is read from the {@code expires_in} property of
+     * the response, or else from the {@code exp} claim of the token if it is
+     * a JWT.
+     *
+     * @param responseBody The response body of the refresh token API.
+     * @param nowMillis    The current epoch millisecond.
+     *
+     * @return The access token, whose expiry is null if it cannot be found.
+     *
+     * @throws ApiCallResponseBodyException If the response body does not
+     *                                      contain an access token.
+     */
+    public static AccessToken fromResponseBody(JsonNode responseBody, long nowMillis) {
+        if (responseBody == null) {
+            throw new ApiCallResponseBodyException(
+                "Invalid refresh token response body: response body is null",
+                null
+            );
+        }
+
+        JsonNode accessTokenNode = responseBody.get("access_token");
+        if (accessTokenNode == null) {
+            throw new ApiCallResponseBodyException(
+                "Invalid refresh token response body: response body does not" +
+                    " contain \"access_token\" property",
+                responseBody
+            );
+        }
+
+        String value = accessTokenNode.asText();
+        JsonNode expiresIn = responseBody.get("expires_in");
+        if (expiresIn != null && expiresIn.canConvertToLong()) {
+            return new AccessToken(value, nowMillis + expiresIn.asLong() * 1000);
+        }
+        return new AccessToken(value, AccessToken.jwtExpiryMillis(value));
+    }
+
+    public String getValue() {
+        return this.value;
+    }
+
+    public Long getExpiresAtMillis() {
+        return this.expiresAtMillis;
+    }
+
+    /**
+     * Whether the token expires within the given margin.
+     *
+     * @param nowMillis    The current epoch millisecond.
+     * @param marginMillis How long before its expiry the token is considered
+     *                     expired.
+     *
+     * @return True if the token expires before {@code nowMillis +
+     * marginMillis}, false if it does not or if its expiry is unknown.
+     */
+    public boolean expiresWithin(long nowMillis, long marginMillis) {
+        return this.expiresAtMillis != null
+            && this.expiresAtMillis - marginMillis <= nowMillis;
+    }
+
+    /**
+     * Reads the {@code exp} claim of a JWT, without verifying it.
+     *
+     * @return The expiry in epoch milliseconds, or null if the token is not
+     * a JWT or has no {@code exp} claim.
+     */
+    private static Long jwtExpiryMillis(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return null;
+        }
+
+        try {
+            JsonNode claims = OBJECT_MAPPER.readTree(
+                Base64.getUrlDecoder().decode(parts[1])
+            );
+            JsonNode exp = claims.get("exp");
+            return exp != null && exp.canConvertToLong()
+                ? exp.asLong() * 1000
+                : null;
+        } catch (IllegalArgumentException | IOException exception) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,324 @@
+package com.danieldigiovanni.email.emailer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Holds the access token of an email API, shared by all sending threads.
+ * <p>
+ * A token is only ever requested once at a time, on a thread of the provider:
+ * the first sender that finds the token missing, expired, or rejected starts
+ * a request, and every sender waits for its result instead of requesting its
+ * own. Asynchronous senders get the token as a future, so they never block,
+ * nor run the request, on their own thread. Once a
+ * token with a known expiry is received, a new one is requested in the
+ * background {@code refreshAheadMillis} before it expires (or halfway through
+ * its lifetime if it is shorter), while senders keep using the current one, so
+ * senders normally never wait for a token.
+ * <p>
+ * Requests are never closer than {@link #MINIMUM_REFRESH_DELAY_MILLIS}, even
+ * for tokens that live very briefly. A failed request is not repeated before
+ * a backoff that doubles with each consecutive failure, up to
+ * {@link #MAXIMUM_RETRY_DELAY_MILLIS}: until then, senders get the failure
+ * without a new request, and the background refresh waits as long.
+ */
+public class AccessTokenProvider implements AutoCloseable {
+
+    static final long MINIMUM_REFRESH_DELAY_MILLIS = 1000;
+    static final long MAXIMUM_RETRY_DELAY_MILLIS = 60000;
+
+    private final Supplier<AccessToken> requestToken;
+    private final long refreshAheadMillis;
+    private final AtomicReference<CompletableFuture<AccessToken>> token
+        = new AtomicReference<>();
+    private final ScheduledExecutorService scheduler;
+    private volatile int consecutiveFailures = 0;
+    private volatile long retryNotBeforeMillis = 0;
+    private final Logger log = LoggerFactory.getLogger(AccessTokenProvider.class);
+
+    /**
+     * @param requestToken       Requests a new access token from the API.
+     * @param refreshAheadMillis How long before its expiry a token is
+     *                           replaced.
+     */
+    public AccessTokenProvider(Supplier<AccessToken> requestToken, long refreshAheadMillis) {
+        this.requestToken = requestToken;
+        this.refreshAheadMillis = refreshAheadMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "access-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets a valid access token, requesting one if there is none yet or if
+     * the current one expired.
+     *
+     * @return The access token.
+     *
+     * @throws RuntimeException If requesting the token fails.
+     */
+    public String getAccessToken() {
+        return AccessTokenProvider.await(this.currentToken()).getValue();
+    }
+
+    /**
+     * Gets a valid access token without blocking, requesting one if there is
+     * none yet or if the current one expired.
+     *
+     * @return A future of the access token, which completes exceptionally if
+     * requesting the token fails.
+     */
+    public CompletableFuture<String> getAccessTokenAsync() {
+        return this.currentToken().thenApply(AccessToken::getValue);
+    }
+
+    /**
+     * Replaces an access token that the API rejected.
+     * <p>
+     * If the token was already replaced by another thread, the replacement is
+     * returned without requesting another one, so that concurrent rejections
+     * cause a single request.
+     *
+     * @param rejectedToken The access token the API rejected.
+     *
+     * @return A new access token.
+     *
+     * @throws RuntimeException If requesting the token fails.
+     */
+    public String replaceAccessToken(String rejectedToken) {
+        return AccessTokenProvider.await(this.replacementOf(rejectedToken)).getValue();
+    }
+
+    /**
+     * Replaces an access token that the API rejected, without blocking.
+     *
+     * @param rejectedToken The access token the API rejected.
+     *
+     * @return A future of the new access token, which completes exceptionally
+     * if requesting the token fails.
+     *
+     * @see #replaceAccessToken(String)
+     */
+    public CompletableFuture<String> replaceAccessTokenAsync(String rejectedToken) {
+        return this.replacementOf(rejectedToken).thenApply(AccessToken::getValue);
+    }
+
+    @Override
+    public void close() {
+        this.scheduler.shutdownNow();
+    }
+
+    /**
+     * Gets the future of the current token, requesting a new one if there is
+     * none yet or if the current one expired.
+     */
+    private CompletableFuture<AccessToken> currentToken() {
+        CompletableFuture<AccessToken> current = this.token.get();
+        if (current == null || this.isUnusable(current)) {
+            current = this.refresh(current);
+        }
+        return current;
+    }
+
+    /**
+     * Gets the future of the token replacing a rejected one, requesting it
+     * unless another sender already did.
+     */
+    private CompletableFuture<AccessToken> replacementOf(String rejectedToken) {
+        CompletableFuture<AccessToken> current = this.token.get();
+        if (current != null
+            && current.isDone()
+            && !current.isCompletedExceptionally()
+            && current.join().getValue().equals(rejectedToken)) {
+            return this.refresh(current);
+        }
+        return this.currentToken();
+    }
+
+    /**
+     * Starts requesting a new token on the refresh thread, unless another
+     * sender already replaced {@code expected}, in which case its replacement
+     * is returned.
+     *
+     * @param expected The token future being replaced.
+     *
+     * @return The future of the replacement token.
+     */
+    private CompletableFuture<AccessToken> refresh(CompletableFuture<AccessToken> expected) {
+        CompletableFuture<AccessToken> next = new CompletableFuture<>();
+        if (!this.token.compareAndSet(expected, next)) {
+            return this.token.get();
+        }
+
+        try {
+            this.scheduler.execute(() -> this.request(next));
+        } catch (RejectedExecutionException exception) {
+            next.completeExceptionally(
+                new IllegalStateException("Access token provider is closed")
+            );
+        }
+        return next;
+    }
+
+    /**
+     * Requests a new token, completing the future senders wait on.
+     */
+    private void request(CompletableFuture<AccessToken> next) {
+        this.log.info("Requesting access token");
+        try {
+            long receivedAtMillis = System.currentTimeMillis();
+            AccessToken accessToken = this.requestToken.get();
+            this.consecutiveFailures = 0;
+            next.complete(accessToken);
+            this.scheduleRefresh(next, accessToken, receivedAtMillis);
+        } catch (Throwable exception) {
+            // Errors too, or the senders waiting for the token wait forever
+            int failures = ++this.consecutiveFailures;
+            this.retryNotBeforeMillis = System.currentTimeMillis()
+                + AccessTokenProvider.retryDelayMillis(failures);
+            next.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * Schedules the replacement of a token shortly before it expires.
+     * <p>
+     * The token is replaced {@code refreshAheadMillis} before it expires, or
+     * halfway through its lifetime if that is later, and never sooner than
+     * {@link #MINIMUM_REFRESH_DELAY_MILLIS} from now.
+     *
+     * @param expected         The token future being replaced.
+     * @param accessToken      The token being replaced.
+     * @param receivedAtMillis When the token was requested, from which its
+     *                         lifetime is measured.
+     */
+    private void scheduleRefresh(CompletableFuture<AccessToken> expected, AccessToken accessToken, long receivedAtMillis) {
+        if (accessToken.getExpiresAtMillis() == null) {
+            return;
+        }
+
+        long expiresAtMillis = accessToken.getExpiresAtMillis();
+        long aheadMillis = Math.min(
+            this.refreshAheadMillis,
+            (expiresAtMillis - receivedAtMillis) / 2
+        );
+        long delayMillis = Math.max(
+            MINIMUM_REFRESH_DELAY_MILLIS,
+            expiresAtMillis - aheadMillis - System.currentTimeMillis()
+        );
+        this.scheduleAttempt(expected, delayMillis, 0);
+    }
+
+    /**
+     * Schedules one attempt to replace a token in the background.
+     * <p>
+     * Unlike {@link #refresh(CompletableFuture)}, the token stays in use while
+     * its replacement is requested. If the request fails, it is attempted
+     * again after a backoff, until the token expires, after which it is
+     * replaced by a sender instead.
+     *
+     * @param expected    The token future being replaced.
+     * @param delayMillis The delay before the attempt.
+     * @param failures    The number of attempts that failed so far.
+     */
+    private void scheduleAttempt(CompletableFuture<AccessToken> expected, long delayMillis, int failures) {
+        try {
+            this.scheduler.schedule(
+                () -> this.attemptRefresh(expected, failures),
+                delayMillis,
+                TimeUnit.MILLISECONDS
+            );
+        } catch (RejectedExecutionException exception) {
+            // Closed, the token is no longer refreshed in the background
+        }
+    }
+
+    private void attemptRefresh(CompletableFuture<AccessToken> expected, int failures) {
+        if (this.token.get() != expected) {
+            return;
+        }
+
+        this.log.info("Access token expires soon, requesting a new one");
+        try {
+            long receivedAtMillis = System.currentTimeMillis();
+            AccessToken replacement = this.requestToken.get();
+            CompletableFuture<AccessToken> next
+                = CompletableFuture.completedFuture(replacement);
+            if (this.token.compareAndSet(expected, next)) {
+                this.scheduleRefresh(next, replacement, receivedAtMillis);
+            }
+        } catch (Throwable exception) {
+            // Errors too, or the token is no longer refreshed in the background
+            this.log.warn(
+                "Failed to request access token ahead of its expiry: {}",
+                exception.getMessage()
+            );
+            if (!expected.join().expiresWithin(System.currentTimeMillis(), 0)) {
+                this.scheduleAttempt(
+                    expected,
+                    AccessTokenProvider.retryDelayMillis(failures + 1),
+                    failures + 1
+                );
+            }
+        }
+    }
+
+    /**
+     * Whether a token cannot be used and must be requested again, because
+     * it expired, or requesting it failed and the backoff passed.
+     * <p>
+     * A token still being requested is usable, since it is waited for, and so
+     * is a failed one during the backoff, since its failure is rethrown.
+     */
+    private boolean isUnusable(CompletableFuture<AccessToken> future) {
+        if (!future.isDone()) {
+            return false;
+        }
+        if (future.isCompletedExceptionally()) {
+            return System.currentTimeMillis() >= this.retryNotBeforeMillis;
+        }
+        return future.join().expiresWithin(System.currentTimeMillis(), 0);
+    }
+
+    /**
+     * Gets the delay before requesting a token again after consecutive
+     * failures: the minimum refresh delay, doubled for each failure after the
+     * first, up to the maximum retry delay.
+     */
+    private static long retryDelayMillis(int failures) {
+        int doublings = Math.min(failures - 1, 16);
+        return Math.min(
+            MAXIMUM_RETRY_DELAY_MILLIS,
+            MINIMUM_REFRESH_DELAY_MILLIS << doublings
+        );
+    }
+
+    /**
+     * Waits for a token, rethrowing the exception that failed its request.
+     */
+    private static AccessToken await(CompletableFuture<AccessToken> future) {
+        try {
+            return future.join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (exception.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw exception;
+        }
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.danieldigiovanni.email.emailer;
 
+import com.danieldigiovanni.email.emailer.dto.ApiEmailerBatchRequest;
 import com.danieldigiovanni.email.emailer.dto.ApiEmailerRequest;
 import com.danieldigiovanni.email.emailer.exception.ApiCallResponseBodyException;
 import com.danieldigiovanni.email.emailer.exception.ApiCallStatusException;
@@ -10,33 +11,49 @@ import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestTemplate;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.List;
+import java.util.function.Function;
 
 /**
  * Sends an actual email via another API.
+ * <p>
+ * The access token to the API is shared by all sending threads through an
+ * {@link AccessTokenProvider}, which replaces it before it expires.
+ * <p>
+ * Several emails can also be sent with a single call to the batch API, see
+ * {@link BatchingEmailer}.
  */
-public class ApiEmailer implements Emailer {
+public class ApiEmailer implements Emailer, BatchSender, AutoCloseable {
 
     private final String fromAddress;
     private final String sendEmailUrl;
+    private final String sendBatchUrl;
     private final String refreshTokenUrl;
     private final String authScheme;
-    private final String emailHtmlTemplate;
+    private final EmailTemplate emailTemplate;
     private final RestTemplate restTemplate;
-    private String accessToken;
+    private final AccessTokenProvider accessTokenProvider;
     private final Logger log = LoggerFactory.getLogger(ApiEmailer.class);
 
-    public ApiEmailer(String fromAddress, String sendEmailUrl, String refreshTokenUrl, String authScheme, String emailHtmlTemplate, RestTemplate restTemplate) {
+    public ApiEmailer(String fromAddress, String sendEmailUrl, String sendBatchUrl, String refreshTokenUrl, String authScheme, EmailTemplate emailTemplate, RestTemplate restTemplate, long tokenRefreshAheadMillis) {
         this.fromAddress = fromAddress;
         this.sendEmailUrl = sendEmailUrl;
+        this.sendBatchUrl = sendBatchUrl;
         this.refreshTokenUrl = refreshTokenUrl;
         this.authScheme = authScheme;
-        this.emailHtmlTemplate = emailHtmlTemplate;
+        this.emailTemplate = emailTemplate;
         this.restTemplate = restTemplate;
+        this.accessTokenProvider = new AccessTokenProvider(
+            this::requestAccessToken,
+            tokenRefreshAheadMillis
+        );
     }
 
     /**
@@ -52,31 +69,22 @@ public class ApiEmailer implements Emailer {
      */
     @Override
     public void sendEmail(String toAddress, String subject, String code, Integer duration) {
-        if (this.accessToken == null) {
-            this.log.info("Access token is null, refreshing token");
-            this.refreshToken();
-        }
-
-        String emailHtmlContent = this.emailHtmlTemplate
-            .replace("{{code}}", code)
-            .replace("{{duration}}", duration.toString());
-
-        this.log.info("Calling mail API");
-        ResponseEntity<JsonNode> response = this.callMailApi(
+        ApiEmailerRequest requestBody = this.createRequest(
             toAddress,
             subject,
-            emailHtmlContent
+            code,
+            duration
         );
 
-        if (response.getStatusCode().is4xxClientError()) {
-            this.log.info(
-                "Mail API responded with status {}, refreshing token",
-                response.getStatusCode().value()
-            );
-            this.refreshToken();
-            this.log.info("Calling mail API again");
-            response = this.callMailApi(toAddress, subject, emailHtmlContent);
-        }
+        this.log.info("Calling mail API");
+        ResponseEntity<JsonNode> response = this.callWithAccessToken(
+            accessToken -> this.callMailApi(
+                this.sendEmailUrl,
+                "Invalid send email API URL",
+                accessToken,
+                requestBody
+            )
+        );
 
         if (response.getStatusCode().isError()) {
             throw new ApiCallStatusException(
@@ -88,38 +96,147 @@ public class ApiEmailer implements Emailer {
     }
 
     /**
-     * Calls the API to send an email.
+     * {@inheritDoc}
      * <p>
-     * Note that the property {@code this.accessToken} must be a valid access
-     * token for the email sending to succeed.
+     * Sends the emails with a single call to the batch API. The API responds
+     * with a {@code results} array holding, in the order of the emails, an
+     * object with the {@code status} of each email and, if it was sent, its
+     * {@code id}.
+     *
+     * @throws InvalidUrlException          If the batch API URL is invalid.
+     * @throws ApiCallStatusException       If the API responds with an
+     *                                      unexpected status.
+     * @throws ApiCallResponseBodyException If the API responds with an
+     *                                      unexpected response body.
+     */
+    @Override
+    public void sendBatch(List<PendingEmail> emails) {
+        ApiEmailerBatchRequest requestBody = new ApiEmailerBatchRequest(
+            emails.stream()
+                .map(email -> this.createRequest(
+                    email.getToAddress(),
+                    email.getSubject(),
+                    email.getCode(),
+                    email.getDuration()
+                ))
+                .toList()
+        );
+
+        this.log.info("Calling mail batch API with {} emails", emails.size());
+        ResponseEntity<JsonNode> response = this.callWithAccessToken(
+            accessToken -> this.callMailApi(
+                this.sendBatchUrl,
+                "Invalid send email batch API URL",
+                accessToken,
+                requestBody
+            )
+        );
+
+        if (response.getStatusCode().isError()) {
+            throw new ApiCallStatusException(
+                "Error calling send mail batch API",
+                response.getStatusCode(),
+                response.getBody()
+            );
+        }
+
+        JsonNode responseBody = response.getBody();
+        JsonNode results = responseBody == null
+            ? null
+            : responseBody.get("results");
+        if (results == null
+            || !results.isArray()
+            || results.size() != emails.size()) {
+            throw new ApiCallResponseBodyException(
+                "Invalid send mail batch response body: response body does " +
+                    "not contain one \"results\" element per email",
+                responseBody
+            );
+        }
+
+        for (int i = 0; i < emails.size(); i++) {
+            JsonNode result = results.get(i);
+            int status = result.path("status").asInt(0);
+            if (status >= 200 && status < 300) {
+                JsonNode messageId = result.get("id");
+                emails.get(i).complete(new SendResult(
+                    messageId == null ? null : messageId.asText()
+                ));
+            } else {
+                emails.get(i).fail(new ApiCallStatusException(
+                    "Error sending email in batch",
+                    HttpStatusCode.valueOf(status == 0 ? 500 : status),
+                    result
+                ));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        this.accessTokenProvider.close();
+    }
+
+    /**
+     * Calls the API with the current access token, and once more with a new
+     * token if the API rejects it.
      *
-     * @param toAddress The recipient of the email.
-     * @param subject   The subject of the email.
-     * @param content   The HTML content of the email.
+     * @param call Calls the API with the given access token.
      *
      * @return The response from the API.
-     *
-     * @throws InvalidUrlException If the call mail API URL is invalid.
      */
-    private ResponseEntity<JsonNode> callMailApi(String toAddress, String subject, String content) {
-        URI url;
-        try {
-            url = new URI(this.sendEmailUrl);
-        } catch (URISyntaxException exception) {
-            throw new InvalidUrlException("Invalid send email API URL");
+    private ResponseEntity<JsonNode> callWithAccessToken(Function<String, ResponseEntity<JsonNode>> call) {
+        String accessToken = this.accessTokenProvider.getAccessToken();
+        ResponseEntity<JsonNode> response = call.apply(accessToken);
+
+        // Tokens are normally replaced before they expire, so this only
+        // happens if the API revokes a token early
+        if (response.getStatusCode().isSameCodeAs(HttpStatus.UNAUTHORIZED)) {
+            this.log.info("Mail API rejected the access token, replacing it");
+            accessToken = this.accessTokenProvider.replaceAccessToken(
+                accessToken
+            );
+            this.log.info("Calling mail API again");
+            response = call.apply(accessToken);
         }
 
-        ApiEmailerRequest requestBody = new ApiEmailerRequest(
+        return response;
+    }
+
+    private ApiEmailerRequest createRequest(String toAddress, String subject, String code, Integer duration) {
+        return new ApiEmailerRequest(
             this.fromAddress,
             toAddress,
             subject,
-            content
+            this.emailTemplate.render(code, duration.toString())
         );
+    }
+
+    /**
+     * Calls the API to send one or more emails.
+     *
+     * @param url             The URL of the API.
+     * @param invalidUrlError The message of the exception thrown if the URL
+     *                        is invalid.
+     * @param accessToken     The access token to the API.
+     * @param requestBody     The request body.
+     *
+     * @return The response from the API.
+     *
+     * @throws InvalidUrlException If the URL is invalid.
+     */
+    private ResponseEntity<JsonNode> callMailApi(String url, String invalidUrlError, String accessToken, Object requestBody) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException exception) {
+            throw new InvalidUrlException(invalidUrlError);
+        }
 
         HttpHeaders headers = new HttpHeaders();
         headers.add(
             HttpHeaders.AUTHORIZATION,
-            this.authScheme + " " + this.accessToken
+            this.authScheme + " " + accessToken
         );
 
         HttpEntity<Object> httpEntity = new HttpEntity<>(
@@ -128,7 +245,7 @@ public class ApiEmailer implements Emailer {
         );
 
         return this.restTemplate.exchange(
-            url,
+            uri,
             HttpMethod.POST,
             httpEntity,
             JsonNode.class
@@ -136,10 +253,9 @@ public class ApiEmailer implements Emailer {
     }
 
     /**
-     * Refreshes the access token.
-     * <p>
-     * This works by calling the refresh token API and updating the property
-     * {@code this.accessToken} with the access token returned from the API.
+     * Requests a new access token from the refresh token API.
+     *
+     * @return The new access token.
      *
      * @throws InvalidUrlException          If the refresh token URL is
      *                                      invalid.
@@ -148,7 +264,7 @@ public class ApiEmailer implements Emailer {
      * @throws ApiCallResponseBodyException If the refresh token API responds
      *                                      with an unexpected response body.
      */
-    private void refreshToken() {
+    private AccessToken requestAccessToken() {
         URI url;
         try {
             url = new URI(this.refreshTokenUrl);
@@ -171,24 +287,10 @@ public class ApiEmailer implements Emailer {
             );
         }
 
-        JsonNode responseBody = response.getBody();
-        if (responseBody == null) {
-            throw new ApiCallResponseBodyException(
-                "Invalid refresh token response body: response body is null",
-                null
-            );
-        }
-
-        JsonNode accessTokenNode = responseBody.get("access_token");
-        if (accessTokenNode == null) {
-            throw new ApiCallResponseBodyException(
-                "Invalid refresh token response body: response body does not" +
-                    " contain \"access_token\" property",
-                responseBody
-            );
-        }
-
-        this.accessToken = accessTokenNode.asText();
+        return AccessToken.fromResponseBody(
+            response.getBody(),
+            System.currentTimeMillis()
+        );
     }
 
 }
@@ -0,0 +1,249 @@
+package com.danieldigiovanni.email.emailer;
+
+import com.danieldigiovanni.email.emailer.dto.ApiEmailerRequest;
+import com.danieldigiovanni.email.emailer.exception.ApiCallResponseBodyException;
+import com.danieldigiovanni.email.emailer.exception.ApiCallStatusException;
+import com.danieldigiovanni.email.emailer.exception.InvalidUrlException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Sends an actual email via another API, without blocking a thread while the
+ * API responds.
+ * <p>
+ * Calls are made with the JDK {@link HttpClient} over HTTP/2 when the API
+ * supports it, so concurrent emails are multiplexed over a single connection
+ * instead of each holding its own. The access token is shared through an
+ * {@link AccessTokenProvider} as a future, so a call does not block while a
+ * token is requested either, and since the token is replaced before it
+ * expires, a call normally only waits for the very first one.
+ */
+public class AsyncApiEmailer implements Emailer, AutoCloseable {
+
+    private final String fromAddress;
+    private final URI sendEmailUrl;
+    private final URI refreshTokenUrl;
+    private final String authScheme;
+    private final EmailTemplate emailTemplate;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final Duration requestTimeout;
+    private final AccessTokenProvider accessTokenProvider;
+    private final Logger log = LoggerFactory.getLogger(AsyncApiEmailer.class);
+
+    /**
+     * @throws InvalidUrlException If the send email or refresh token URL is
+     *                             invalid.
+     */
+    public AsyncApiEmailer(String fromAddress, String sendEmailUrl, String refreshTokenUrl, String authScheme, EmailTemplate emailTemplate, HttpClient httpClient, ObjectMapper objectMapper, long requestTimeoutMillis, long tokenRefreshAheadMillis) {
+        this.fromAddress = fromAddress;
+        this.sendEmailUrl = AsyncApiEmailer.parseUrl(
+            sendEmailUrl,
+            "Invalid send email API URL"
+        );
+        this.refreshTokenUrl = AsyncApiEmailer.parseUrl(
+            refreshTokenUrl,
+            "Invalid refresh token URL"
+        );
+        this.authScheme = authScheme;
+        this.emailTemplate = emailTemplate;
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+        this.accessTokenProvider = new AccessTokenProvider(
+            this::requestAccessToken,
+            tokenRefreshAheadMillis
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Sends an actual email via an API, waiting for the API to respond.
+     *
+     * @throws ApiCallStatusException If the API responds with an unexpected
+     *                                status.
+     */
+    @Override
+    public void sendEmail(String toAddress, String subject, String code, Integer duration) {
+        try {
+            this.sendEmailAsync(toAddress, subject, code, duration).join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Sends an actual email via an API. The returned future completes
+     * exceptionally with an {@link ApiCallStatusException} if the API responds
+     * with an unexpected status.
+     */
+    @Override
+    public CompletableFuture<SendResult> sendEmailAsync(String toAddress, String subject, String code, Integer duration) {
+        byte[] requestBody;
+        try {
+            requestBody = this.objectMapper.writeValueAsBytes(
+                new ApiEmailerRequest(
+                    this.fromAddress,
+                    toAddress,
+                    subject,
+                    this.emailTemplate.render(code, duration.toString())
+                )
+            );
+        } catch (JsonProcessingException | RuntimeException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+
+        return this.accessTokenProvider.getAccessTokenAsync()
+            .thenCompose(accessToken -> {
+                this.log.info("Calling mail API");
+                return this.callMailApi(accessToken, requestBody)
+                    .thenCompose(response -> {
+                        if (response.statusCode() != HttpStatus.UNAUTHORIZED.value()) {
+                            return CompletableFuture.completedFuture(response);
+                        }
+
+                        // Tokens are normally replaced before they expire, so
+                        // this only happens if the API revokes a token early
+                        this.log.info("Mail API rejected the access token, replacing it");
+                        return this.accessTokenProvider.replaceAccessTokenAsync(accessToken)
+                            .thenCompose(replacement -> {
+                                this.log.info("Calling mail API again");
+                                return this.callMailApi(replacement, requestBody);
+                            });
+                    });
+            })
+            .thenApply(response -> {
+                JsonNode responseBody = this.parseBody(response.body());
+                if (response.statusCode() >= 400) {
+                    throw new ApiCallStatusException(
+                        "Error calling send mail API",
+                        HttpStatusCode.valueOf(response.statusCode()),
+                        responseBody
+                    );
+                }
+
+                JsonNode messageId = responseBody.get("id");
+                return new SendResult(
+                    messageId == null ? null : messageId.asText()
+                );
+            });
+    }
+
+    @Override
+    public void close() {
+        this.accessTokenProvider.close();
+    }
+
+    /**
+     * Calls the API to send an email, without waiting for the response.
+     *
+     * @param accessToken The access token to the API.
+     * @param requestBody The JSON request body.
+     *
+     * @return A future of the response from the API.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> callMailApi(String accessToken, byte[] requestBody) {
+        HttpRequest request = HttpRequest.newBuilder(this.sendEmailUrl)
+            .timeout(this.requestTimeout)
+            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+            .header(HttpHeaders.AUTHORIZATION, this.authScheme + " " + accessToken)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(requestBody))
+            .build();
+
+        return this.httpClient.sendAsync(
+            request,
+            HttpResponse.BodyHandlers.ofByteArray()
+        );
+    }
+
+    /**
+     * Requests a new access token from the refresh token API.
+     * <p>
+     * Tokens are requested rarely, so this waits for the response.
+     *
+     * @return The new access token.
+     *
+     * @throws ApiCallStatusException       If the refresh token API responds
+     *                                      with an unexpected status.
+     * @throws ApiCallResponseBodyException If the refresh token API responds
+     *                                      with an unexpected response body.
+     */
+    private AccessToken requestAccessToken() {
+        HttpRequest request = HttpRequest.newBuilder(this.refreshTokenUrl)
+            .timeout(this.requestTimeout)
+            .POST(HttpRequest.BodyPublishers.noBody())
+            .build();
+
+        HttpResponse<byte[]> response;
+        try {
+            response = this.httpClient.send(
+                request,
+                HttpResponse.BodyHandlers.ofByteArray()
+            );
+        } catch (IOException exception) {
+            throw new CompletionException(exception);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(exception);
+        }
+
+        JsonNode responseBody = this.parseBody(response.body());
+        if (response.statusCode() >= 400) {
+            throw new ApiCallStatusException(
+                "Error calling refresh token",
+                HttpStatusCode.valueOf(response.statusCode()),
+                responseBody
+            );
+        }
+
+        return AccessToken.fromResponseBody(
+            responseBody,
+            System.currentTimeMillis()
+        );
+    }
+
+    /**
+     * Parses a response body as JSON, keeping it as text if it is not JSON.
+     */
+    private JsonNode parseBody(byte[] body) {
+        try {
+            return this.objectMapper.readTree(body);
+        } catch (IOException exception) {
+            return TextNode.valueOf(new String(body, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static URI parseUrl(String url, String message) {
+        try {
+            return new URI(url);
+        } catch (URISyntaxException exception) {
+            throw new InvalidUrlException(message);
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.danieldigiovanni.email.emailer;
+
+import java.util.List;
+
+/**
+ * Sends many emails with a single call to the mail provider.
+ *
+ * @see BatchingEmailer
+ */
+public interface BatchSender {
+
+    /**
+     * Sends a batch of emails, completing or failing the result of each.
+     * <p>
+     * Emails whose result is still incomplete when this returns or throws are
+     * failed by the caller.
+     *
+     * @param emails The emails to be sent, at least one.
+     */
+    void sendBatch(List<PendingEmail> emails);
+
+}
@@ -0,0 +1,210 @@
+package com.danieldigiovanni.email.emailer;
+
+import com.danieldigiovanni.email.emailer.exception.EmailerUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects emails and sends them in batches, with one call to the mail
+ * provider per batch.
+ * <p>
+ * A batch is sent once it holds {@code maximumBatchSize} emails, or
+ * {@code windowMillis} after its first email was queued, whichever comes
+ * first. Batches are sent one at a time by a single thread, so while a batch
+ * is being sent, the next one fills up: the busier the provider, the larger
+ * the batches. Each caller gets the result of its own email.
+ * <p>
+ * Each batch goes through the {@link EmailerCircuitBreaker} as a single call:
+ * it takes one slot of the bulkhead, and counts as one outcome, which is a
+ * failure only if the whole batch fails. The emails of a batch the circuit
+ * rejects fail with its
+ * {@link com.danieldigiovanni.email.emailer.exception.EmailerUnavailableException},
+ * so the outbox postpones them. The {@link EmailDispatcher} therefore does not
+ * send the emails of a batching emailer through the circuit breaker one by
+ * one.
+ * <p>
+ * The queue is not bounded, since emails are only sent from the outbox,
+ * whose batches bound the number of emails in flight.
+ */
+public class BatchingEmailer implements Emailer, AutoCloseable {
+
+    private final BatchSender batchSender;
+    private final EmailerCircuitBreaker circuitBreaker;
+    private final int maximumBatchSize;
+    private final long windowNanos;
+    private final BlockingQueue<PendingEmail> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean closed = false;
+    private final Logger log = LoggerFactory.getLogger(BatchingEmailer.class);
+
+    public BatchingEmailer(BatchSender batchSender, EmailerCircuitBreaker circuitBreaker, int maximumBatchSize, long windowMillis) {
+        this.batchSender = batchSender;
+        this.circuitBreaker = circuitBreaker;
+        this.maximumBatchSize = maximumBatchSize;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.flusher = new Thread(this::flushUntilClosed, "email-batch-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Waits for the batch of the email to be sent.
+     */
+    @Override
+    public void sendEmail(String toAddress, String subject, String code, Integer duration) {
+        try {
+            this.sendEmailAsync(toAddress, subject, code, duration).join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Queues the email to be sent with the next batch.
+     */
+    @Override
+    public CompletableFuture<SendResult> sendEmailAsync(String toAddress, String subject, String code, Integer duration) {
+        if (this.closed) {
+            return CompletableFuture.failedFuture(
+                new RejectedExecutionException("Batching emailer is closed")
+            );
+        }
+
+        PendingEmail email = new PendingEmail(toAddress, subject, code, duration);
+        this.queue.add(email);
+        return email.getResult();
+    }
+
+    /**
+     * Stops accepting emails, and waits for the queued emails to be sent.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        this.closed = true;
+        this.flusher.join(TimeUnit.SECONDS.toMillis(30));
+        if (this.flusher.isAlive()) {
+            this.log.warn("Batching emailer did not finish within 30 seconds");
+            this.flusher.interrupt();
+        }
+        if (this.batchSender instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception exception) {
+                this.log.warn("Unable to close batch sender", exception);
+            }
+        }
+    }
+
+    /**
+     * Collects and sends batches until closed, then sends what is left.
+     */
+    private void flushUntilClosed() {
+        List<PendingEmail> batch = new ArrayList<>(this.maximumBatchSize);
+        try {
+            while (!this.closed || !this.queue.isEmpty()) {
+                PendingEmail first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                this.fill(batch, System.nanoTime() + this.windowNanos);
+                this.flush(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            RejectedExecutionException cause
+                = new RejectedExecutionException("Batching emailer was stopped");
+            batch.forEach(email -> email.fail(cause));
+            this.queue.forEach(email -> email.fail(cause));
+        }
+    }
+
+    /**
+     * Adds queued emails to a batch until it is full or the deadline passes.
+     */
+    private void fill(List<PendingEmail> batch, long deadlineNanos) throws InterruptedException {
+        while (batch.size() < this.maximumBatchSize) {
+            this.queue.drainTo(batch, this.maximumBatchSize - batch.size());
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            if (batch.size() >= this.maximumBatchSize || remainingNanos <= 0) {
+                return;
+            }
+
+            PendingEmail next = this.queue.poll(
+                remainingNanos,
+                TimeUnit.NANOSECONDS
+            );
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Sends a batch through the circuit breaker, failing the emails the batch
+     * sender left incomplete.
+     * <p>
+     * Whatever the batch sender throws only fails the emails of the batch,
+     * so that the flusher thread keeps sending the next batches.
+     */
+    private void flush(List<PendingEmail> batch) {
+        Throwable failure = null;
+        try {
+            this.circuitBreaker.call(() -> this.sendBatch(batch)).join();
+        } catch (CompletionException exception) {
+            failure = exception.getCause();
+        } catch (Throwable exception) {
+            failure = exception;
+        }
+        if (failure != null
+            && !(failure instanceof EmailerUnavailableException)) {
+            this.log.error(
+                "Failed to send batch of {} emails",
+                batch.size(),
+                failure
+            );
+        }
+
+        Throwable cause = failure != null
+            ? failure
+            : new IllegalStateException("Email left unsent by its batch");
+        batch.forEach(email -> email.fail(cause));
+    }
+
+    /**
+     * Sends a batch with the batch sender.
+     *
+     * @return A future completed once the batch is sent, or failed with what
+     * the batch sender threw.
+     */
+    private CompletableFuture<Void> sendBatch(List<PendingEmail> batch) {
+        try {
+            this.batchSender.sendBatch(batch);
+            return CompletableFuture.completedFuture(null);
+        } catch (Throwable exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+    }
+
+}
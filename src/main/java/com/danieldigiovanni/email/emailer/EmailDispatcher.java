@@ -0,0 +1,202 @@
+package com.danieldigiovanni.email.emailer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Sends emails in the background with the configured {@link Emailer}.
+ * <p>
+ * Emails are queued in a bounded queue and sent by a fixed pool of workers,
+ * so callers do not wait for the mail provider. If the queue is full, the
+ * email is sent on the calling thread instead, which slows callers down
+ * rather than dropping emails.
+ * <p>
+ * Emails are sent with {@link Emailer#sendEmailAsync}, so with an emailer
+ * that does not block, a worker is free as soon as it hands an email over
+ * and a few workers keep many emails in flight.
+ * <p>
+ * Emails go through the {@link EmailerCircuitBreaker}, so while the mail
+ * provider is slow or failing, they fail fast with an
+ * {@link com.danieldigiovanni.email.emailer.exception.EmailerUnavailableException}
+ * and are left to the outbox to send later. A {@link BatchingEmailer} sends
+ * each batch through the circuit breaker itself, so that a batch counts as a
+ * single call rather than one call per email.
+ * <p>
+ * Workers are platform threads, unless an {@code emailDispatchThreadFactory}
+ * bean creates them otherwise (see the {@code virtual-threads} profile).
+ */
+@Component
+public class EmailDispatcher implements MeterBinder {
+
+    private final Emailer emailer;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Logger log = LoggerFactory.getLogger(EmailDispatcher.class);
+
+    @Autowired
+    public EmailDispatcher(
+        Emailer emailer,
+        EmailerCircuitBreaker circuitBreaker,
+        @Qualifier("emailDispatchThreadFactory") ObjectProvider<ThreadFactory> threadFactory,
+        @Value("${emailer.dispatch.pool-size}") int poolSize,
+        @Value("${emailer.dispatch.queue-capacity}") int queueCapacity
+    ) {
+        this.emailer = emailer instanceof BatchingEmailer
+            ? emailer
+            : new ResilientEmailer(emailer, circuitBreaker);
+        this.executor = new ThreadPoolExecutor(
+            poolSize,
+            poolSize,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            threadFactory.getIfAvailable(DispatcherThreadFactory::new),
+            (task, executor) -> {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException(
+                        "Email dispatcher is shut down"
+                    );
+                }
+                this.callerRuns.increment();
+                task.run();
+            }
+        );
+    }
+
+    /**
+     * Queues an email to be sent in the background.
+     *
+     * @param toAddress The recipient of the email.
+     * @param subject   The subject of the email.
+     * @param code      The verification code.
+     * @param duration  The duration of the verification code in minutes.
+     *
+     * @return A future that completes when the email is sent, or completes
+     * exceptionally if sending fails.
+     *
+     * @throws RejectedExecutionException If the dispatcher is shut down.
+     */
+    public CompletableFuture<SendResult> dispatch(String toAddress, String subject, String code, Integer duration) {
+        return CompletableFuture.supplyAsync(
+            () -> this.send(toAddress, subject, code, duration),
+            this.executor
+        ).thenCompose(Function.identity());
+    }
+
+    /**
+     * Stops accepting new emails and waits for the queued emails to be sent.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        this.executor.shutdown();
+        if (!this.executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            this.log.warn(
+                "Email dispatcher did not finish within 30 seconds, {} emails "
+                    + "were not sent",
+                this.executor.shutdownNow().size()
+            );
+        }
+    }
+
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+        Gauge.builder("email.dispatch.queue.size", this.executor, executor -> executor.getQueue().size())
+            .description("Number of emails waiting to be sent")
+            .register(registry);
+        Gauge.builder("email.dispatch.active", this.executor, ThreadPoolExecutor::getActiveCount)
+            .description("Number of workers handing emails to the emailer")
+            .register(registry);
+        Gauge.builder("email.dispatch.in.flight", this.inFlight, AtomicInteger::get)
+            .description("Number of emails waiting for the mail provider to respond")
+            .register(registry);
+        FunctionCounter.builder("email.dispatch.sent", this.sent, LongAdder::sum)
+            .description("Emails sent successfully")
+            .register(registry);
+        FunctionCounter.builder("email.dispatch.failed", this.failed, LongAdder::sum)
+            .description("Emails that failed to send")
+            .register(registry);
+        FunctionCounter.builder("email.dispatch.caller.runs", this.callerRuns, LongAdder::sum)
+            .description("Emails sent on the calling thread because the queue was full")
+            .register(registry);
+    }
+
+    /**
+     * Sends an email, counting and logging the outcome.
+     */
+    private CompletableFuture<SendResult> send(String toAddress, String subject, String code, Integer duration) {
+        CompletableFuture<SendResult> result;
+        this.inFlight.incrementAndGet();
+        try {
+            result = this.emailer.sendEmailAsync(toAddress, subject, code, duration);
+        } catch (RuntimeException exception) {
+            result = CompletableFuture.failedFuture(exception);
+        }
+
+        return result.whenComplete((sendResult, exception) -> {
+            this.inFlight.decrementAndGet();
+            if (exception == null) {
+                this.sent.increment();
+                return;
+            }
+
+            Throwable cause = exception instanceof CompletionException
+                ? exception.getCause()
+                : exception;
+            this.failed.increment();
+            this.log.error(
+                "Failed to send email to {}: {}",
+                toAddress,
+                cause.getMessage(),
+                cause
+            );
+        });
+    }
+
+    /**
+     * Names the worker threads so they are recognizable in logs and thread
+     * dumps.
+     */
+    private static class DispatcherThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@Nonnull Runnable runnable) {
+            Thread thread = new Thread(
+                runnable,
+                "email-dispatch-" + this.threadCount.incrementAndGet()
+            );
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,214 @@
+package com.danieldigiovanni.email.emailer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An HTML email template, compiled once into its literal parts, already
+ * encoded to UTF-8, and its {@code {{name}}} placeholders.
+ * <p>
+ * Rendering measures the output first, then writes the literal parts and the
+ * HTML escaped values straight into a single array of the exact size, so an
+ * email costs one allocation instead of a copy of the whole template per
+ * placeholder and another to encode it.
+ */
+public final class EmailTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{\\s*(\\w+)\\s*}}");
+
+    private static final byte[] AMP = {'&', 'a', 'm', 'p', ';'};
+    private static final byte[] LT = {'&', 'l', 't', ';'};
+    private static final byte[] GT = {'&', 'g', 't', ';'};
+    private static final byte[] QUOT = {'&', 'q', 'u', 'o', 't', ';'};
+    private static final byte[] APOS = {'&', '#', '3', '9', ';'};
+
+    private final List<String> placeholderNames;
+    private final byte[][] literals;
+    private final int[] slots;
+    private final int literalLength;
+
+    private EmailTemplate(List<String> placeholderNames, byte[][] literals, int[] slots) {
+        this.placeholderNames = placeholderNames;
+        this.literals = literals;
+        this.slots = slots;
+        this.literalLength = Arrays.stream(literals)
+            .mapToInt(literal -> literal.length)
+            .sum();
+    }
+
+    /**
+     * Compiles a template.
+     *
+     * @param template         The template.
+     * @param placeholderNames The names of the placeholders, in the order in
+     *                         which their values are given when rendering.
+     *
+     * @return The compiled template.
+     *
+     * @throws IllegalArgumentException If the template has a placeholder that
+     *                                  is not one of the names.
+     */
+    public static EmailTemplate compile(String template, String... placeholderNames) {
+        List<String> names = List.of(placeholderNames);
+        List<byte[]> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        int literalStart = 0;
+        while (matcher.find()) {
+            int slot = names.indexOf(matcher.group(1));
+            if (slot < 0) {
+                throw new IllegalArgumentException(
+                    "Unknown placeholder " + matcher.group() + " in template, "
+                        + "expected one of " + names
+                );
+            }
+            literals.add(template.substring(literalStart, matcher.start())
+                .getBytes(StandardCharsets.UTF_8));
+            slots.add(slot);
+            literalStart = matcher.end();
+        }
+        literals.add(template.substring(literalStart)
+            .getBytes(StandardCharsets.UTF_8));
+
+        return new EmailTemplate(
+            names,
+            literals.toArray(new byte[0][]),
+            slots.stream().mapToInt(Integer::intValue).toArray()
+        );
+    }
+
+    public List<String> getPlaceholderNames() {
+        return this.placeholderNames;
+    }
+
+    /**
+     * Renders the template to UTF-8.
+     *
+     * @param values The value of each placeholder, in the order of the names
+     *               given when compiling. Values are HTML escaped.
+     *
+     * @return The rendered template, in UTF-8.
+     *
+     * @throws IllegalArgumentException If the number of values is not the
+     *                                  number of placeholder names.
+     */
+    public byte[] render(String... values) {
+        if (values.length != this.placeholderNames.size()) {
+            throw new IllegalArgumentException(
+                "Expected values for " + this.placeholderNames + " but got "
+                    + values.length
+            );
+        }
+
+        int length = this.literalLength;
+        for (int slot : this.slots) {
+            length += EmailTemplate.escapedLength(values[slot]);
+        }
+
+        byte[] output = new byte[length];
+        int position = 0;
+        for (int i = 0; i < this.slots.length; i++) {
+            byte[] literal = this.literals[i];
+            System.arraycopy(literal, 0, output, position, literal.length);
+            position = EmailTemplate.writeEscaped(
+                values[this.slots[i]],
+                output,
+                position + literal.length
+            );
+        }
+        byte[] lastLiteral = this.literals[this.slots.length];
+        System.arraycopy(lastLiteral, 0, output, position, lastLiteral.length);
+        return output;
+    }
+
+    /**
+     * Renders the template to a string.
+     *
+     * @see #render(String...)
+     */
+    public String renderToString(String... values) {
+        return new String(this.render(values), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the length in UTF-8 of a value once HTML escaped.
+     */
+    private static int escapedLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&', '\'' -> length += 5;
+                case '<', '>' -> length += 4;
+                case '"' -> length += 6;
+                default -> {
+                    if (c < 0x80) {
+                        length += 1;
+                    } else if (c < 0x800) {
+                        length += 2;
+                    } else if (Character.isHighSurrogate(c)
+                        && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        length += 4;
+                        i++;
+                    } else if (Character.isSurrogate(c)) {
+                        // Unpaired, encoded as '?' like String.getBytes does
+                        length += 1;
+                    } else {
+                        length += 3;
+                    }
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes a value HTML escaped and encoded to UTF-8.
+     *
+     * @return The position after the written value.
+     */
+    private static int writeEscaped(String value, byte[] output, int position) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            byte[] entity = switch (c) {
+                case '&' -> AMP;
+                case '<' -> LT;
+                case '>' -> GT;
+                case '"' -> QUOT;
+                case '\'' -> APOS;
+                default -> null;
+            };
+            if (entity != null) {
+                System.arraycopy(entity, 0, output, position, entity.length);
+                position += entity.length;
+            } else if (c < 0x80) {
+                output[position++] = (byte) c;
+            } else if (c < 0x800) {
+                output[position++] = (byte) (0xC0 | (c >> 6));
+                output[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)
+                && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                output[position++] = (byte) (0xF0 | (codePoint >> 18));
+                output[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                output[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                output[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                output[position++] = '?';
+            } else {
+                output[position++] = (byte) (0xE0 | (c >> 12));
+                output[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                output[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position;
+    }
+
+}
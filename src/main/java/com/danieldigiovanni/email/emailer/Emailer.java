@@ -1,5 +1,7 @@
 package com.danieldigiovanni.email.emailer;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Sends email.
  * <p>
@@ -18,4 +20,30 @@ public interface Emailer {
      */
     void sendEmail(String toAddress, String subject, String code, Integer duration);
 
+    /**
+     * Sends an email without waiting for the mail provider to respond.
+     * <p>
+     * By default, the email is sent on the calling thread with
+     * {@link #sendEmail(String, String, String, Integer)}, for emailers whose
+     * provider can only be called in a blocking way. Emailers whose provider
+     * can be called asynchronously override this, so that the calling thread
+     * is free as soon as the email is handed over.
+     *
+     * @param toAddress The recipient of the email.
+     * @param subject   The subject of the email.
+     * @param code      The verification code.
+     * @param duration  The duration of the verification code in minutes.
+     *
+     * @return A future that completes when the provider accepts the email, or
+     * completes exceptionally if sending fails.
+     */
+    default CompletableFuture<SendResult> sendEmailAsync(String toAddress, String subject, String code, Integer duration) {
+        try {
+            this.sendEmail(toAddress, subject, code, duration);
+            return CompletableFuture.completedFuture(SendResult.sent());
+        } catch (RuntimeException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+    }
+
 }
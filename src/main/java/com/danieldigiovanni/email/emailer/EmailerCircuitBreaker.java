@@ -0,0 +1,445 @@
+package com.danieldigiovanni.email.emailer;
+
+import com.danieldigiovanni.email.emailer.exception.EmailerUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bulkhead and circuit breaker around the calls to the mail provider.
+ * <p>
+ * The bulkhead caps the number of calls in flight at
+ * {@code emailer.bulkhead.max-concurrent-calls}. A call waits up to
+ * {@code emailer.bulkhead.max-wait-millis} for a free slot, and is rejected
+ * otherwise, so a slow provider cannot tie up every thread that sends emails.
+ * <p>
+ * The circuit breaker records the outcome of the last
+ * {@code emailer.circuit.window-size} calls. Once at least
+ * {@code emailer.circuit.minimum-calls} are recorded, it opens if the rate of
+ * failed calls reaches {@code emailer.circuit.failure-rate-threshold}, or if
+ * the rate of calls slower than {@code emailer.circuit.slow-call-millis}
+ * reaches {@code emailer.circuit.slow-call-rate-threshold}. While open, calls
+ * are rejected without reaching the provider. After
+ * {@code emailer.circuit.open-millis}, it is half open and lets
+ * {@code emailer.circuit.half-open-calls} trial calls through: it closes if
+ * they all succeed in time, and opens again otherwise.
+ * <p>
+ * Only failures of the provider count as failed calls. A call that fails
+ * because of the email itself, such as an invalid recipient, is passed
+ * through without being recorded, since it would fail with any provider (see
+ * {@link EmailerErrors#isClientError(Throwable)}). While half open, such a
+ * call gives its trial back to the next call.
+ * <p>
+ * Each call is only recorded in the state it was let through in: a call let
+ * through while closed that completes after the circuit opened is ignored,
+ * rather than being counted as a trial call once the circuit is half open.
+ * <p>
+ * Rejected calls fail with an {@link EmailerUnavailableException}, which the
+ * outbox treats as a postponement rather than a failed attempt.
+ */
+@Component
+public class EmailerCircuitBreaker implements MeterBinder {
+
+    /**
+     * The states of the circuit, whose ordinal is reported by the
+     * {@code emailer.circuit.state} gauge.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final byte SUCCESS = 1;
+    private static final byte SLOW = 2;
+    private static final byte FAILURE = 3;
+
+    private final Semaphore bulkhead;
+    private final int maximumConcurrentCalls;
+    private final long maximumWaitMillis;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallNanos;
+    private final double slowCallRateThreshold;
+    private final long openMillis;
+    private final int halfOpenCalls;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final byte[] window;
+    private int windowIndex = 0;
+    private int recordedCount = 0;
+    private int failureCount = 0;
+    private int slowCount = 0;
+    private volatile State state = State.CLOSED;
+    private long generation = 0;
+    private long openUntilMillis = 0;
+    private int halfOpenPermits = 0;
+    private int halfOpenSuccesses = 0;
+
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder clientErrors = new LongAdder();
+    private final LongAdder slow = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder circuitRejected = new LongAdder();
+    private final LongAdder bulkheadRejected = new LongAdder();
+    private final Logger log = LoggerFactory.getLogger(EmailerCircuitBreaker.class);
+
+    @Autowired
+    public EmailerCircuitBreaker(
+        @Value("${emailer.bulkhead.max-concurrent-calls}") int maximumConcurrentCalls,
+        @Value("${emailer.bulkhead.max-wait-millis}") long maximumWaitMillis,
+        @Value("${emailer.circuit.window-size}") int windowSize,
+        @Value("${emailer.circuit.minimum-calls}") int minimumCalls,
+        @Value("${emailer.circuit.failure-rate-threshold}") double failureRateThreshold,
+        @Value("${emailer.circuit.slow-call-millis}") long slowCallMillis,
+        @Value("${emailer.circuit.slow-call-rate-threshold}") double slowCallRateThreshold,
+        @Value("${emailer.circuit.open-millis}") long openMillis,
+        @Value("${emailer.circuit.half-open-calls}") int halfOpenCalls
+    ) {
+        this.bulkhead = new Semaphore(maximumConcurrentCalls, true);
+        this.maximumConcurrentCalls = maximumConcurrentCalls;
+        this.maximumWaitMillis = maximumWaitMillis;
+        this.window = new byte[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    /**
+     * Makes a call to the mail provider, unless the bulkhead is full or the
+     * circuit is open.
+     *
+     * @param call The call to the mail provider.
+     * @param <T>  The type of the result of the call.
+     *
+     * @return The future of the call, or a future failed with an
+     * {@link EmailerUnavailableException} if the call was rejected.
+     */
+    public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call) {
+        if (!this.enterBulkhead()) {
+            this.bulkheadRejected.increment();
+            return CompletableFuture.failedFuture(new EmailerUnavailableException(
+                "Too many emails are being sent at once",
+                0
+            ));
+        }
+
+        Permission permission = this.acquirePermission();
+        if (!permission.permitted()) {
+            this.bulkhead.release();
+            this.circuitRejected.increment();
+            return CompletableFuture.failedFuture(new EmailerUnavailableException(
+                "Mail provider circuit is " + this.state,
+                permission.retryAfterMillis()
+            ));
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException exception) {
+            result = CompletableFuture.failedFuture(exception);
+        }
+
+        return result.whenComplete((value, exception) -> {
+            this.bulkhead.release();
+            if (exception != null && EmailerErrors.isClientError(exception)) {
+                this.recordClientError(permission.generation());
+                return;
+            }
+            this.record(
+                System.nanoTime() - start,
+                exception != null,
+                permission.generation()
+            );
+        });
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+        Gauge.builder("emailer.circuit.state", this, breaker -> breaker.getState().ordinal())
+            .description("State of the mail provider circuit: 0 closed, 1 open, 2 half open")
+            .register(registry);
+        Gauge.builder("emailer.circuit.failure.rate", this, EmailerCircuitBreaker::failureRate)
+            .description("Rate of failed calls in the window of the circuit")
+            .register(registry);
+        Gauge.builder("emailer.circuit.slow.rate", this, EmailerCircuitBreaker::slowRate)
+            .description("Rate of slow calls in the window of the circuit")
+            .register(registry);
+        FunctionCounter.builder("emailer.circuit.succeeded", this.succeeded, LongAdder::sum)
+            .description("Calls to the mail provider that succeeded")
+            .register(registry);
+        FunctionCounter.builder("emailer.circuit.failed", this.failed, LongAdder::sum)
+            .description("Calls to the mail provider that failed")
+            .register(registry);
+        FunctionCounter.builder("emailer.circuit.client.errors", this.clientErrors, LongAdder::sum)
+            .description("Calls that failed because of the email, not recorded by the circuit")
+            .register(registry);
+        FunctionCounter.builder("emailer.circuit.slow", this.slow, LongAdder::sum)
+            .description("Calls to the mail provider slower than the slow call threshold")
+            .register(registry);
+        FunctionCounter.builder("emailer.circuit.opened", this.opened, LongAdder::sum)
+            .description("Times the mail provider circuit opened")
+            .register(registry);
+        FunctionCounter.builder("emailer.circuit.rejected", this.circuitRejected, LongAdder::sum)
+            .description("Calls rejected because the mail provider circuit was not closed")
+            .register(registry);
+        Gauge.builder("emailer.bulkhead.available", this.bulkhead, Semaphore::availablePermits)
+            .description("Free slots for calls to the mail provider")
+            .register(registry);
+        Gauge.builder("emailer.bulkhead.max", this, breaker -> breaker.maximumConcurrentCalls)
+            .description("Maximum number of calls to the mail provider in flight")
+            .register(registry);
+        FunctionCounter.builder("emailer.bulkhead.rejected", this.bulkheadRejected, LongAdder::sum)
+            .description("Calls rejected because too many calls were in flight")
+            .register(registry);
+    }
+
+    /**
+     * Takes a slot of the bulkhead, waiting up to the maximum wait.
+     *
+     * @return True if a slot was taken, false otherwise.
+     */
+    private boolean enterBulkhead() {
+        try {
+            return this.bulkhead.tryAcquire(
+                this.maximumWaitMillis,
+                TimeUnit.MILLISECONDS
+            );
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether the circuit lets a call through, moving from open to
+     * half open once the open duration has passed.
+     *
+     * @return Whether the call is let through, and either the generation of
+     * the state it is let through in, or how long to wait before trying again.
+     */
+    private Permission acquirePermission() {
+        this.lock.lock();
+        try {
+            long nowMillis = System.currentTimeMillis();
+            if (this.state == State.OPEN) {
+                if (nowMillis < this.openUntilMillis) {
+                    return Permission.rejected(this.openUntilMillis - nowMillis);
+                }
+                this.log.info("Mail provider circuit is half open");
+                this.state = State.HALF_OPEN;
+                this.generation++;
+                this.halfOpenPermits = this.halfOpenCalls;
+                this.halfOpenSuccesses = 0;
+            }
+
+            if (this.state == State.HALF_OPEN) {
+                if (this.halfOpenPermits == 0) {
+                    // The trial calls are in flight and decide soon
+                    return Permission.rejected(
+                        TimeUnit.NANOSECONDS.toMillis(this.slowCallNanos)
+                    );
+                }
+                this.halfOpenPermits--;
+            }
+            return Permission.permitted(this.generation);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Records the outcome of a call, opening or closing the circuit if
+     * needed.
+     *
+     * @param generation The generation of the state the call was let through
+     *                   in. The outcome only counts towards the circuit if it
+     *                   is still the current one.
+     */
+    private void record(long durationNanos, boolean failure, long generation) {
+        byte outcome = failure
+            ? FAILURE
+            : durationNanos >= this.slowCallNanos ? SLOW : SUCCESS;
+        switch (outcome) {
+            case FAILURE -> this.failed.increment();
+            case SLOW -> {
+                this.succeeded.increment();
+                this.slow.increment();
+            }
+            default -> this.succeeded.increment();
+        }
+
+        this.lock.lock();
+        try {
+            if (generation != this.generation) {
+                // Let through before the circuit last changed state
+                return;
+            }
+            switch (this.state) {
+                case HALF_OPEN -> {
+                    if (outcome != SUCCESS) {
+                        this.open();
+                    } else if (++this.halfOpenSuccesses >= this.halfOpenCalls) {
+                        this.close();
+                    }
+                }
+                case CLOSED -> {
+                    this.addToWindow(outcome);
+                    if (this.recordedCount >= this.minimumCalls
+                        && (this.failureCount >= this.failureRateThreshold * this.recordedCount
+                        || this.slowCount >= this.slowCallRateThreshold * this.recordedCount)) {
+                        this.open();
+                    }
+                }
+                // No call is let through while open
+                case OPEN -> {
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Passes a call that failed because of the email, giving its trial back
+     * if it was let through while half open.
+     *
+     * @param generation The generation of the state the call was let through
+     *                   in.
+     */
+    private void recordClientError(long generation) {
+        this.clientErrors.increment();
+
+        this.lock.lock();
+        try {
+            if (generation == this.generation && this.state == State.HALF_OPEN) {
+                this.halfOpenPermits++;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an outcome to the window, replacing the oldest one once it is
+     * full. Must be called while holding the lock.
+     */
+    private void addToWindow(byte outcome) {
+        byte evicted = this.window[this.windowIndex];
+        if (evicted == FAILURE) {
+            this.failureCount--;
+        } else if (evicted == SLOW) {
+            this.slowCount--;
+        } else if (evicted == 0) {
+            this.recordedCount++;
+        }
+
+        this.window[this.windowIndex] = outcome;
+        if (outcome == FAILURE) {
+            this.failureCount++;
+        } else if (outcome == SLOW) {
+            this.slowCount++;
+        }
+        this.windowIndex = (this.windowIndex + 1) % this.window.length;
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void open() {
+        this.log.warn(
+            "Mail provider circuit is open for {} ms after {} failed and {} "
+                + "slow of the last {} calls",
+            this.openMillis,
+            this.failureCount,
+            this.slowCount,
+            this.recordedCount
+        );
+        this.state = State.OPEN;
+        this.generation++;
+        this.openUntilMillis = System.currentTimeMillis() + this.openMillis;
+        this.opened.increment();
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void close() {
+        this.log.info("Mail provider circuit is closed");
+        this.state = State.CLOSED;
+        this.generation++;
+        Arrays.fill(this.window, (byte) 0);
+        this.windowIndex = 0;
+        this.recordedCount = 0;
+        this.failureCount = 0;
+        this.slowCount = 0;
+    }
+
+    private double failureRate() {
+        this.lock.lock();
+        try {
+            return this.recordedCount == 0
+                ? 0
+                : this.failureCount / (double) this.recordedCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private double slowRate() {
+        this.lock.lock();
+        try {
+            return this.recordedCount == 0
+                ? 0
+                : this.slowCount / (double) this.recordedCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Whether the circuit lets a call through.
+     *
+     * @param permitted        Whether the call is let through.
+     * @param generation       The generation of the state the call is let
+     *                         through in, which changes with every change of
+     *                         state.
+     * @param retryAfterMillis How long to wait before trying again if the call
+     *                         is not let through.
+     */
+    private record Permission(boolean permitted, long generation, long retryAfterMillis) {
+
+        static Permission permitted(long generation) {
+            return new Permission(true, generation, 0);
+        }
+
+        static Permission rejected(long retryAfterMillis) {
+            return new Permission(false, -1, retryAfterMillis);
+        }
+
+    }
+
+}
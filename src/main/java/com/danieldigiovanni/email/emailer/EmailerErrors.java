@@ -0,0 +1,60 @@
+package com.danieldigiovanni.email.emailer;
+
+import com.danieldigiovanni.email.emailer.exception.ApiCallStatusException;
+import com.danieldigiovanni.email.emailer.exception.MailtrapEmailerException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.AddressException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Tells the failures caused by an email apart from the failures of the mail
+ * provider.
+ */
+final class EmailerErrors {
+
+    private EmailerErrors() { }
+
+    /**
+     * Checks if a failure was caused by the email itself, such as an invalid
+     * recipient or a request the mail API rejected. The same email would fail
+     * the same way with any provider, so such a failure says nothing about
+     * the health of the provider.
+     * <p>
+     * Client errors are the 4xx statuses of the mail API, except 401 and 403
+     * (the credentials of the provider), 408 (a timeout) and 429 (rate
+     * limiting), and the SMTP messages whose address is invalid or whose
+     * recipients are rejected. Every other failure, including timeouts and I/O
+     * errors, is a failure of the provider.
+     *
+     * @param failure The failure, possibly wrapped by a future.
+     *
+     * @return True if the failure was caused by the email.
+     */
+    static boolean isClientError(Throwable failure) {
+        Throwable cause = failure;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+            && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        if (cause instanceof ApiCallStatusException statusException) {
+            int status = statusException.getStatusCode().value();
+            return statusException.getStatusCode().is4xxClientError()
+                && status != 401
+                && status != 403
+                && status != 408
+                && status != 429;
+        }
+        if (cause instanceof MailtrapEmailerException) {
+            Throwable smtpCause = cause.getCause();
+            return smtpCause instanceof AddressException
+                || smtpCause instanceof SendFailedException sendFailed
+                && sendFailed.getInvalidAddresses() != null
+                && sendFailed.getInvalidAddresses().length > 0;
+        }
+        return false;
+    }
+
+}
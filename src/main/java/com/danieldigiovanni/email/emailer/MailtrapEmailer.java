@@ -1,29 +1,37 @@
 package com.danieldigiovanni.email.emailer;
 
 import com.danieldigiovanni.email.emailer.exception.MailtrapEmailerException;
+import jakarta.activation.DataHandler;
 import jakarta.mail.Address;
 import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.util.ByteArrayDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.mail.javamail.JavaMailSender;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Sends an email to Mailtrap for testing instead of sending an acutal email.
+ * <p>
+ * Emails are sent over the connections of an {@link SmtpTransportPool}, so
+ * the same emailer also works with any SMTP relay. Several emails can be sent
+ * one after the other over a single connection, see {@link BatchingEmailer}.
  */
-public class MailtrapEmailer implements Emailer {
+public class MailtrapEmailer implements Emailer, BatchSender {
 
     private final String fromAddress;
-    private final String emailHtmlTemplate;
-    private final JavaMailSender mailSender;
+    private final EmailTemplate emailTemplate;
+    private final SmtpTransportPool transportPool;
     private final Logger log = LoggerFactory.getLogger(MailtrapEmailer.class);
 
-    public MailtrapEmailer(String fromAddress, String emailHtmlTemplate, JavaMailSender mailSender) {
+    public MailtrapEmailer(String fromAddress, EmailTemplate emailTemplate, SmtpTransportPool transportPool) {
         this.fromAddress = fromAddress;
-        this.emailHtmlTemplate = emailHtmlTemplate;
-        this.mailSender = mailSender;
+        this.emailTemplate = emailTemplate;
+        this.transportPool = transportPool;
     }
 
     /**
@@ -35,25 +43,76 @@ public class MailtrapEmailer implements Emailer {
     @Override
     public void sendEmail(String toAddress, String subject, String code, Integer duration) {
         try {
-            String emailHtmlContent = this.emailHtmlTemplate
-                .replace("{{code}}", code)
-                .replace("{{duration}}", duration.toString());
-
-            Address from = new InternetAddress(this.fromAddress);
-            Address to = new InternetAddress(toAddress);
-
-            MimeMessage message = mailSender.createMimeMessage();
-
-            message.setFrom(from);
-            message.setRecipient(Message.RecipientType.TO, to);
-            message.setSubject(subject);
-            message.setContent(emailHtmlContent, "text/html; charset=utf-8");
+            MimeMessage message = this.createMessage(
+                toAddress,
+                subject,
+                code,
+                duration
+            );
 
             this.log.info("Sending email to Mailtrap");
-            mailSender.send(message);
+            this.transportPool.send(message);
         } catch (MessagingException exception) {
             throw new MailtrapEmailerException(exception);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Sends the emails one after the other over a single SMTP connection.
+     * Each email that cannot be sent fails with a
+     * {@link MailtrapEmailerException}.
+     */
+    @Override
+    public void sendBatch(List<PendingEmail> emails) {
+        List<PendingEmail> created = new ArrayList<>(emails.size());
+        List<MimeMessage> messages = new ArrayList<>(emails.size());
+        for (PendingEmail email : emails) {
+            try {
+                messages.add(this.createMessage(
+                    email.getToAddress(),
+                    email.getSubject(),
+                    email.getCode(),
+                    email.getDuration()
+                ));
+                created.add(email);
+            } catch (MessagingException exception) {
+                email.fail(new MailtrapEmailerException(exception));
+            }
+        }
+
+        this.log.info("Sending batch of {} emails to Mailtrap", messages.size());
+        List<MessagingException> failures = this.transportPool.sendAll(messages);
+        for (int i = 0; i < created.size(); i++) {
+            MessagingException failure = failures.get(i);
+            if (failure == null) {
+                created.get(i).complete(SendResult.sent());
+            } else {
+                created.get(i).fail(new MailtrapEmailerException(failure));
+            }
+        }
+    }
+
+    private MimeMessage createMessage(String toAddress, String subject, String code, Integer duration) throws MessagingException {
+        byte[] emailHtmlContent = this.emailTemplate.render(
+            code,
+            duration.toString()
+        );
+
+        Address from = new InternetAddress(this.fromAddress);
+        Address to = new InternetAddress(toAddress);
+
+        MimeMessage message = new MimeMessage(this.transportPool.getSession());
+
+        message.setFrom(from);
+        message.setRecipient(Message.RecipientType.TO, to);
+        message.setSubject(subject);
+        // Sent as the rendered bytes, without decoding them to a string
+        message.setDataHandler(new DataHandler(
+            new ByteArrayDataSource(emailHtmlContent, "text/html; charset=utf-8")
+        ));
+        return message;
+    }
+
 }
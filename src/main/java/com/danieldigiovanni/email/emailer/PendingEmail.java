@@ -0,0 +1,62 @@
+package com.danieldigiovanni.email.emailer;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An email waiting to be sent as part of a batch, with the future its caller
+ * waits on.
+ */
+public class PendingEmail {
+
+    private final String toAddress;
+    private final String subject;
+    private final String code;
+    private final Integer duration;
+    private final CompletableFuture<SendResult> result = new CompletableFuture<>();
+
+    public PendingEmail(String toAddress, String subject, String code, Integer duration) {
+        this.toAddress = toAddress;
+        this.subject = subject;
+        this.code = code;
+        this.duration = duration;
+    }
+
+    public String getToAddress() {
+        return this.toAddress;
+    }
+
+    public String getSubject() {
+        return this.subject;
+    }
+
+    public String getCode() {
+        return this.code;
+    }
+
+    public Integer getDuration() {
+        return this.duration;
+    }
+
+    public CompletableFuture<SendResult> getResult() {
+        return this.result;
+    }
+
+    /**
+     * Completes the result of this email, if it is not complete yet.
+     *
+     * @param sendResult The result of sending the email.
+     */
+    public void complete(SendResult sendResult) {
+        this.result.complete(sendResult);
+    }
+
+    /**
+     * Fails the result of this email, if it is not complete yet.
+     *
+     * @param cause Why the email could not be sent.
+     */
+    public void fail(Throwable cause) {
+        this.result.completeExceptionally(cause);
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.danieldigiovanni.email.emailer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aborts HTTP exchanges that take longer than a total deadline.
+ * <p>
+ * Connect and read timeouts only bound each step of an exchange, so a provider
+ * that keeps trickling bytes never trips them. The deadline starts when the
+ * exchange starts and ends when its response is closed, so no call to the
+ * provider can hold a thread for longer than the deadline.
+ */
+public class RequestDeadline implements ExecChainHandler, MeterBinder, AutoCloseable {
+
+    private final long deadlineMillis;
+    private final ScheduledThreadPoolExecutor watchdog;
+    private final LongAdder exceeded = new LongAdder();
+    private final Logger log = LoggerFactory.getLogger(RequestDeadline.class);
+
+    public RequestDeadline(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+        this.watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "http-deadline-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Most exchanges finish in time, so their aborts are cancelled
+        this.watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain) throws IOException, HttpException {
+        if (!(scope.originalRequest instanceof Cancellable cancellable)) {
+            return chain.proceed(request, scope);
+        }
+
+        ScheduledFuture<?> abort = this.watchdog.schedule(
+            () -> {
+                if (cancellable.cancel()) {
+                    this.exceeded.increment();
+                    this.log.warn(
+                        "Aborted {} {} after {} ms",
+                        request.getMethod(),
+                        request.getRequestUri(),
+                        this.deadlineMillis
+                    );
+                }
+            },
+            this.deadlineMillis,
+            TimeUnit.MILLISECONDS
+        );
+
+        ClassicHttpResponse response;
+        try {
+            response = chain.proceed(request, scope);
+        } catch (IOException | HttpException | RuntimeException exception) {
+            abort.cancel(false);
+            throw exception;
+        }
+
+        // A streamed body is still being read once the response is returned,
+        // so the deadline only ends when the body is closed
+        HttpEntity entity = response.getEntity();
+        if (entity == null || !entity.isStreaming()) {
+            abort.cancel(false);
+        } else {
+            response.setEntity(new HttpEntityWrapper(entity) {
+                @Override
+                public void close() throws IOException {
+                    abort.cancel(false);
+                    super.close();
+                }
+            });
+        }
+        return response;
+    }
+
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+        FunctionCounter.builder("http.client.deadline.exceeded", this.exceeded, LongAdder::sum)
+            .description("HTTP exchanges aborted for exceeding the total deadline")
+            .register(registry);
+    }
+
+    @Override
+    public void close() {
+        this.watchdog.shutdownNow();
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.danieldigiovanni.email.emailer;
+
+import com.danieldigiovanni.email.emailer.exception.EmailerUnavailableException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Sends emails with another {@link Emailer}, through an
+ * {@link EmailerCircuitBreaker}.
+ * <p>
+ * When the mail provider is slow or failing, emails fail fast with an
+ * {@link EmailerUnavailableException} instead of waiting on the provider.
+ */
+public class ResilientEmailer implements Emailer {
+
+    private final Emailer delegate;
+    private final EmailerCircuitBreaker circuitBreaker;
+
+    public ResilientEmailer(Emailer delegate, EmailerCircuitBreaker circuitBreaker) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Waits for the email to be sent.
+     *
+     * @throws EmailerUnavailableException If the bulkhead is full or the
+     *                                     circuit is open.
+     */
+    @Override
+    public void sendEmail(String toAddress, String subject, String code, Integer duration) {
+        try {
+            this.sendEmailAsync(toAddress, subject, code, duration).join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned future completes exceptionally with an
+     * {@link EmailerUnavailableException} if the bulkhead is full or the
+     * circuit is open.
+     */
+    @Override
+    public CompletableFuture<SendResult> sendEmailAsync(String toAddress, String subject, String code, Integer duration) {
+        return this.circuitBreaker.call(() ->
+            this.delegate.sendEmailAsync(toAddress, subject, code, duration)
+        );
+    }
+
+}
@@ -0,0 +1,353 @@
+package com.danieldigiovanni.email.emailer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Spreads emails across several mail providers by weight, failing over to
+ * another provider when one fails.
+ * <p>
+ * Each provider keeps an exponentially weighted moving average of its latency
+ * and of its error rate, where each call counts for {@code ewmaAlpha} of the
+ * average. A provider is picked at random, in proportion to its configured
+ * weight, reduced by its error rate and by how much slower it is than the
+ * fastest provider. A slow or failing provider therefore gets less traffic,
+ * but never less than {@link #MINIMUM_SHARE} of its weight, so that it is
+ * still probed and gets its traffic back once it recovers.
+ * <p>
+ * If the picked provider fails, the email is sent again with another provider
+ * picked the same way among the ones not tried yet, until one succeeds or
+ * every provider failed.
+ * <p>
+ * A failure caused by the email itself, such as an invalid recipient (see
+ * {@link EmailerErrors#isClientError(Throwable)}), would fail the same way with
+ * any provider. It is returned to the caller right away, without failing over,
+ * and does not count against the provider.
+ */
+public class RoutingEmailer implements Emailer, MeterBinder, AutoCloseable {
+
+    /**
+     * The minimum share of its weight a provider keeps, however slow or
+     * failing it is.
+     */
+    static final double MINIMUM_SHARE = 0.05;
+
+    /**
+     * Added to the latencies before comparing them, so that differences of a
+     * few milliseconds between fast providers do not shift traffic.
+     */
+    static final double LATENCY_TOLERANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final List<Provider> providers;
+    private final double ewmaAlpha;
+    private final LongAdder failovers = new LongAdder();
+    private final Logger log = LoggerFactory.getLogger(RoutingEmailer.class);
+
+    /**
+     * @param providers The providers to route emails to, at least one.
+     * @param ewmaAlpha The weight of each call in the moving averages, between
+     *                  0 and 1.
+     */
+    public RoutingEmailer(List<Provider> providers, double ewmaAlpha) {
+        if (providers.isEmpty()) {
+            throw new IllegalArgumentException("No mail provider to route to");
+        }
+        this.providers = List.copyOf(providers);
+        this.ewmaAlpha = ewmaAlpha;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Waits for the email to be sent by one of the providers.
+     */
+    @Override
+    public void sendEmail(String toAddress, String subject, String code, Integer duration) {
+        try {
+            this.sendEmailAsync(toAddress, subject, code, duration).join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned future completes exceptionally with the failure of the
+     * last provider tried if every provider failed, or with the client error
+     * of the first provider that returned one.
+     */
+    @Override
+    public CompletableFuture<SendResult> sendEmailAsync(String toAddress, String subject, String code, Integer duration) {
+        return this.sendWithAny(
+            new ArrayList<>(this.providers),
+            toAddress,
+            subject,
+            code,
+            duration
+        );
+    }
+
+    public List<Provider> getProviders() {
+        return this.providers;
+    }
+
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+        FunctionCounter.builder("emailer.routing.failovers", this.failovers, LongAdder::sum)
+            .description("Emails sent again with another provider after one failed")
+            .register(registry);
+        for (Provider provider : this.providers) {
+            Gauge.builder("emailer.routing.latency", provider, Provider::getLatencyMillis)
+                .tag("provider", provider.name)
+                .description("Moving average of the latency of the provider in milliseconds")
+                .register(registry);
+            Gauge.builder("emailer.routing.error.rate", provider, Provider::getErrorRate)
+                .tag("provider", provider.name)
+                .description("Moving average of the error rate of the provider")
+                .register(registry);
+            Gauge.builder("emailer.routing.share", this, emailer -> emailer.share(provider))
+                .tag("provider", provider.name)
+                .description("Share of the emails currently routed to the provider")
+                .register(registry);
+            FunctionCounter.builder("emailer.routing.sent", provider.sent, LongAdder::sum)
+                .tag("provider", provider.name)
+                .description("Emails sent by the provider")
+                .register(registry);
+            FunctionCounter.builder("emailer.routing.failed", provider.failed, LongAdder::sum)
+                .tag("provider", provider.name)
+                .description("Emails the provider failed to send")
+                .register(registry);
+        }
+    }
+
+    /**
+     * Closes the emailers of the providers that can be closed.
+     */
+    @Override
+    public void close() {
+        for (Provider provider : this.providers) {
+            if (provider.emailer instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception exception) {
+                    this.log.warn(
+                        "Unable to close mail provider {}",
+                        provider.name,
+                        exception
+                    );
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends an email with one of the remaining providers, failing over to the
+     * others if it fails for a reason other than a client error.
+     *
+     * @param remaining The providers not tried yet, from which the picked one
+     *                  is removed.
+     */
+    private CompletableFuture<SendResult> sendWithAny(List<Provider> remaining, String toAddress, String subject, String code, Integer duration) {
+        Provider provider = this.pick(remaining);
+        remaining.remove(provider);
+
+        return this.sendWith(provider, toAddress, subject, code, duration)
+            .exceptionallyCompose(exception -> {
+                if (remaining.isEmpty() || EmailerErrors.isClientError(exception)) {
+                    return CompletableFuture.failedFuture(exception);
+                }
+
+                Throwable cause = exception instanceof CompletionException
+                    ? exception.getCause()
+                    : exception;
+                this.log.warn(
+                    "Mail provider {} failed, failing over: {}",
+                    provider.name,
+                    cause.getMessage()
+                );
+                this.failovers.increment();
+                return this.sendWithAny(remaining, toAddress, subject, code, duration);
+            });
+    }
+
+    /**
+     * Sends an email with a provider, recording its latency and outcome
+     * unless it failed with a client error.
+     */
+    private CompletableFuture<SendResult> sendWith(Provider provider, String toAddress, String subject, String code, Integer duration) {
+        long start = System.nanoTime();
+        CompletableFuture<SendResult> result;
+        try {
+            result = provider.emailer.sendEmailAsync(toAddress, subject, code, duration);
+        } catch (RuntimeException exception) {
+            result = CompletableFuture.failedFuture(exception);
+        }
+
+        return result.whenComplete((sendResult, exception) -> {
+            if (exception != null && EmailerErrors.isClientError(exception)) {
+                return;
+            }
+            provider.record(System.nanoTime() - start, exception != null, this.ewmaAlpha);
+        });
+    }
+
+    /**
+     * Picks a provider at random, in proportion to its routing score.
+     */
+    private Provider pick(List<Provider> candidates) {
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+
+        double fastestNanos = this.fastestLatencyNanos();
+        double[] scores = new double[candidates.size()];
+        double total = 0;
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = candidates.get(i).score(fastestNanos);
+            total += scores[i];
+        }
+
+        double target = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < scores.length; i++) {
+            target -= scores[i];
+            if (target < 0) {
+                return candidates.get(i);
+            }
+        }
+        return candidates.get(scores.length - 1);
+    }
+
+    /**
+     * Gets the share of the emails currently routed to a provider first.
+     */
+    private double share(Provider provider) {
+        double fastestNanos = this.fastestLatencyNanos();
+        double total = 0;
+        for (Provider each : this.providers) {
+            total += each.score(fastestNanos);
+        }
+        return provider.score(fastestNanos) / total;
+    }
+
+    private double fastestLatencyNanos() {
+        double fastestNanos = Double.MAX_VALUE;
+        for (Provider provider : this.providers) {
+            double latencyNanos = provider.latencyNanos;
+            if (latencyNanos > 0 && latencyNanos < fastestNanos) {
+                fastestNanos = latencyNanos;
+            }
+        }
+        return fastestNanos;
+    }
+
+    /**
+     * A mail provider, with its weight and the moving averages of its latency
+     * and error rate.
+     */
+    public static class Provider {
+
+        private final String name;
+        private final Emailer emailer;
+        private final double weight;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile double latencyNanos = 0;
+        private volatile double errorRate = 0;
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        /**
+         * @param name    The name of the provider, used in logs and metrics.
+         * @param emailer The emailer of the provider.
+         * @param weight  The share of the emails the provider gets when all
+         *                providers are healthy, relative to the others.
+         */
+        public Provider(String name, Emailer emailer, double weight) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException(
+                    "Weight of mail provider " + name + " must be positive"
+                );
+            }
+            this.name = name;
+            this.emailer = emailer;
+            this.weight = weight;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public Emailer getEmailer() {
+            return this.emailer;
+        }
+
+        public double getWeight() {
+            return this.weight;
+        }
+
+        public double getLatencyMillis() {
+            return this.latencyNanos / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        public double getErrorRate() {
+            return this.errorRate;
+        }
+
+        /**
+         * Gets the weight of the provider, reduced by its error rate and by
+         * how much slower it is than the fastest provider.
+         *
+         * @param fastestNanos The average latency of the fastest provider.
+         */
+        double score(double fastestNanos) {
+            double health = 1 - this.errorRate;
+            double latencyNanos = this.latencyNanos;
+            if (latencyNanos > 0 && fastestNanos < latencyNanos) {
+                health *= (fastestNanos + LATENCY_TOLERANCE_NANOS)
+                    / (latencyNanos + LATENCY_TOLERANCE_NANOS);
+            }
+            return this.weight * Math.max(MINIMUM_SHARE, health);
+        }
+
+        /**
+         * Adds a call to the moving averages. The first call sets the
+         * latency, so that the average does not start from 0.
+         */
+        void record(long durationNanos, boolean failure, double alpha) {
+            if (failure) {
+                this.failed.increment();
+            } else {
+                this.sent.increment();
+            }
+
+            this.lock.lock();
+            try {
+                this.latencyNanos = this.latencyNanos == 0
+                    ? durationNanos
+                    : this.latencyNanos + alpha * (durationNanos - this.latencyNanos);
+                this.errorRate += alpha * ((failure ? 1 : 0) - this.errorRate);
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+    }
+
+}
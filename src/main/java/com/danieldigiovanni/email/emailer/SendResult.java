@@ -0,0 +1,31 @@
+package com.danieldigiovanni.email.emailer;
+
+/**
+ * The outcome of an email accepted by the mail provider.
+ */
+public class SendResult {
+
+    private final String messageId;
+
+    /**
+     * @param messageId The id the mail provider gave the email, or null if it
+     *                  does not give one.
+     */
+    public SendResult(String messageId) {
+        this.messageId = messageId;
+    }
+
+    /**
+     * Creates the result of an email whose provider does not give it an id.
+     *
+     * @return The result.
+     */
+    public static SendResult sent() {
+        return new SendResult(null);
+    }
+
+    public String getMessageId() {
+        return this.messageId;
+    }
+
+}
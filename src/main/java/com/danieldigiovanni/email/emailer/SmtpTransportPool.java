@@ -0,0 +1,320 @@
+package com.danieldigiovanni.email.emailer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of connected and authenticated SMTP transports, reused across
+ * emails so that each email does not open a new connection, negotiate TLS,
+ * and authenticate again.
+ * <p>
+ * At most {@code maximumConnections} transports are in use at once, and a
+ * caller waits up to {@code borrowTimeoutMillis} for one. Idle transports are
+ * reused most recently used first, so that a few stay busy and the others
+ * time out. A transport is checked with a {@code NOOP} before being reused
+ * if it was idle for {@code validateAfterInactivityMillis}, and reconnected
+ * without checking if it was idle for {@code idleTimeoutMillis}, since the
+ * server has likely dropped it. A transport is closed after sending
+ * {@code maximumMessagesPerConnection} messages, as SMTP servers limit the
+ * messages per connection.
+ */
+public class SmtpTransportPool implements MeterBinder, AutoCloseable {
+
+    private final Session session;
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final int maximumConnections;
+    private final int maximumMessagesPerConnection;
+    private final long idleTimeoutNanos;
+    private final long validateAfterInactivityNanos;
+    private final long borrowTimeoutMillis;
+    private final Semaphore permits;
+    private final BlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final LongAdder connects = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder broken = new LongAdder();
+    private volatile boolean closed = false;
+    private final Logger log = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+    public SmtpTransportPool(Session session, String host, int port, String username, String password, int maximumConnections, int maximumMessagesPerConnection, long idleTimeoutMillis, long validateAfterInactivityMillis, long borrowTimeoutMillis) {
+        this.session = session;
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.maximumConnections = maximumConnections;
+        this.maximumMessagesPerConnection = maximumMessagesPerConnection;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.validateAfterInactivityNanos = TimeUnit.MILLISECONDS.toNanos(
+            validateAfterInactivityMillis
+        );
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.permits = new Semaphore(maximumConnections, true);
+    }
+
+    /**
+     * Gets the mail session of the transports, with which messages are
+     * created.
+     */
+    public Session getSession() {
+        return this.session;
+    }
+
+    /**
+     * Sends a message over a pooled transport.
+     *
+     * @param message The message to send.
+     *
+     * @throws MessagingException If the message could not be sent.
+     */
+    public void send(MimeMessage message) throws MessagingException {
+        MessagingException failure = this.sendAll(List.of(message)).get(0);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Sends several messages over a single pooled transport, one after the
+     * other, moving to a new transport each time one has sent
+     * {@code maximumMessagesPerConnection} messages.
+     * <p>
+     * A message rejected by the server does not stop the others. If the
+     * connection breaks, the message being sent is sent once more, and the
+     * remaining messages are sent, over another transport. The server may
+     * have accepted the message before the connection broke, in which case it
+     * is delivered twice, which is better than not at all. If no transport can
+     * be had, the remaining messages fail.
+     *
+     * @param messages The messages to send.
+     *
+     * @return The failure of each message in order, null for the messages
+     * that were sent.
+     */
+    public List<MessagingException> sendAll(List<MimeMessage> messages) {
+        List<MessagingException> failures = new ArrayList<>(messages.size());
+        PooledTransport transport = null;
+        MessagingException unavailable = null;
+        try {
+            for (MimeMessage message : messages) {
+                try {
+                    message.saveChanges();
+                } catch (MessagingException exception) {
+                    failures.add(exception);
+                    continue;
+                }
+
+                MessagingException failure = null;
+                // Sent at most twice, if the connection breaks the first time
+                for (int attempt = 0; attempt < 2; attempt++) {
+                    if (transport != null
+                        && transport.messagesSent >= this.maximumMessagesPerConnection) {
+                        this.release(transport, true);
+                        transport = null;
+                    }
+                    if (transport == null && unavailable == null) {
+                        try {
+                            transport = this.borrow();
+                        } catch (MessagingException exception) {
+                            unavailable = exception;
+                        }
+                    }
+                    if (unavailable != null) {
+                        failure = unavailable;
+                        break;
+                    }
+
+                    try {
+                        transport.transport.sendMessage(
+                            message,
+                            message.getAllRecipients()
+                        );
+                        transport.messagesSent++;
+                        this.messages.increment();
+                        failure = null;
+                        break;
+                    } catch (MessagingException exception) {
+                        failure = exception;
+                        // Rejected recipients leave the connection usable, but
+                        // a connection closed mid-command fails the same way
+                        if (exception instanceof SendFailedException
+                            && transport.transport.isConnected()) {
+                            break;
+                        }
+                        this.broken.increment();
+                        this.release(transport, false);
+                        transport = null;
+                    }
+                }
+                failures.add(failure);
+            }
+        } finally {
+            if (transport != null) {
+                this.release(transport, true);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Closes the idle transports and stops pooling, so that the transports in
+     * use are closed once released.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        PooledTransport transport;
+        while ((transport = this.idle.pollFirst()) != null) {
+            this.disconnect(transport);
+        }
+    }
+
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+        Gauge.builder("smtp.pool.open", this.open, AtomicInteger::get)
+            .description("Open SMTP connections")
+            .register(registry);
+        Gauge.builder("smtp.pool.idle", this.idle, BlockingDeque::size)
+            .description("Open SMTP connections waiting to be reused")
+            .register(registry);
+        Gauge.builder("smtp.pool.max", this, pool -> pool.maximumConnections)
+            .description("Maximum number of SMTP connections in use")
+            .register(registry);
+        FunctionCounter.builder("smtp.pool.connects", this.connects, LongAdder::sum)
+            .description("SMTP connections opened and authenticated")
+            .register(registry);
+        FunctionCounter.builder("smtp.pool.messages", this.messages, LongAdder::sum)
+            .description("Messages sent over pooled SMTP connections")
+            .register(registry);
+        FunctionCounter.builder("smtp.pool.broken", this.broken, LongAdder::sum)
+            .description("SMTP connections that broke while sending")
+            .register(registry);
+    }
+
+    /**
+     * Takes a connected transport, reusing an idle one if possible.
+     *
+     * @throws MessagingException If no transport is free in time, or a new
+     *                            one cannot connect.
+     */
+    private PooledTransport borrow() throws MessagingException {
+        if (this.closed) {
+            throw new MessagingException("SMTP transport pool is closed");
+        }
+        try {
+            if (!this.permits.tryAcquire(this.borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new MessagingException(
+                    "No SMTP connection free within "
+                        + this.borrowTimeoutMillis + " ms"
+                );
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted waiting for an SMTP connection");
+        }
+
+        try {
+            PooledTransport transport;
+            while ((transport = this.idle.pollFirst()) != null) {
+                if (this.isReusable(transport)) {
+                    return transport;
+                }
+                this.disconnect(transport);
+            }
+            return this.connect();
+        } catch (MessagingException | RuntimeException exception) {
+            this.permits.release();
+            throw exception;
+        }
+    }
+
+    /**
+     * Gives a transport back to the pool, or closes it if it cannot be
+     * reused.
+     */
+    private void release(PooledTransport transport, boolean reusable) {
+        try {
+            if (reusable
+                && !this.closed
+                && transport.messagesSent < this.maximumMessagesPerConnection) {
+                transport.lastUsedNanos = System.nanoTime();
+                this.idle.offerFirst(transport);
+            } else {
+                this.disconnect(transport);
+            }
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * Checks whether an idle transport is still connected, asking the server
+     * only if it has been idle for a while.
+     */
+    private boolean isReusable(PooledTransport transport) {
+        long idleNanos = System.nanoTime() - transport.lastUsedNanos;
+        if (idleNanos >= this.idleTimeoutNanos) {
+            return false;
+        }
+        if (idleNanos < this.validateAfterInactivityNanos) {
+            return true;
+        }
+        // Sends a NOOP to the server
+        return transport.transport.isConnected();
+    }
+
+    private PooledTransport connect() throws MessagingException {
+        Transport transport = this.session.getTransport("smtp");
+        transport.connect(this.host, this.port, this.username, this.password);
+        this.open.incrementAndGet();
+        this.connects.increment();
+        return new PooledTransport(transport);
+    }
+
+    private void disconnect(PooledTransport transport) {
+        this.open.decrementAndGet();
+        try {
+            transport.transport.close();
+        } catch (MessagingException exception) {
+            this.log.debug("Unable to close SMTP connection", exception);
+        }
+    }
+
+    /**
+     * A connected transport with the number of messages it sent.
+     */
+    private static class PooledTransport {
+
+        private final Transport transport;
+        private int messagesSent = 0;
+        private long lastUsedNanos = System.nanoTime();
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.danieldigiovanni.email.emailer.dto;
+
+import java.util.List;
+
+/**
+ * Request body for calling the send mail API with several emails at once.
+ */
+public class ApiEmailerBatchRequest {
+
+    private List<ApiEmailerRequest> messages;
+
+    public ApiEmailerBatchRequest(List<ApiEmailerRequest> messages) {
+        this.messages = messages;
+    }
+
+    public List<ApiEmailerRequest> getMessages() {
+        return this.messages;
+    }
+
+    public void setMessages(List<ApiEmailerRequest> messages) {
+        this.messages = messages;
+    }
+
+}
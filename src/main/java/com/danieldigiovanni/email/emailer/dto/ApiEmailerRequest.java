@@ -1,16 +1,22 @@
 package com.danieldigiovanni.email.emailer.dto;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
 /**
  * Request body for calling the send mail API.
+ * <p>
+ * The content is the rendered HTML of the email in UTF-8, written to the JSON
+ * as a string.
  */
 public class ApiEmailerRequest {
 
     private String fromAddress;
     private String toAddress;
     private String subject;
-    private String content;
+    @JsonSerialize(using = Utf8StringSerializer.class)
+    private byte[] content;
 
-    public ApiEmailerRequest(String fromAddress, String toAddress, String subject, String content) {
+    public ApiEmailerRequest(String fromAddress, String toAddress, String subject, byte[] content) {
         this.fromAddress = fromAddress;
         this.toAddress = toAddress;
         this.subject = subject;
@@ -41,11 +47,11 @@ public class ApiEmailerRequest {
         this.subject = subject;
     }
 
-    public String getContent() {
+    public byte[] getContent() {
         return this.content;
     }
 
-    public void setContent(String content) {
+    public void setContent(byte[] content) {
         this.content = content;
     }
 
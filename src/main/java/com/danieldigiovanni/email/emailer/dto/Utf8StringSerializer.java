@@ -0,0 +1,34 @@
+package com.danieldigiovanni.email.emailer.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.json.UTF8JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializes UTF-8 bytes as a JSON string.
+ * <p>
+ * When writing UTF-8, the bytes are escaped straight into the output, without
+ * being decoded to a string and encoded again.
+ */
+public class Utf8StringSerializer extends StdSerializer<byte[]> {
+
+    public Utf8StringSerializer() {
+        super(byte[].class);
+    }
+
+    @Override
+    public void serialize(byte[] value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        if (generator instanceof UTF8JsonGenerator) {
+            generator.writeUTF8String(value, 0, value.length);
+        } else {
+            // Other generators, such as those writing characters, do not
+            // support raw UTF-8
+            generator.writeString(new String(value, StandardCharsets.UTF_8));
+        }
+    }
+
+}
@@ -27,6 +27,10 @@ public class ApiCallStatusException extends RuntimeException {
         this.responseBody = responseBody;
     }
 
+    public HttpStatusCode getStatusCode() {
+        return this.statusCode;
+    }
+
     /**
      * Generates a message to be logged about this exception.
      * <p>
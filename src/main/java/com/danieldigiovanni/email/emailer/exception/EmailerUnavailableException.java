@@ -0,0 +1,32 @@
+package com.danieldigiovanni.email.emailer.exception;
+
+/**
+ * Exception representing an email that was not sent because the mail
+ * provider is considered unavailable, either because its circuit is open or
+ * because too many emails are already being sent.
+ * <p>
+ * The mail provider was not called, so the email can be tried again later
+ * without counting as a failed attempt.
+ */
+public class EmailerUnavailableException extends RuntimeException {
+
+    private final long retryAfterMillis;
+
+    /**
+     * Constructs an EmailerUnavailableException with the given message and
+     * delay.
+     *
+     * @param message          The message of the exception.
+     * @param retryAfterMillis How long to wait before trying again, or 0 if
+     *                         unknown.
+     */
+    public EmailerUnavailableException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return this.retryAfterMillis;
+    }
+
+}
@@ -5,6 +5,7 @@ import com.danieldigiovanni.email.emailer.exception.ApiCallResponseBodyException
 import com.danieldigiovanni.email.emailer.exception.ApiCallStatusException;
 import com.danieldigiovanni.email.emailer.exception.InvalidUrlException;
 import com.danieldigiovanni.email.emailer.exception.MailtrapEmailerException;
+import com.danieldigiovanni.email.outbox.exception.NotAnOperatorException;
 import jakarta.persistence.EntityExistsException;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.ValidationException;
@@ -30,6 +31,7 @@ public class ControllerExceptionHandler {
     private final String NOT_FOUND_ERROR = "Not Found Error";
     private final String ALREADY_EXISTS_ERROR = "Already Exists Error";
     private final String NOT_YOUR_CODE_ERROR = "Not Your Code";
+    private final String NOT_AN_OPERATOR_ERROR = "Not An Operator";
     private final String EMAILER_ERROR = "Emailer Error";
 
     private final Logger log =
@@ -99,6 +101,15 @@ public class ControllerExceptionHandler {
         );
     }
 
+    @ResponseStatus(HttpStatus.FORBIDDEN)
+    @ExceptionHandler(NotAnOperatorException.class)
+    public ErrorResponseBody handleNotAnOperatorException(NotAnOperatorException exception) {
+        return ErrorResponseBody.handledErrorResponse(
+            this.NOT_AN_OPERATOR_ERROR,
+            "Only operators can manage the outbox"
+        );
+    }
+
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     @ExceptionHandler(ApiCallStatusException.class)
     public ErrorResponseBody handleApiCallStatusException(ApiCallStatusException exception) {
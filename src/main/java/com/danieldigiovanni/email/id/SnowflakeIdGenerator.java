@@ -0,0 +1,106 @@
+package com.danieldigiovanni.email.id;
+
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+
+import java.lang.reflect.Member;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates time-ordered 64-bit ids, in the style of Twitter's Snowflake.
+ * <p>
+ * The id layout is:
+ * <pre>
+ * | 0 (1 bit) | milliseconds since 2023-01-01 (41 bits) | node id (10 bits) | sequence (12 bits) |
+ * </pre>
+ * Ids are assigned in memory, without a round-trip to the database, so
+ * Hibernate can batch inserts. Each instance of the application must have its
+ * own node id (the Hibernate property {@value #NODE_ID_PROPERTY}), so that
+ * several instances can insert rows without sharing a counter.
+ * <p>
+ * The timestamp and sequence are kept together in one {@link AtomicLong} and
+ * updated with compare-and-set, so generating an id never blocks. If more than
+ * 4096 ids are needed in one millisecond, the sequence overflows into the
+ * timestamp, and if the clock goes backwards the last timestamp keeps being
+ * used. Either way, ids keep increasing.
+ * <p>
+ * Generated ids are much larger than any id assigned by the previous
+ * auto-increment columns, so existing rows keep their ids and never collide
+ * with new ones.
+ */
+public class SnowflakeIdGenerator implements IdentifierGenerator {
+
+    public static final String NODE_ID_PROPERTY = "id-generator.node-id";
+
+    /**
+     * 2023-01-01T00:00:00Z in milliseconds since the Unix epoch.
+     */
+    private static final long EPOCH_MILLIS = 1672531200000L;
+    private static final int NODE_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAXIMUM_NODE_ID = (1L << NODE_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+    /**
+     * The timestamp (shifted left by {@value #SEQUENCE_BITS}) and sequence of
+     * the last generated id.
+     */
+    private final AtomicLong lastState = new AtomicLong();
+
+    public SnowflakeIdGenerator(SnowflakeId config, Member idMember, CustomIdGeneratorCreationContext creationContext) {
+        this(
+            creationContext.getServiceRegistry()
+                .getService(ConfigurationService.class)
+                .getSetting(NODE_ID_PROPERTY, value -> Long.valueOf(value.toString()), 0L)
+        );
+    }
+
+    /**
+     * Constructs a SnowflakeIdGenerator for the given node.
+     *
+     * @param nodeId The id of this instance, between 0 and 1023.
+     *
+     * @throws IllegalArgumentException If the node id is out of range.
+     */
+    public SnowflakeIdGenerator(long nodeId) {
+        if (nodeId < 0 || nodeId > MAXIMUM_NODE_ID) {
+            throw new IllegalArgumentException(
+                NODE_ID_PROPERTY + " must be between 0 and " + MAXIMUM_NODE_ID
+            );
+        }
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        return this.nextId();
+    }
+
+    /**
+     * Generates the next id.
+     *
+     * @return A new id, greater than all the ids previously generated by this
+     * generator.
+     */
+    public long nextId() {
+        while (true) {
+            long last = this.lastState.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long timestamp = System.currentTimeMillis() - EPOCH_MILLIS;
+
+            long next = timestamp > lastTimestamp
+                ? timestamp << SEQUENCE_BITS
+                : last + 1;
+
+            if (this.lastState.compareAndSet(last, next)) {
+                return ((next >>> SEQUENCE_BITS) << (NODE_ID_BITS + SEQUENCE_BITS))
+                    | (this.nodeId << SEQUENCE_BITS)
+                    | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+}
@@ -1,8 +1,7 @@
 package com.danieldigiovanni.email.metrics;
 
+import com.danieldigiovanni.email.id.SnowflakeId;
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.validation.constraints.NotNull;
 
@@ -12,7 +11,7 @@ import java.util.Date;
 public class Metrics {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
     @NotNull
     private Long customerId;
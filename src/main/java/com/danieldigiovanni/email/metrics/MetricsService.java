@@ -1,18 +1,29 @@
 package com.danieldigiovanni.email.metrics;
 
+import com.danieldigiovanni.email.datasource.ShardRouting;
 import org.springframework.stereotype.Service;
 
 @Service
 public class MetricsService {
 
     private final MetricsRepository metricsRepository;
+    private final ShardRouting shardRouting;
 
-    public MetricsService(MetricsRepository metricsRepository) {
+    public MetricsService(MetricsRepository metricsRepository, ShardRouting shardRouting) {
         this.metricsRepository = metricsRepository;
+        this.shardRouting = shardRouting;
     }
 
+    /**
+     * Saves the metrics of a request on the shard of its customer.
+     *
+     * @param metrics The metrics of the request.
+     */
     public void trackMetrics(Metrics metrics) {
-        this.metricsRepository.save(metrics);
+        this.shardRouting.onShard(
+            this.shardRouting.shardOf(metrics.getCustomerId()),
+            () -> this.metricsRepository.save(metrics)
+        );
     }
 
 }
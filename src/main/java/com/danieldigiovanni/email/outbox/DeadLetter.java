@@ -0,0 +1,91 @@
+package com.danieldigiovanni.email.outbox;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.Date;
+
+/**
+ * An {@link OutboxMessage} that failed to be sent too many times, moved out of
+ * the outbox by the {@link OutboxDispatcher}.
+ * <p>
+ * Dead letters keep the id and the encrypted payload of the original message,
+ * so that an operator can replay them once the cause of the failures is
+ * fixed.
+ */
+@Entity
+@Table(indexes = {
+    @Index(name = "idx_dead_letter_dead_at", columnList = "deadAt")
+})
+public class DeadLetter {
+
+    public static final int ERROR_LENGTH = 512;
+
+    @Id
+    private Long id;
+    @NotNull
+    private Long codeId;
+    @NotNull
+    private String toAddress;
+    @NotNull
+    private String subject;
+    @Column(length = 512)
+    private byte[] payload;
+    @NotNull
+    private Integer durationInMinutes;
+    @NotNull
+    private Integer attempts;
+    @Column(length = ERROR_LENGTH)
+    private String lastError;
+    @NotNull
+    private Date createdAt;
+    @NotNull
+    private Date deadAt;
+
+    public DeadLetter() { }
+
+    public Long getId() {
+        return this.id;
+    }
+
+    public Long getCodeId() {
+        return this.codeId;
+    }
+
+    public String getToAddress() {
+        return this.toAddress;
+    }
+
+    public String getSubject() {
+        return this.subject;
+    }
+
+    public byte[] getPayload() {
+        return this.payload;
+    }
+
+    public Integer getDurationInMinutes() {
+        return this.durationInMinutes;
+    }
+
+    public Integer getAttempts() {
+        return this.attempts;
+    }
+
+    public String getLastError() {
+        return this.lastError;
+    }
+
+    public Date getCreatedAt() {
+        return this.createdAt;
+    }
+
+    public Date getDeadAt() {
+        return this.deadAt;
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.danieldigiovanni.email.outbox;
+
+import com.danieldigiovanni.email.outbox.dto.DeadLetterResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+import java.util.List;
+
+@RestController
+public class DeadLetterController {
+
+    private final DeadLetterService deadLetterService;
+
+    @Autowired
+    public DeadLetterController(DeadLetterService deadLetterService) {
+        this.deadLetterService = deadLetterService;
+    }
+
+    @GetMapping("/outbox/dead-letters")
+    public List<DeadLetterResponse> getDeadLetters(Principal principal, @RequestParam(defaultValue = "100") int limit) {
+        return this.deadLetterService.getDeadLetters(principal, limit);
+    }
+
+    @PostMapping("/outbox/dead-letters/{id}/replay")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void replayDeadLetter(Principal principal, @PathVariable Long id) {
+        this.deadLetterService.replayDeadLetter(principal, id);
+    }
+
+}
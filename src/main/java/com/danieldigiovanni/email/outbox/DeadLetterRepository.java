@@ -0,0 +1,43 @@
+package com.danieldigiovanni.email.outbox;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.List;
+
+public interface DeadLetterRepository extends JpaRepository<DeadLetter, Long> {
+
+    List<DeadLetter> findAllByOrderByDeadAtDesc(Pageable pageable);
+
+    /**
+     * Copies an outbox message into the dead letters, counting its last
+     * attempt.
+     * <p>
+     * Must be called in the same transaction as the deletion of the message,
+     * so a message is never in both tables or in neither.
+     *
+     * @param id        The id of the outbox message.
+     * @param lastError The error of the last attempt.
+     * @param deadAt    The date at which the message is given up on.
+     *
+     * @return The number of messages copied.
+     */
+    @Modifying
+    @Query("""
+        insert into DeadLetter (
+            id, codeId, toAddress, subject, payload, durationInMinutes,
+            attempts, lastError, createdAt, deadAt
+        )
+        select m.id, m.codeId, m.toAddress, m.subject, m.payload,
+            m.durationInMinutes, m.attempts + 1, :lastError, m.createdAt,
+            :deadAt
+        from OutboxMessage m
+        where m.id = :id
+        """)
+    int bury(@Param("id") Long id, @Param("lastError") String lastError, @Param("deadAt") Date deadAt);
+
+}
@@ -0,0 +1,161 @@
+package com.danieldigiovanni.email.outbox;
+
+import com.danieldigiovanni.email.code.Code;
+import com.danieldigiovanni.email.code.CodeRepository;
+import com.danieldigiovanni.email.customer.Customer;
+import com.danieldigiovanni.email.customer.CustomerService;
+import com.danieldigiovanni.email.datasource.ShardRouting;
+import com.danieldigiovanni.email.outbox.dto.DeadLetterResponse;
+import com.danieldigiovanni.email.outbox.exception.NotAnOperatorException;
+import jakarta.persistence.EntityNotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.Principal;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Lets operators inspect and replay the {@link DeadLetter}s.
+ * <p>
+ * Operators are the customers whose email is listed in
+ * {@code operator.emails}.
+ */
+@Service
+public class DeadLetterService {
+
+    private static final int MAXIMUM_LIMIT = 1000;
+
+    private final DeadLetterRepository deadLetterRepository;
+    private final OutboxRepository outboxRepository;
+    private final CodeRepository codeRepository;
+    private final CustomerService customerService;
+    private final ShardRouting shardRouting;
+    private final TransactionTemplate transactionTemplate;
+    private final List<String> operatorEmails;
+
+    @Autowired
+    public DeadLetterService(
+        DeadLetterRepository deadLetterRepository,
+        OutboxRepository outboxRepository,
+        CodeRepository codeRepository,
+        CustomerService customerService,
+        ShardRouting shardRouting,
+        TransactionTemplate transactionTemplate,
+        @Value("${operator.emails}") List<String> operatorEmails
+    ) {
+        this.deadLetterRepository = deadLetterRepository;
+        this.outboxRepository = outboxRepository;
+        this.codeRepository = codeRepository;
+        this.customerService = customerService;
+        this.shardRouting = shardRouting;
+        this.transactionTemplate = transactionTemplate;
+        this.operatorEmails = operatorEmails.stream().map(String::trim).toList();
+    }
+
+    /**
+     * Gets the most recent dead letters of every shard.
+     *
+     * @param principal The authenticated customer, who must be an operator.
+     * @param limit     The maximum number of dead letters (at most 1000).
+     *
+     * @return The dead letters, most recent first.
+     *
+     * @throws NotAnOperatorException If the customer is not an operator.
+     */
+    public List<DeadLetterResponse> getDeadLetters(Principal principal, int limit) {
+        this.checkOperator(principal);
+
+        PageRequest page = PageRequest.of(
+            0,
+            Math.max(1, Math.min(limit, MAXIMUM_LIMIT))
+        );
+        return this.shardRouting.onEachShard(() ->
+                this.deadLetterRepository.findAllByOrderByDeadAtDesc(page)
+            )
+            .stream()
+            .flatMap(List::stream)
+            .sorted(Comparator.comparing(DeadLetter::getDeadAt).reversed())
+            .limit(page.getPageSize())
+            .map(DeadLetterResponse::new)
+            .toList();
+    }
+
+    /**
+     * Moves a dead letter back to the outbox, to be sent again with a fresh
+     * number of attempts.
+     *
+     * @param principal The authenticated customer, who must be an operator.
+     * @param id        The id of the dead letter.
+     *
+     * @throws NotAnOperatorException  If the customer is not an operator.
+     * @throws EntityNotFoundException If the dead letter does not exist, or if
+     *                                 its code is no longer active.
+     */
+    public void replayDeadLetter(Principal principal, Long id) {
+        this.checkOperator(principal);
+
+        // Dead letters are on the shard of their code, which is not known
+        // from the id alone
+        boolean replayed = this.shardRouting.onEachShard(() ->
+            this.replayOnCurrentShard(id)
+        ).contains(true);
+
+        if (!replayed) {
+            throw new EntityNotFoundException(
+                "Dead letter with ID " + id + " does not exist"
+            );
+        }
+    }
+
+    /**
+     * Replays a dead letter if it is on the current shard.
+     *
+     * @return True if the dead letter was found and replayed.
+     */
+    private boolean replayOnCurrentShard(Long id) {
+        Boolean replayed = this.transactionTemplate.execute(status -> {
+            DeadLetter deadLetter =
+                this.deadLetterRepository.findById(id).orElse(null);
+            if (deadLetter == null) {
+                return false;
+            }
+
+            // Sending a code that can no longer be verified would only
+            // confuse its recipient
+            boolean codeActive = this.codeRepository
+                .findById(deadLetter.getCodeId())
+                .map(Code::isActive)
+                .orElse(false);
+            if (!codeActive) {
+                throw new EntityNotFoundException(
+                    "Code of dead letter with ID " + id + " is no longer active"
+                );
+            }
+
+            this.outboxRepository.save(OutboxMessage.builder()
+                .codeId(deadLetter.getCodeId())
+                .toAddress(deadLetter.getToAddress())
+                .subject(deadLetter.getSubject())
+                .payload(deadLetter.getPayload())
+                .durationInMinutes(deadLetter.getDurationInMinutes())
+                .createdAt(deadLetter.getCreatedAt())
+                .build());
+            this.deadLetterRepository.delete(deadLetter);
+            return true;
+        });
+        return Boolean.TRUE.equals(replayed);
+    }
+
+    private void checkOperator(Principal principal) {
+        Customer customer =
+            this.customerService.getCustomerByPrincipal(principal);
+        if (!this.operatorEmails.contains(customer.getEmail())) {
+            throw new NotAnOperatorException();
+        }
+    }
+
+}
@@ -0,0 +1,305 @@
+package com.danieldigiovanni.email.outbox;
+
+import com.danieldigiovanni.email.datasource.ReadRouting;
+import com.danieldigiovanni.email.datasource.ShardRouting;
+import com.danieldigiovanni.email.emailer.EmailDispatcher;
+import com.danieldigiovanni.email.emailer.SendResult;
+import com.danieldigiovanni.email.emailer.exception.EmailerUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends the emails in the outbox.
+ * <p>
+ * Pending messages are claimed in batches with a lease, handed to the
+ * {@link EmailDispatcher}, and then marked as sent. If this instance stops
+ * while holding a claim, the lease expires and another poll picks the
+ * messages up again, so every message is sent at least once.
+ * <p>
+ * A message that fails is tried again after an exponential backoff, starting
+ * at {@code outbox.retry.base-delay-millis} and doubling up to
+ * {@code outbox.retry.max-delay-millis}. Each delay is jittered (between half
+ * and all of it), so that the messages that failed together during an outage
+ * of the mail provider are not all tried again at the same time. After
+ * {@code outbox.retry.max-attempts} attempts, the message is moved to the
+ * {@link DeadLetter} table, from which an operator can replay it.
+ * <p>
+ * A message rejected by the circuit breaker of the mail provider (see
+ * {@link EmailerUnavailableException}) was never sent to the provider, so it
+ * is postponed until the circuit may let it through, without using up an
+ * attempt.
+ * <p>
+ * Messages are stored on the shard of their code, and each shard is drained
+ * in turn.
+ */
+@Component
+public class OutboxDispatcher implements MeterBinder {
+
+    private final OutboxRepository outboxRepository;
+    private final DeadLetterRepository deadLetterRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final PayloadCipher payloadCipher;
+    private final EmailDispatcher emailDispatcher;
+    private final ReadRouting readRouting;
+    private final ShardRouting shardRouting;
+    private final int batchSize;
+    private final long leaseMillis;
+    private final long baseDelayMillis;
+    private final long maximumDelayMillis;
+    private final int maximumAttempts;
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder postponements = new LongAdder();
+    private final LongAdder deadLetters = new LongAdder();
+    private final Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    @Autowired
+    public OutboxDispatcher(
+        OutboxRepository outboxRepository,
+        DeadLetterRepository deadLetterRepository,
+        TransactionTemplate transactionTemplate,
+        PayloadCipher payloadCipher,
+        EmailDispatcher emailDispatcher,
+        ReadRouting readRouting,
+        ShardRouting shardRouting,
+        @Value("${outbox.batch-size}") int batchSize,
+        @Value("${outbox.lease-millis}") long leaseMillis,
+        @Value("${outbox.retry.base-delay-millis}") long baseDelayMillis,
+        @Value("${outbox.retry.max-delay-millis}") long maximumDelayMillis,
+        @Value("${outbox.retry.max-attempts}") int maximumAttempts
+    ) {
+        this.outboxRepository = outboxRepository;
+        this.deadLetterRepository = deadLetterRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.payloadCipher = payloadCipher;
+        this.emailDispatcher = emailDispatcher;
+        this.readRouting = readRouting;
+        this.shardRouting = shardRouting;
+        this.batchSize = batchSize;
+        this.leaseMillis = leaseMillis;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maximumDelayMillis = maximumDelayMillis;
+        this.maximumAttempts = maximumAttempts;
+    }
+
+    /**
+     * Sends pending messages, batch by batch, until the outbox of every shard
+     * is drained.
+     */
+    @Scheduled(fixedDelayString = "${outbox.poll-interval-millis}")
+    public void dispatchPending() {
+        this.shardRouting.onEachShard(() -> {
+            int batchCount;
+            do {
+                batchCount = this.dispatchBatch();
+            } while (batchCount == this.batchSize);
+            return null;
+        });
+    }
+
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+        FunctionCounter.builder("outbox.retries", this.retries, LongAdder::sum)
+            .description("Outbox messages scheduled to be tried again after failing")
+            .register(registry);
+        FunctionCounter.builder("outbox.postponements", this.postponements, LongAdder::sum)
+            .description("Outbox messages postponed because the mail provider was unavailable")
+            .register(registry);
+        FunctionCounter.builder("outbox.dead.letters", this.deadLetters, LongAdder::sum)
+            .description("Outbox messages moved to the dead letters")
+            .register(registry);
+    }
+
+    /**
+     * Claims and sends one batch of pending messages of the current shard.
+     *
+     * @return The number of claimable messages found, which is less than the
+     * batch size if the outbox is drained.
+     */
+    private int dispatchBatch() {
+        Date now = new Date();
+        List<Long> ids = this.outboxRepository.findClaimableIds(
+            now,
+            PageRequest.of(0, this.batchSize)
+        );
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        String claimToken = UUID.randomUUID().toString();
+        int claimedCount = this.outboxRepository.claim(
+            ids,
+            claimToken,
+            new Date(now.getTime() + this.leaseMillis),
+            now
+        );
+        if (claimedCount == 0) {
+            // Another instance claimed this batch first
+            return ids.size();
+        }
+
+        Map<OutboxMessage, CompletableFuture<SendResult>> sends = new LinkedHashMap<>();
+        // The claim was just written, so it is read back from the primary
+        List<OutboxMessage> claimedMessages = this.readRouting.onPrimary(() ->
+            this.outboxRepository.findByClaimedBy(claimToken)
+        );
+        for (OutboxMessage message : claimedMessages) {
+            sends.put(message, this.send(message));
+        }
+
+        List<Long> sentIds = new ArrayList<>();
+        long deadline = System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(this.leaseMillis);
+
+        for (Map.Entry<OutboxMessage, CompletableFuture<SendResult>> send : sends.entrySet()) {
+            OutboxMessage message = send.getKey();
+            try {
+                send.getValue().get(
+                    Math.max(0, deadline - System.nanoTime()),
+                    TimeUnit.NANOSECONDS
+                );
+                sentIds.add(message.getId());
+            } catch (ExecutionException exception) {
+                this.handleFailure(message, exception.getCause());
+            } catch (TimeoutException exception) {
+                // Left claimed, the lease expires and it is tried again
+                this.log.warn("Outbox message {} timed out", message.getId());
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        if (!sentIds.isEmpty()) {
+            this.outboxRepository.markSent(sentIds, new Date());
+        }
+
+        return ids.size();
+    }
+
+    /**
+     * Schedules a failed message to be tried again after a backoff, or moves
+     * it to the dead letters if it reached the maximum number of attempts.
+     * Messages the mail provider was unavailable for are only postponed.
+     */
+    private void handleFailure(OutboxMessage message, Throwable cause) {
+        if (cause instanceof EmailerUnavailableException unavailable) {
+            // Jittered so the postponed messages do not all come back at once
+            long delayMillis = Math.max(
+                unavailable.getRetryAfterMillis(),
+                this.baseDelayMillis
+            ) + ThreadLocalRandom.current().nextLong(this.baseDelayMillis + 1);
+            this.outboxRepository.postpone(
+                message.getId(),
+                describe(cause),
+                new Date(System.currentTimeMillis() + delayMillis)
+            );
+            this.postponements.increment();
+            return;
+        }
+
+        int attempts = message.getAttempts() + 1;
+        String error = describe(cause);
+
+        if (attempts >= this.maximumAttempts) {
+            this.transactionTemplate.executeWithoutResult(status -> {
+                this.deadLetterRepository.bury(message.getId(), error, new Date());
+                this.outboxRepository.deleteById(message.getId());
+            });
+            this.deadLetters.increment();
+            this.log.error(
+                "Outbox message {} failed {} times and was moved to the dead "
+                    + "letters: {}",
+                message.getId(),
+                attempts,
+                error
+            );
+            return;
+        }
+
+        long delayMillis = this.backoff(attempts);
+        this.outboxRepository.retryLater(
+            message.getId(),
+            error,
+            new Date(System.currentTimeMillis() + delayMillis)
+        );
+        this.retries.increment();
+    }
+
+    /**
+     * Gets the delay before the next attempt of a message: the base delay
+     * doubled for each failed attempt, capped at the maximum delay, and
+     * randomly reduced by up to half.
+     *
+     * @param attempts The number of failed attempts so far, at least 1.
+     *
+     * @return The delay in milliseconds.
+     */
+    private long backoff(int attempts) {
+        int doublings = Math.min(attempts - 1, 30);
+        long delayMillis = Math.min(
+            this.maximumDelayMillis,
+            this.baseDelayMillis << doublings
+        );
+        long halfDelayMillis = delayMillis / 2;
+        return delayMillis - halfDelayMillis
+            + ThreadLocalRandom.current().nextLong(halfDelayMillis + 1);
+    }
+
+    private static String describe(Throwable cause) {
+        String error = cause == null
+            ? "Unknown error"
+            : cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        return error.length() > DeadLetter.ERROR_LENGTH
+            ? error.substring(0, DeadLetter.ERROR_LENGTH)
+            : error;
+    }
+
+    /**
+     * Hands a message to the email dispatcher.
+     *
+     * @param message The message to be sent.
+     *
+     * @return A future that completes when the email is sent.
+     */
+    private CompletableFuture<SendResult> send(OutboxMessage message) {
+        try {
+            return this.emailDispatcher.dispatch(
+                message.getToAddress(),
+                message.getSubject(),
+                this.payloadCipher.decrypt(message.getPayload()),
+                message.getDurationInMinutes()
+            );
+        } catch (RuntimeException exception) {
+            this.log.error(
+                "Unable to dispatch outbox message {}: {}",
+                message.getId(),
+                exception.getMessage()
+            );
+            return CompletableFuture.failedFuture(exception);
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.danieldigiovanni.email.outbox;
+
+import com.danieldigiovanni.email.id.SnowflakeId;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.Date;
+
+/**
+ * A verification email waiting to be sent.
+ * <p>
+ * Messages are saved in the same transaction as their code, and sent later by
+ * {@link OutboxDispatcher}. The code itself is needed to send the email, so
+ * it is stored encrypted in {@link #payload} and cleared once the email is
+ * sent. Sent messages are deleted along with their code when it is archived
+ * by {@link com.danieldigiovanni.email.code.CodeArchiver}.
+ * <p>
+ * A message that fails to be sent is tried again at {@link #nextAttemptAt},
+ * with an exponential backoff. After too many attempts, it is moved to the
+ * {@link DeadLetter} table.
+ */
+@Entity
+@Table(indexes = {
+    @Index(name = "idx_outbox_claimable", columnList = "status, claimedUntil"),
+    @Index(name = "idx_outbox_code", columnList = "codeId")
+})
+public class OutboxMessage {
+
+    @Id
+    @SnowflakeId
+    private Long id;
+    @NotNull
+    private Long codeId;
+    @NotNull
+    private String toAddress;
+    @NotNull
+    private String subject;
+    @Column(length = 512)
+    private byte[] payload;
+    @NotNull
+    private Integer durationInMinutes;
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private OutboxStatus status;
+    @NotNull
+    private Integer attempts = 0;
+    @NotNull
+    private Date createdAt;
+    private String claimedBy;
+    private Date claimedUntil;
+    private Date nextAttemptAt;
+    @Column(length = DeadLetter.ERROR_LENGTH)
+    private String lastError;
+    private Date sentAt;
+
+    public OutboxMessage() { }
+
+    private OutboxMessage(OutboxMessageBuilder outboxMessageBuilder) {
+        this.codeId = outboxMessageBuilder.codeId;
+        this.toAddress = outboxMessageBuilder.toAddress;
+        this.subject = outboxMessageBuilder.subject;
+        this.payload = outboxMessageBuilder.payload;
+        this.durationInMinutes = outboxMessageBuilder.durationInMinutes;
+        this.createdAt = outboxMessageBuilder.createdAt;
+        this.status = OutboxStatus.PENDING;
+    }
+
+    public static OutboxMessageBuilder builder() {
+        return new OutboxMessageBuilder();
+    }
+
+    public Long getId() {
+        return this.id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getCodeId() {
+        return this.codeId;
+    }
+
+    public void setCodeId(Long codeId) {
+        this.codeId = codeId;
+    }
+
+    public String getToAddress() {
+        return this.toAddress;
+    }
+
+    public void setToAddress(String toAddress) {
+        this.toAddress = toAddress;
+    }
+
+    public String getSubject() {
+        return this.subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public byte[] getPayload() {
+        return this.payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+
+    public Integer getDurationInMinutes() {
+        return this.durationInMinutes;
+    }
+
+    public void setDurationInMinutes(Integer durationInMinutes) {
+        this.durationInMinutes = durationInMinutes;
+    }
+
+    public OutboxStatus getStatus() {
+        return this.status;
+    }
+
+    public void setStatus(OutboxStatus status) {
+        this.status = status;
+    }
+
+    public Integer getAttempts() {
+        return this.attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getCreatedAt() {
+        return this.createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getClaimedBy() {
+        return this.claimedBy;
+    }
+
+    public void setClaimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+    }
+
+    public Date getClaimedUntil() {
+        return this.claimedUntil;
+    }
+
+    public void setClaimedUntil(Date claimedUntil) {
+        this.claimedUntil = claimedUntil;
+    }
+
+    public Date getNextAttemptAt() {
+        return this.nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Date nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getLastError() {
+        return this.lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public Date getSentAt() {
+        return this.sentAt;
+    }
+
+    public void setSentAt(Date sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    public static class OutboxMessageBuilder {
+
+        private Long codeId;
+        private String toAddress;
+        private String subject;
+        private byte[] payload;
+        private Integer durationInMinutes;
+        private Date createdAt;
+
+        public OutboxMessageBuilder codeId(Long codeId) {
+            this.codeId = codeId;
+            return this;
+        }
+
+        public OutboxMessageBuilder toAddress(String toAddress) {
+            this.toAddress = toAddress;
+            return this;
+        }
+
+        public OutboxMessageBuilder subject(String subject) {
+            this.subject = subject;
+            return this;
+        }
+
+        public OutboxMessageBuilder payload(byte[] payload) {
+            this.payload = payload;
+            return this;
+        }
+
+        public OutboxMessageBuilder durationInMinutes(Integer durationInMinutes) {
+            this.durationInMinutes = durationInMinutes;
+            return this;
+        }
+
+        public OutboxMessageBuilder createdAt(Date createdAt) {
+            this.createdAt = createdAt;
+            return this;
+        }
+
+        public OutboxMessage build() {
+            return new OutboxMessage(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.danieldigiovanni.email.outbox;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public interface OutboxRepository extends JpaRepository<OutboxMessage, Long> {
+
+    @Query("""
+        select m.id from OutboxMessage m
+        where m.status = com.danieldigiovanni.email.outbox.OutboxStatus.PENDING
+            and (m.claimedUntil is null or m.claimedUntil < :now)
+            and (m.nextAttemptAt is null or m.nextAttemptAt <= :now)
+        order by m.id
+        """)
+    List<Long> findClaimableIds(@Param("now") Date now, Pageable pageable);
+
+    /**
+     * Claims pending messages for one dispatcher.
+     * <p>
+     * A message can only be claimed if it is not already claimed, or if the
+     * previous claim expired (for example because the instance holding it
+     * stopped). The claim is a single conditional update, so two dispatchers
+     * never claim the same message.
+     *
+     * @param ids          The ids of the messages to claim.
+     * @param claimedBy    A token identifying this claim.
+     * @param claimedUntil The date at which the claim expires.
+     * @param now          The current date.
+     *
+     * @return The number of messages claimed.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+        update OutboxMessage m
+        set m.claimedBy = :claimedBy, m.claimedUntil = :claimedUntil
+        where m.id in :ids
+            and m.status = com.danieldigiovanni.email.outbox.OutboxStatus.PENDING
+            and (m.claimedUntil is null or m.claimedUntil < :now)
+        """)
+    int claim(@Param("ids") Collection<Long> ids, @Param("claimedBy") String claimedBy, @Param("claimedUntil") Date claimedUntil, @Param("now") Date now);
+
+    List<OutboxMessage> findByClaimedBy(String claimedBy);
+
+    @Transactional
+    @Modifying
+    @Query("""
+        update OutboxMessage m
+        set m.status = com.danieldigiovanni.email.outbox.OutboxStatus.SENT,
+            m.sentAt = :sentAt,
+            m.payload = null,
+            m.attempts = m.attempts + 1,
+            m.claimedBy = null,
+            m.claimedUntil = null
+        where m.id in :ids
+        """)
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sentAt") Date sentAt);
+
+    /**
+     * Deletes the messages of codes, sent or not, in the current transaction.
+     *
+     * @param codeIds The ids of the codes.
+     *
+     * @return The number of messages deleted.
+     */
+    @Modifying
+    @Query("delete from OutboxMessage m where m.codeId in :codeIds")
+    int deleteByCodeIdIn(@Param("codeIds") Collection<Long> codeIds);
+
+    /**
+     * Deletes the messages of the codes of a customer, sent or not, in the
+     * current transaction. Must run before the codes are deleted.
+     *
+     * @param customerId The id of the customer.
+     *
+     * @return The number of messages deleted.
+     */
+    @Modifying
+    @Query("""
+        delete from OutboxMessage m
+        where m.codeId in (
+            select c.id from Code c where c.customerId = :customerId
+        )
+        """)
+    int deleteByCustomerId(@Param("customerId") Long customerId);
+
+    /**
+     * Releases the claim of a message that failed to be sent, so that it is
+     * tried again once the backoff has passed.
+     *
+     * @param id            The id of the message.
+     * @param lastError     The error of the failed attempt.
+     * @param nextAttemptAt The date before which the message is not tried
+     *                      again.
+     *
+     * @return The number of messages released.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+        update OutboxMessage m
+        set m.attempts = m.attempts + 1,
+            m.lastError = :lastError,
+            m.nextAttemptAt = :nextAttemptAt,
+            m.claimedBy = null,
+            m.claimedUntil = null
+        where m.id = :id
+        """)
+    int retryLater(@Param("id") Long id, @Param("lastError") String lastError, @Param("nextAttemptAt") Date nextAttemptAt);
+
+    /**
+     * Releases the claim of a message that was not sent because the mail
+     * provider was unavailable, without counting it as a failed attempt.
+     *
+     * @param id            The id of the message.
+     * @param lastError     The reason the message was not sent.
+     * @param nextAttemptAt The date before which the message is not tried
+     *                      again.
+     *
+     * @return The number of messages released.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+        update OutboxMessage m
+        set m.lastError = :lastError,
+            m.nextAttemptAt = :nextAttemptAt,
+            m.claimedBy = null,
+            m.claimedUntil = null
+        where m.id = :id
+        """)
+    int postpone(@Param("id") Long id, @Param("lastError") String lastError, @Param("nextAttemptAt") Date nextAttemptAt);
+
+}
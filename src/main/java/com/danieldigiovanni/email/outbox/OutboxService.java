@@ -0,0 +1,44 @@
+package com.danieldigiovanni.email.outbox;
+
+import com.danieldigiovanni.email.code.Code;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+@Service
+public class OutboxService {
+
+    private final OutboxRepository outboxRepository;
+    private final PayloadCipher payloadCipher;
+
+    @Autowired
+    public OutboxService(OutboxRepository outboxRepository, PayloadCipher payloadCipher) {
+        this.outboxRepository = outboxRepository;
+        this.payloadCipher = payloadCipher;
+    }
+
+    /**
+     * Adds the verification email of a code to the outbox.
+     * <p>
+     * This must be called in the same transaction that saves the code, so
+     * that either both the code and its email are saved, or neither is.
+     *
+     * @param code       The saved code.
+     * @param subject    The subject of the email.
+     * @param codeString The code in plain-text, to be included in the email.
+     *
+     * @return The saved outbox message.
+     */
+    public OutboxMessage enqueue(Code code, String subject, String codeString) {
+        OutboxMessage message = OutboxMessage.builder()
+            .codeId(code.getId())
+            .toAddress(code.getEmail())
+            .subject(subject)
+            .payload(this.payloadCipher.encrypt(codeString))
+            .durationInMinutes(code.getMaximumDurationInMinutes())
+            .createdAt(code.getCreatedAt())
+            .build();
+
+        return this.outboxRepository.save(message);
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.danieldigiovanni.email.outbox;
+
+/**
+ * The delivery state of an {@link OutboxMessage}.
+ */
+public enum OutboxStatus {
+
+    /**
+     * The email has not been sent yet.
+     */
+    PENDING,
+    /**
+     * The email was accepted by the emailer.
+     */
+    SENT
+
+}
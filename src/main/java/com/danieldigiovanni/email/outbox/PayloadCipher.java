@@ -0,0 +1,116 @@
+package com.danieldigiovanni.email.outbox;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * Encrypts the codes stored in the outbox with AES-GCM.
+ * <p>
+ * The encrypted payload layout is:
+ * <pre>
+ * | IV (12 bytes) | ciphertext and authentication tag |
+ * </pre>
+ */
+public class PayloadCipher {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+
+    private final SecretKeySpec key;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    /**
+     * Constructs a PayloadCipher with the given key.
+     *
+     * @param key The AES key. Must be 16, 24, or 32 bytes.
+     *
+     * @throws IllegalArgumentException If the key has an invalid length.
+     */
+    public PayloadCipher(byte[] key) {
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException(
+                "Outbox secret key must be 16, 24, or 32 bytes"
+            );
+        }
+        this.key = new SecretKeySpec(key, "AES");
+    }
+
+    /**
+     * Encrypts a plain-text value.
+     *
+     * @param plainText The value to be encrypted.
+     *
+     * @return The encrypted payload.
+     */
+    public byte[] encrypt(String plainText) {
+        byte[] iv = new byte[IV_LENGTH];
+        this.secureRandom.nextBytes(iv);
+
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(
+                Cipher.ENCRYPT_MODE,
+                this.key,
+                new GCMParameterSpec(TAG_LENGTH_BITS, iv)
+            );
+            byte[] cipherText = cipher.doFinal(
+                plainText.getBytes(StandardCharsets.UTF_8)
+            );
+
+            byte[] payload = new byte[IV_LENGTH + cipherText.length];
+            System.arraycopy(iv, 0, payload, 0, IV_LENGTH);
+            System.arraycopy(
+                cipherText,
+                0,
+                payload,
+                IV_LENGTH,
+                cipherText.length
+            );
+            return payload;
+        } catch (GeneralSecurityException exception) {
+            throw new IllegalStateException(
+                "Unable to encrypt outbox payload",
+                exception
+            );
+        }
+    }
+
+    /**
+     * Decrypts a payload produced by {@link #encrypt(String)}.
+     *
+     * @param payload The encrypted payload.
+     *
+     * @return The plain-text value.
+     *
+     * @throws IllegalStateException If the payload cannot be decrypted (for
+     *                               example, if it was encrypted with another
+     *                               key).
+     */
+    public String decrypt(byte[] payload) {
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(
+                Cipher.DECRYPT_MODE,
+                this.key,
+                new GCMParameterSpec(TAG_LENGTH_BITS, payload, 0, IV_LENGTH)
+            );
+            byte[] plainText = cipher.doFinal(
+                payload,
+                IV_LENGTH,
+                payload.length - IV_LENGTH
+            );
+            return new String(plainText, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException exception) {
+            throw new IllegalStateException(
+                "Unable to decrypt outbox payload",
+                exception
+            );
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.danieldigiovanni.email.outbox.dto;
+
+import com.danieldigiovanni.email.outbox.DeadLetter;
+
+import java.util.Date;
+
+/**
+ * Format of a dead letter in the response body for listing dead letters. The
+ * payload (the code) is never included.
+ */
+public class DeadLetterResponse {
+
+    private Long id;
+    private Long codeId;
+    private String toAddress;
+    private String subject;
+    private Integer attempts;
+    private String lastError;
+    private Date createdAt;
+    private Date deadAt;
+
+    public DeadLetterResponse() { }
+
+    public DeadLetterResponse(DeadLetter deadLetter) {
+        this.id = deadLetter.getId();
+        this.codeId = deadLetter.getCodeId();
+        this.toAddress = deadLetter.getToAddress();
+        this.subject = deadLetter.getSubject();
+        this.attempts = deadLetter.getAttempts();
+        this.lastError = deadLetter.getLastError();
+        this.createdAt = deadLetter.getCreatedAt();
+        this.deadAt = deadLetter.getDeadAt();
+    }
+
+    public Long getId() {
+        return this.id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getCodeId() {
+        return this.codeId;
+    }
+
+    public void setCodeId(Long codeId) {
+        this.codeId = codeId;
+    }
+
+    public String getToAddress() {
+        return this.toAddress;
+    }
+
+    public void setToAddress(String toAddress) {
+        this.toAddress = toAddress;
+    }
+
+    public String getSubject() {
+        return this.subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public Integer getAttempts() {
+        return this.attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getLastError() {
+        return this.lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public Date getCreatedAt() {
+        return this.createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Date getDeadAt() {
+        return this.deadAt;
+    }
+
+    public void setDeadAt(Date deadAt) {
+        this.deadAt = deadAt;
+    }
+
+}
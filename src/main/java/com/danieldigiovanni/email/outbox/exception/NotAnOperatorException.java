@@ -0,0 +1,19 @@
+package com.danieldigiovanni.email.outbox.exception;
+
+/**
+ * Exception representing the case where a customer who is not an operator
+ * tried to manage the outbox.
+ */
+public class NotAnOperatorException extends RuntimeException {
+
+    /**
+     * Constructs an empty NotAnOperatorException.
+     * <p>
+     * The exception handler gives the same response to every customer who is
+     * not an operator, so no message is needed.
+     */
+    public NotAnOperatorException() {
+        super();
+    }
+
+}
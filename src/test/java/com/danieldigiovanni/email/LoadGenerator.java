@@ -0,0 +1,189 @@
+package com.danieldigiovanni.email;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Puts a running instance of the application under load, to compare
+ * configurations such as the {@code virtual-threads} profile.
+ * <p>
+ * This is not a test, it is run with the {@link #main(String[])} method (for
+ * example from the IDE, after {@code mvn test-compile}) against an instance
+ * started separately. Each client registers a customer, then alternates
+ * between getting the customer and sending a code until the duration is
+ * over. Logging in is left out of the loop, since BCrypt makes it bound by
+ * the CPU rather than by waiting. The throughput and latency percentiles of
+ * the looped requests are logged at the end.
+ * <p>
+ * Arguments: the base URL (default {@code http://localhost:8082}), the number
+ * of concurrent clients (default 200), and the duration in seconds (default
+ * 30).
+ */
+public class LoadGenerator {
+
+    private static final Pattern TOKEN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final String baseUrl;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(10))
+        .build();
+    private final LongAdder errors = new LongAdder();
+    private final List<Long> latencies = new ArrayList<>();
+    private final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+
+    public LoadGenerator(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8082";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        new LoadGenerator(baseUrl).run(clients, seconds);
+    }
+
+    public void run(int clients, int seconds) throws InterruptedException {
+        long endNanos = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        CountDownLatch done = new CountDownLatch(clients);
+
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    List<Long> clientLatencies = this.runClient(endNanos);
+                    synchronized (this.latencies) {
+                        this.latencies.addAll(clientLatencies);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+
+        long[] all = this.latencies.stream()
+            .mapToLong(Long::longValue)
+            .sorted()
+            .toArray();
+
+        this.log.info(
+            "clients={} seconds={} requests={} errors={} throughput={}/s "
+                + "p50={}ms p99={}ms max={}ms",
+            clients,
+            seconds,
+            all.length,
+            this.errors.sum(),
+            LoadGenerator.format(all.length / (double) seconds),
+            LoadGenerator.format(LoadGenerator.percentile(all, 0.50)),
+            LoadGenerator.format(LoadGenerator.percentile(all, 0.99)),
+            LoadGenerator.format(all.length == 0 ? 0 : all[all.length - 1] / 1e6)
+        );
+    }
+
+    /**
+     * Loops over the requests of one client until the end.
+     *
+     * @return The latency of each request made, in nanoseconds.
+     */
+    private List<Long> runClient(long endNanos) {
+        List<Long> clientLatencies = new ArrayList<>();
+        String email = "load-" + UUID.randomUUID() + "@email.com";
+        String token;
+        try {
+            token = this.extractToken(this.post(
+                "/register",
+                "{\"name\":\"Load\",\"email\":\"" + email + "\","
+                    + "\"password\":\"Password123\",\"confirmPassword\":\"Password123\"}",
+                null
+            ));
+        } catch (Exception exception) {
+            this.errors.increment();
+            return clientLatencies;
+        }
+
+        while (System.nanoTime() < endNanos) {
+            long start = System.nanoTime();
+            try {
+                if (clientLatencies.size() % 2 == 0) {
+                    this.get("/customer", token);
+                } else {
+                    this.post(
+                        "/code/send",
+                        "{\"email\":\"to-" + UUID.randomUUID() + "@email.com\"}",
+                        token
+                    );
+                }
+            } catch (Exception exception) {
+                this.errors.increment();
+            }
+            clientLatencies.add(System.nanoTime() - start);
+        }
+        return clientLatencies;
+    }
+
+    private String get(String path, String token) throws Exception {
+        return this.send(
+            HttpRequest.newBuilder(URI.create(this.baseUrl + path))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+        );
+    }
+
+    private String post(String path, String body, String token) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(this.baseUrl + path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return this.send(request);
+    }
+
+    private String send(HttpRequest.Builder request) throws Exception {
+        HttpResponse<String> response = this.httpClient.send(
+            request.timeout(Duration.ofSeconds(30)).build(),
+            HttpResponse.BodyHandlers.ofString()
+        );
+        if (response.statusCode() >= 400) {
+            throw new IllegalStateException("Status " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    private String extractToken(String body) {
+        Matcher matcher = TOKEN.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalStateException("No token in " + body);
+        }
+        return matcher.group(1);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static String format(double value) {
+        return String.format("%.1f", value);
+    }
+
+}
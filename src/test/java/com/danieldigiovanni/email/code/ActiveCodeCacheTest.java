@@ -0,0 +1,142 @@
+package com.danieldigiovanni.email.code;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ActiveCodeCacheTest {
+
+    private final ActiveCodeCache activeCodeCache = new ActiveCodeCache(2);
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    public void bindMetrics() {
+        this.activeCodeCache.bindTo(this.registry);
+    }
+
+    @Test
+    public void testGet_HitsAndMisses() {
+        Code code = this.createCode("customer1@email.com");
+        this.activeCodeCache.put(code);
+
+        Optional<Code> hit = this.activeCodeCache.get("customer1@email.com");
+        Optional<Code> miss = this.activeCodeCache.get("customer2@email.com");
+
+        assertSame(code, hit.orElseThrow());
+        assertTrue(miss.isEmpty());
+        assertEquals(1, this.registry.get("code.cache.hits").functionCounter().count());
+        assertEquals(1, this.registry.get("code.cache.misses").functionCounter().count());
+    }
+
+    @Test
+    public void testGet_ExpiredCode_EvictedAndMissed() {
+        Code code = this.createCode("customer1@email.com");
+        this.activeCodeCache.put(code);
+        code.setExpiresAt(new Date(System.currentTimeMillis() - 1000));
+
+        assertTrue(this.activeCodeCache.get("customer1@email.com").isEmpty());
+        assertEquals(0, this.registry.get("code.cache.hits").functionCounter().count());
+        assertEquals(1, this.registry.get("code.cache.misses").functionCounter().count());
+        assertEquals(1, this.registry.get("code.cache.evictions").functionCounter().count());
+        assertEquals(0, this.registry.get("code.cache.size").gauge().value());
+    }
+
+    @Test
+    public void testEvictExpired_OnlyExpiredCodesEvicted() {
+        Code expiredCode = this.createCode("customer1@email.com");
+        Code activeCode = this.createCode("customer2@email.com");
+        this.activeCodeCache.put(expiredCode);
+        this.activeCodeCache.put(activeCode);
+        expiredCode.setExpiresAt(new Date(System.currentTimeMillis() - 1000));
+
+        this.activeCodeCache.evictExpired();
+
+        assertEquals(1, this.registry.get("code.cache.size").gauge().value());
+        assertEquals(1, this.registry.get("code.cache.evictions").functionCounter().count());
+        assertSame(activeCode, this.activeCodeCache.get("customer2@email.com").orElseThrow());
+    }
+
+    @Test
+    public void testPut_Full_CodeRejected() {
+        this.activeCodeCache.put(this.createCode("customer1@email.com"));
+        this.activeCodeCache.put(this.createCode("customer2@email.com"));
+
+        this.activeCodeCache.put(this.createCode("customer3@email.com"));
+
+        assertTrue(this.activeCodeCache.get("customer3@email.com").isEmpty());
+        assertEquals(2, this.registry.get("code.cache.size").gauge().value());
+        assertEquals(1, this.registry.get("code.cache.rejections").functionCounter().count());
+    }
+
+    @Test
+    public void testPut_FullWithExpiredCode_ExpiredCodeEvicted() {
+        Code expiredCode = this.createCode("customer1@email.com");
+        this.activeCodeCache.put(expiredCode);
+        this.activeCodeCache.put(this.createCode("customer2@email.com"));
+        expiredCode.setExpiresAt(new Date(System.currentTimeMillis() - 1000));
+
+        Code newCode = this.createCode("customer3@email.com");
+        this.activeCodeCache.put(newCode);
+
+        assertSame(newCode, this.activeCodeCache.get("customer3@email.com").orElseThrow());
+        assertEquals(2, this.registry.get("code.cache.size").gauge().value());
+        assertEquals(1, this.registry.get("code.cache.evictions").functionCounter().count());
+        assertEquals(0, this.registry.get("code.cache.rejections").functionCounter().count());
+    }
+
+    @Test
+    public void testPut_Full_CachedEmailReplaced() {
+        this.activeCodeCache.put(this.createCode("customer1@email.com"));
+        this.activeCodeCache.put(this.createCode("customer2@email.com"));
+
+        Code updatedCode = this.createCode("customer2@email.com");
+        this.activeCodeCache.put(updatedCode);
+
+        assertSame(updatedCode, this.activeCodeCache.get("customer2@email.com").orElseThrow());
+        assertEquals(0, this.registry.get("code.cache.rejections").functionCounter().count());
+    }
+
+    @Test
+    public void testPut_FulfilledCode_Invalidated() {
+        Code code = this.createCode("customer1@email.com");
+        this.activeCodeCache.put(code);
+
+        Code fulfilledCode = this.createCode("customer1@email.com");
+        fulfilledCode.setStatus(CodeStatus.FULFILLED);
+        fulfilledCode.setFulfilledAt(new Date());
+        this.activeCodeCache.put(fulfilledCode);
+
+        assertTrue(this.activeCodeCache.get("customer1@email.com").isEmpty());
+        assertEquals(0, this.registry.get("code.cache.size").gauge().value());
+    }
+
+    @Test
+    public void testRemove_Invalidated() {
+        this.activeCodeCache.put(this.createCode("customer1@email.com"));
+
+        this.activeCodeCache.remove("customer1@email.com");
+
+        assertTrue(this.activeCodeCache.get("customer1@email.com").isEmpty());
+        assertEquals(0, this.registry.get("code.cache.size").gauge().value());
+    }
+
+    private Code createCode(String email) {
+        return Code.builder()
+            .customerId(1L)
+            .email(email)
+            .digest(new byte[32])
+            .createdAt(new Date())
+            .maximumAttempts(5)
+            .maximumDurationInMinutes(10)
+            .build();
+    }
+
+}
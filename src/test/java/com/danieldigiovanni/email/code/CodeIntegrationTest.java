@@ -8,6 +8,15 @@ import com.danieldigiovanni.email.code.dto.SendCodeRequest;
 import com.danieldigiovanni.email.code.dto.CodeResponse;
 import com.danieldigiovanni.email.code.dto.SendCustomCodeRequest;
 import com.danieldigiovanni.email.code.dto.VerifyCodeRequest;
+import com.danieldigiovanni.email.customer.Customer;
+import com.danieldigiovanni.email.customer.CustomerRepository;
+import com.danieldigiovanni.email.datasource.ShardRouting;
+import com.danieldigiovanni.email.emailer.Emailer;
+import com.danieldigiovanni.email.outbox.OutboxMessage;
+import com.danieldigiovanni.email.outbox.OutboxRepository;
+import com.danieldigiovanni.email.outbox.OutboxStatus;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
@@ -19,11 +28,26 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -35,13 +59,39 @@ public class CodeIntegrationTest {
     @SpyBean
     private CodeUtils codeUtils;
 
+    @SpyBean
+    private Emailer emailer;
+
     private final MockMvc mockMvc;
+    private final CodeRepository codeRepository;
+    private final ArchivedCodeRepository archivedCodeRepository;
+    private final CustomerRepository customerRepository;
+    private final CodeArchiver codeArchiver;
+    private final ShardRouting shardRouting;
+    private final ActiveCodeCache activeCodeCache;
+    private final OutboxRepository outboxRepository;
 
     private String token;
 
     @Autowired
-    public CodeIntegrationTest(MockMvc mockMvc) {
+    public CodeIntegrationTest(
+        MockMvc mockMvc,
+        CodeRepository codeRepository,
+        ArchivedCodeRepository archivedCodeRepository,
+        CustomerRepository customerRepository,
+        CodeArchiver codeArchiver,
+        ShardRouting shardRouting,
+        ActiveCodeCache activeCodeCache,
+        OutboxRepository outboxRepository
+    ) {
         this.mockMvc = mockMvc;
+        this.codeRepository = codeRepository;
+        this.archivedCodeRepository = archivedCodeRepository;
+        this.customerRepository = customerRepository;
+        this.codeArchiver = codeArchiver;
+        this.shardRouting = shardRouting;
+        this.activeCodeCache = activeCodeCache;
+        this.outboxRepository = outboxRepository;
     }
 
     @BeforeAll
@@ -75,7 +125,7 @@ public class CodeIntegrationTest {
 
     @Test
     public void testGenerateAndVerifyCode_HappyPath_OneAttempt() throws Exception {
-        doReturn("123").when(codeUtils).generateRandomCode(anyInt());
+        doReturn("123").when(codeUtils).generateRandomCode(anyInt(), any());
 
         SendCodeRequest sendCodeRequest = new SendCodeRequest();
         sendCodeRequest.setEmail("test1@email.com");
@@ -110,6 +160,8 @@ public class CodeIntegrationTest {
             )
         );
 
+        assertTrue(this.activeCodeCache.get("test1@email.com").isPresent());
+
         VerifyCodeRequest verifyCodeRequest = new VerifyCodeRequest();
         verifyCodeRequest.setEmail("test1@email.com");
         verifyCodeRequest.setCode("123");
@@ -123,11 +175,14 @@ public class CodeIntegrationTest {
                     .content(TestUtils.generateJson(verifyCodeRequest))
             )
             .andExpect(status().isNoContent());
+
+        // The fulfilled code is no longer cached
+        assertTrue(this.activeCodeCache.get("test1@email.com").isEmpty());
     }
 
     @Test
     public void testGenerateAndVerifyCode_HappyPath_ThreeAttempt() throws Exception {
-        doReturn("123").when(codeUtils).generateRandomCode(anyInt());
+        doReturn("123").when(codeUtils).generateRandomCode(anyInt(), any());
 
         SendCodeRequest sendCodeRequest = new SendCodeRequest();
         sendCodeRequest.setEmail("test2@email.com");
@@ -191,7 +246,7 @@ public class CodeIntegrationTest {
 
     @Test
     public void testGenerateAndVerifyCode_TooManyAttempts() throws Exception {
-        doReturn("123").when(codeUtils).generateRandomCode(anyInt());
+        doReturn("123").when(codeUtils).generateRandomCode(anyInt(), any());
 
         SendCodeRequest sendCodeRequest = new SendCodeRequest();
         sendCodeRequest.setEmail("test3@email.com");
@@ -250,11 +305,101 @@ public class CodeIntegrationTest {
                     .content(TestUtils.generateJson(verifyCodeRequest))
             )
             .andExpect(status().isNotFound());
+
+        // The exhausted code, whose slot was released, is no longer cached
+        assertTrue(this.activeCodeCache.get("test3@email.com").isEmpty());
+    }
+
+    @Test
+    public void testVerifyCode_ConcurrentIncorrectAttempts() throws Exception {
+        SendCodeRequest sendCodeRequest = new SendCodeRequest();
+        sendCodeRequest.setEmail("test15@email.com");
+        sendCodeRequest.setMaximumAttempts(5);
+
+        String path = "/code/send";
+
+        this.mockMvc.perform(
+                post(path)
+                    .with(new AddServletPathRequestPostProcessor(path))
+                    .header("Authorization", "Bearer " + this.token)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtils.generateJson(sendCodeRequest))
+            )
+            .andExpect(status().isOk());
+
+        VerifyCodeRequest verifyCodeRequest = new VerifyCodeRequest();
+        verifyCodeRequest.setEmail("test15@email.com");
+        verifyCodeRequest.setCode("not the code");
+
+        String verifyPath = "/code/verify";
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        List<Future<Integer>> statuses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            statuses.add(executor.submit(() -> this.mockMvc.perform(
+                    post(verifyPath)
+                        .with(new AddServletPathRequestPostProcessor(verifyPath))
+                        .header("Authorization", "Bearer " + this.token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(TestUtils.generateJson(verifyCodeRequest))
+                )
+                .andReturn()
+                .getResponse()
+                .getStatus()
+            ));
+        }
+        executor.shutdown();
+
+        int badRequests = 0;
+        for (Future<Integer> status : statuses) {
+            if (status.get() == 400) {
+                badRequests++;
+            } else {
+                assertEquals(404, status.get());
+            }
+        }
+
+        // Every attempt is counted exactly once, and none after exhaustion
+        assertEquals(5, badRequests);
+    }
+
+    @Test
+    public void testGenerateCode_ConcurrentSends() throws Exception {
+        SendCodeRequest sendCodeRequest = new SendCodeRequest();
+        sendCodeRequest.setEmail("test16@email.com");
+
+        String path = "/code/send";
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        List<Future<Integer>> statuses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            statuses.add(executor.submit(() -> this.mockMvc.perform(
+                    post(path)
+                        .with(new AddServletPathRequestPostProcessor(path))
+                        .header("Authorization", "Bearer " + this.token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(TestUtils.generateJson(sendCodeRequest))
+                )
+                .andReturn()
+                .getResponse()
+                .getStatus()
+            ));
+        }
+        executor.shutdown();
+
+        int successes = 0;
+        for (Future<Integer> status : statuses) {
+            if (status.get() == 200) {
+                successes++;
+            } else {
+                assertEquals(409, status.get());
+            }
+        }
+
+        assertEquals(1, successes);
     }
 
     @Test
     public void testGenerateCode_CodeAlreadyExists() throws Exception {
-        doReturn("123").when(codeUtils).generateRandomCode(anyInt());
+        doReturn("123").when(codeUtils).generateRandomCode(anyInt(), any());
 
         SendCodeRequest sendCodeRequest = new SendCodeRequest();
         sendCodeRequest.setEmail("test4@email.com");
@@ -286,7 +431,7 @@ public class CodeIntegrationTest {
 
     @Test
     public void testGenerateAndVerifyCode_NotYourCode() throws Exception {
-        doReturn("123").when(codeUtils).generateRandomCode(anyInt());
+        doReturn("123").when(codeUtils).generateRandomCode(anyInt(), any());
 
         SendCodeRequest sendCodeRequest = new SendCodeRequest();
         sendCodeRequest.setEmail("test5@email.com");
@@ -509,4 +654,187 @@ public class CodeIntegrationTest {
             .andReturn();
     }
 
+    @Test
+    public void testGenerateCode_EmailSentFromOutbox() throws Exception {
+        doReturn("123").when(codeUtils).generateRandomCode(anyInt(), any());
+
+        SendCodeRequest sendCodeRequest = new SendCodeRequest();
+        sendCodeRequest.setEmail("test10@email.com");
+        sendCodeRequest.setLength(3);
+        sendCodeRequest.setMaximumAttempts(5);
+        sendCodeRequest.setMaximumDurationInMinutes(10);
+
+        String path = "/code/send";
+
+        this.mockMvc.perform(
+                post(path)
+                    .with(new AddServletPathRequestPostProcessor(path))
+                    .header("Authorization", "Bearer " + this.token)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtils.generateJson(sendCodeRequest))
+            )
+            .andExpect(status().isOk());
+
+        verify(this.emailer, timeout(5000)).sendEmail(
+            eq("test10@email.com"),
+            anyString(),
+            eq("123"),
+            eq(10)
+        );
+    }
+
+    @Test
+    public void testGenerateCodeBatch_MixedResults() throws Exception {
+        String requestBody = String.join(
+            "\n",
+            "{\"email\": \"test11@email.com\", \"length\": 4}",
+            "{\"email\": \"not an email\"}",
+            "",
+            "{\"email\": \"test11@email.com\"}",
+            "{\"email\": \"test12@email.com\", \"maximumDurationInMinutes\": 3}"
+        );
+
+        String path = "/code/send/batch";
+
+        MvcResult response = this.mockMvc.perform(
+                post(path)
+                    .with(new AddServletPathRequestPostProcessor(path))
+                    .header("Authorization", "Bearer " + this.token)
+                    .contentType("application/x-ndjson")
+                    .content(requestBody)
+            )
+            .andExpect(status().isOk())
+            .andReturn();
+
+        String[] lines =
+            response.getResponse().getContentAsString().split("\n");
+        assertEquals(4, lines.length);
+
+        JsonNode first = new ObjectMapper().readTree(lines[0]);
+        assertEquals(1, first.get("line").asInt());
+        assertEquals(5, first.get("code").get("remainingAttempts").asInt());
+
+        JsonNode second = new ObjectMapper().readTree(lines[1]);
+        assertEquals(2, second.get("line").asInt());
+        assertEquals("Validation Error", second.get("error").get("error").asText());
+
+        JsonNode third = new ObjectMapper().readTree(lines[2]);
+        assertEquals(4, third.get("line").asInt());
+        assertEquals("Already Exists Error", third.get("error").get("error").asText());
+
+        JsonNode fourth = new ObjectMapper().readTree(lines[3]);
+        assertEquals(5, fourth.get("line").asInt());
+        assertTrue(fourth.has("code"));
+    }
+
+    @Test
+    public void testArchiveExpiredCodes() {
+        Customer customer = this.customerRepository
+            .findByEmail("customer3.1@email.com")
+            .orElseThrow();
+
+        Code oldCode = this.codeRepository.save(
+            Code.builder()
+                .customerId(customer.getId())
+                .email("test13@email.com")
+                .digest(new byte[0])
+                .createdAt(new Date(
+                    System.currentTimeMillis() - TimeUnit.DAYS.toMillis(60)
+                ))
+                .maximumAttempts(5)
+                .maximumDurationInMinutes(10)
+                .build()
+        );
+        Code recentCode = this.codeRepository.save(
+            Code.builder()
+                .customerId(customer.getId())
+                .email("test14@email.com")
+                .digest(new byte[0])
+                .createdAt(new Date())
+                .maximumAttempts(5)
+                .maximumDurationInMinutes(10)
+                .build()
+        );
+        OutboxMessage oldMessage = this.saveSentMessage(oldCode);
+        OutboxMessage recentMessage = this.saveSentMessage(recentCode);
+
+        this.codeArchiver.archiveExpiredCodes();
+
+        assertFalse(this.codeRepository.existsById(oldCode.getId()));
+        assertFalse(this.outboxRepository.existsById(oldMessage.getId()));
+        assertTrue(this.outboxRepository.existsById(recentMessage.getId()));
+        ArchivedCode archivedCode = this.archivedCodeRepository
+            .findById(oldCode.getId())
+            .orElseThrow();
+        assertEquals("test13@email.com", archivedCode.getEmail());
+        assertEquals(customer.getId(), archivedCode.getCustomerId());
+
+        assertTrue(this.codeRepository.existsById(recentCode.getId()));
+        assertFalse(this.archivedCodeRepository.existsById(recentCode.getId()));
+    }
+
+    @Test
+    public void testGenerateAndVerifyCode_Sharded() throws Exception {
+        doReturn("123").when(codeUtils).generateRandomCode(anyInt(), any());
+
+        Set<Integer> usedShards = new HashSet<>();
+        for (int i = 1; i <= 8; i++) {
+            String email = "sharded" + i + "@email.com";
+            SendCodeRequest sendCodeRequest = new SendCodeRequest();
+            sendCodeRequest.setEmail(email);
+            sendCodeRequest.setLength(3);
+            sendCodeRequest.setMaximumAttempts(5);
+            sendCodeRequest.setMaximumDurationInMinutes(10);
+
+            String path = "/code/send";
+            this.mockMvc.perform(
+                    post(path)
+                        .with(new AddServletPathRequestPostProcessor(path))
+                        .header("Authorization", "Bearer " + this.token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(TestUtils.generateJson(sendCodeRequest))
+                )
+                .andExpect(status().isOk());
+
+            // The code is only stored on the shard of its email
+            int expectedShard = this.shardRouting.shardOf(email);
+            usedShards.add(expectedShard);
+            for (int shard = 0; shard < this.shardRouting.getShardCount(); shard++) {
+                boolean found = this.shardRouting.onShard(shard, () ->
+                    this.codeRepository.findActiveCodeByEmail(email).isPresent()
+                );
+                assertEquals(shard == expectedShard, found);
+            }
+
+            VerifyCodeRequest verifyCodeRequest = new VerifyCodeRequest();
+            verifyCodeRequest.setEmail(email);
+            verifyCodeRequest.setCode("123");
+
+            String verifyPath = "/code/verify";
+            this.mockMvc.perform(
+                    post(verifyPath)
+                        .with(new AddServletPathRequestPostProcessor(verifyPath))
+                        .header("Authorization", "Bearer " + this.token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(TestUtils.generateJson(verifyCodeRequest))
+                )
+                .andExpect(status().isNoContent());
+        }
+
+        assertTrue(usedShards.size() > 1);
+    }
+
+    private OutboxMessage saveSentMessage(Code code) {
+        OutboxMessage message = OutboxMessage.builder()
+            .codeId(code.getId())
+            .toAddress(code.getEmail())
+            .subject("Verification Code")
+            .durationInMinutes(10)
+            .createdAt(code.getCreatedAt())
+            .build();
+        message.setStatus(OutboxStatus.SENT);
+        message.setSentAt(code.getCreatedAt());
+        return this.outboxRepository.save(message);
+    }
+
 }
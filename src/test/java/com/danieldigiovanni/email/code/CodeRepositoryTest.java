@@ -0,0 +1,150 @@
+package com.danieldigiovanni.email.code;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+    + "com.danieldigiovanni.email.code.CodeRepositoryTest$RecordingStatementInspector")
+public class CodeRepositoryTest {
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+    private static final Pattern UPDATE =
+        Pattern.compile("update (\\w+) set (.+) where (.+)", Pattern.DOTALL);
+
+    private final CodeRepository codeRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public CodeRepositoryTest(CodeRepository codeRepository, TransactionTemplate transactionTemplate, DataSource dataSource) {
+        this.codeRepository = codeRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Test
+    public void testIncrementIncorrectAttempts_LastAllowedAttempt() {
+        Code code = this.codeRepository.save(this.createCode("attempts1@email.com"));
+
+        this.codeRepository.incrementIncorrectAttemptsIfActive(code.getId(), new Date());
+        this.codeRepository.incrementIncorrectAttemptsIfActive(code.getId(), new Date());
+        this.assertAttempts(code.getId(), 2, CodeStatus.ACTIVE);
+
+        this.codeRepository.incrementIncorrectAttemptsIfActive(code.getId(), new Date());
+        this.assertAttempts(code.getId(), 3, CodeStatus.EXHAUSTED);
+
+        assertEquals(0, this.codeRepository.incrementIncorrectAttemptsIfActive(code.getId(), new Date()));
+        this.assertAttempts(code.getId(), 3, CodeStatus.EXHAUSTED);
+    }
+
+    /**
+     * Runs the increment as MySQL does, where each assignment of an update
+     * sees the values assigned before it. H2 evaluates all the assignments
+     * against the previous row, so the statement generated for H2 is replayed
+     * one assignment at a time.
+     */
+    @Test
+    public void testIncrementIncorrectAttempts_LastAllowedAttempt_LeftToRightAssignments() {
+        Code code = this.codeRepository.save(this.createCode("attempts2@email.com"));
+
+        this.incrementLeftToRight(code.getId());
+        this.incrementLeftToRight(code.getId());
+        this.assertAttempts(code.getId(), 2, CodeStatus.ACTIVE);
+
+        this.incrementLeftToRight(code.getId());
+        this.assertAttempts(code.getId(), 3, CodeStatus.EXHAUSTED);
+    }
+
+    private void incrementLeftToRight(Long id) {
+        // Records the statement, without keeping its effect
+        STATEMENTS.clear();
+        this.transactionTemplate.executeWithoutResult(status -> {
+            assertEquals(1, this.codeRepository.incrementIncorrectAttemptsIfActive(id, new Date()));
+            status.setRollbackOnly();
+        });
+        String update = STATEMENTS.stream()
+            .filter(statement -> statement.startsWith("update code "))
+            .findFirst()
+            .orElseThrow();
+
+        Matcher matcher = UPDATE.matcher(update);
+        assertTrue(matcher.matches(), update);
+        this.transactionTemplate.executeWithoutResult(status -> {
+            for (String assignment : CodeRepositoryTest.splitAssignments(matcher.group(2))) {
+                this.jdbcTemplate.update(
+                    "update " + matcher.group(1) + " set " + assignment + " where id = ?",
+                    id
+                );
+            }
+        });
+    }
+
+    private void assertAttempts(Long id, int incorrectAttempts, CodeStatus status) {
+        Code code = this.codeRepository.findById(id).orElseThrow();
+        assertEquals(incorrectAttempts, code.getIncorrectAttempts());
+        assertEquals(status, code.getStatus());
+    }
+
+    private Code createCode(String email) {
+        return Code.builder()
+            .customerId(1L)
+            .email(email)
+            .digest(new byte[HmacSha256CodeHasher.DIGEST_LENGTH])
+            .createdAt(new Date())
+            .maximumAttempts(3)
+            .maximumDurationInMinutes(10)
+            .build();
+    }
+
+    /**
+     * Splits the assignments of an update on the commas outside of
+     * parentheses.
+     */
+    private static List<String> splitAssignments(String assignments) {
+        List<String> split = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < assignments.length(); i++) {
+            char c = assignments.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                split.add(assignments.substring(start, i));
+                start = i + 1;
+            }
+        }
+        split.add(assignments.substring(start));
+        return split;
+    }
+
+    /**
+     * Records the SQL statements run by Hibernate.
+     */
+    public static class RecordingStatementInspector implements StatementInspector {
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.danieldigiovanni.email.code;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CodeUtilsTest {
+
+    private final PasswordEncoder legacyCodeHasher = new BCryptPasswordEncoder();
+    private final CodeUtils codeUtils = new CodeUtils(
+        new RandomCodeGenerator(),
+        new HmacSha256CodeHasher(CodeUtilsTest.pepper()),
+        this.legacyCodeHasher
+    );
+
+    @Test
+    public void testMatches_Digest() {
+        Code code = this.createCode();
+        code.setDigest(this.codeUtils.generateHash("123456"));
+
+        assertTrue(this.codeUtils.matches("123456", code));
+        assertFalse(this.codeUtils.matches("654321", code));
+    }
+
+    @Test
+    public void testMatches_NullDigest_LegacyHashUsed() {
+        Code code = this.createCode();
+        code.setHash(this.legacyCodeHasher.encode("123456"));
+
+        assertTrue(this.codeUtils.matches("123456", code));
+        assertFalse(this.codeUtils.matches("654321", code));
+    }
+
+    @Test
+    public void testMatches_Digest_LegacyHashIgnored() {
+        Code code = this.createCode();
+        code.setDigest(this.codeUtils.generateHash("123456"));
+        code.setHash(this.legacyCodeHasher.encode("654321"));
+
+        assertFalse(this.codeUtils.matches("654321", code));
+    }
+
+    @Test
+    public void testMatches_NoHash_Rejected() {
+        assertFalse(this.codeUtils.matches("123456", this.createCode()));
+    }
+
+    private Code createCode() {
+        return Code.builder()
+            .customerId(1L)
+            .email("customer@email.com")
+            .createdAt(new Date())
+            .maximumAttempts(5)
+            .maximumDurationInMinutes(10)
+            .build();
+    }
+
+    private static byte[] pepper() {
+        byte[] pepper = new byte[32];
+        Arrays.fill(pepper, (byte) 1);
+        return pepper;
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.danieldigiovanni.email.code;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EmailLocksTest {
+
+    private final EmailLocks emailLocks = new EmailLocks(100);
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    public void bindMetrics() {
+        this.emailLocks.bindTo(this.registry);
+    }
+
+    @Test
+    public void testSameEmail_SameStripe() {
+        // Equal strings, not the same instance
+        String email = "customer@email.com";
+        String copy = new String(email.toCharArray());
+
+        assertSame(this.emailLocks.stripeOf(email), this.emailLocks.stripeOf(copy));
+    }
+
+    @Test
+    public void testEmails_SpreadOverStripes() {
+        Set<ReentrantLock> stripes = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            stripes.add(this.emailLocks.stripeOf("customer" + i + "@email.com"));
+        }
+
+        // Rounded up to 128 stripes, nearly all of them used
+        assertTrue(stripes.size() > 100, "Only " + stripes.size() + " stripes used");
+    }
+
+    @Test
+    public void testActionThrows_LockReleased() {
+        String email = "customer@email.com";
+
+        assertThrows(IllegalStateException.class, () -> this.emailLocks.withLock(email, () -> {
+            assertTrue(this.emailLocks.stripeOf(email).isHeldByCurrentThread());
+            throw new IllegalStateException("Action failed");
+        }));
+
+        assertFalse(this.emailLocks.stripeOf(email).isLocked());
+    }
+
+    @Test
+    public void testContendedLock_CountedAndTimed() throws Exception {
+        String email = "customer@email.com";
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() ->
+            this.emailLocks.withLock(email, () -> {
+                held.countDown();
+                EmailLocksTest.await(release);
+                return null;
+            })
+        );
+        assertTrue(held.await(2, TimeUnit.SECONDS));
+
+        CompletableFuture<String> waiter = CompletableFuture.supplyAsync(() ->
+            this.emailLocks.withLock(email, () -> "done")
+        );
+        Thread.sleep(100);
+        assertFalse(waiter.isDone());
+        release.countDown();
+
+        assertEquals("done", waiter.get(2, TimeUnit.SECONDS));
+        holder.get(2, TimeUnit.SECONDS);
+        assertEquals(2, this.registry.get("code.lock.acquisitions").functionCounter().count());
+        assertEquals(1, this.registry.get("code.lock.contended").functionCounter().count());
+        assertEquals(1, this.registry.get("code.lock.wait").timer().count());
+        assertTrue(this.registry.get("code.lock.wait").timer().totalTime(TimeUnit.MILLISECONDS) >= 50);
+    }
+
+    @Test
+    public void testUncontendedLock_NotTimed() {
+        assertEquals("done", this.emailLocks.withLock("customer@email.com", () -> "done"));
+
+        assertEquals(1, this.registry.get("code.lock.acquisitions").functionCounter().count());
+        assertEquals(0, this.registry.get("code.lock.contended").functionCounter().count());
+        assertEquals(0, this.registry.get("code.lock.wait").timer().count());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.danieldigiovanni.email.code;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HmacSha256CodeHasherTest {
+
+    private final HmacSha256CodeHasher codeHasher =
+        new HmacSha256CodeHasher(HmacSha256CodeHasherTest.pepper((byte) 1));
+
+    @Test
+    public void testHash_RoundTrip() {
+        byte[] digest = this.codeHasher.hash("123456");
+
+        assertEquals(HmacSha256CodeHasher.DIGEST_LENGTH, digest.length);
+        assertEquals(1, digest[0]);
+        assertTrue(this.codeHasher.matches("123456", digest));
+    }
+
+    @Test
+    public void testHash_SameCode_DifferentSalt() {
+        byte[] digest = this.codeHasher.hash("123456");
+        byte[] otherDigest = this.codeHasher.hash("123456");
+
+        assertFalse(Arrays.equals(digest, otherDigest));
+        assertTrue(this.codeHasher.matches("123456", otherDigest));
+    }
+
+    @Test
+    public void testMatches_WrongCode_Rejected() {
+        byte[] digest = this.codeHasher.hash("123456");
+
+        assertFalse(this.codeHasher.matches("123457", digest));
+        assertFalse(this.codeHasher.matches("", digest));
+    }
+
+    @Test
+    public void testMatches_WrongPepper_Rejected() {
+        byte[] digest = this.codeHasher.hash("123456");
+        HmacSha256CodeHasher otherCodeHasher =
+            new HmacSha256CodeHasher(HmacSha256CodeHasherTest.pepper((byte) 2));
+
+        assertFalse(otherCodeHasher.matches("123456", digest));
+    }
+
+    @Test
+    public void testMatches_WrongSalt_Rejected() {
+        byte[] digest = this.codeHasher.hash("123456");
+        // The salt follows the version byte
+        digest[1] ^= 1;
+
+        assertFalse(this.codeHasher.matches("123456", digest));
+    }
+
+    @Test
+    public void testMatches_MalformedDigest_Rejected() {
+        byte[] digest = this.codeHasher.hash("123456");
+        byte[] otherVersion = digest.clone();
+        otherVersion[0] = 2;
+
+        assertFalse(this.codeHasher.matches("123456", null));
+        assertFalse(this.codeHasher.matches("123456", Arrays.copyOf(digest, 48)));
+        assertFalse(this.codeHasher.matches("123456", otherVersion));
+    }
+
+    @Test
+    public void testConstructor_ShortPepper_Rejected() {
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new HmacSha256CodeHasher(new byte[31])
+        );
+    }
+
+    private static byte[] pepper(byte value) {
+        byte[] pepper = new byte[32];
+        Arrays.fill(pepper, value);
+        return pepper;
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.danieldigiovanni.email.code;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares {@link RandomCodeGenerator} with the previous implementation of
+ * {@link CodeUtils#generateRandomCode(int)}, which created a new
+ * {@link SecureRandom} and joined boxed digits for every code.
+ * <p>
+ * This is not a test, it is run with the {@link #main(String[])} method (for
+ * example from the IDE, after {@code mvn test-compile}). The GC profiler
+ * reports the allocations per call as {@code gc.alloc.rate.norm}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+public class RandomCodeGeneratorBenchmark {
+
+    private static final int LENGTH = 6;
+
+    private final RandomCodeGenerator randomCodeGenerator =
+        new RandomCodeGenerator();
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+            new OptionsBuilder()
+                .include(RandomCodeGeneratorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+    }
+
+    @Benchmark
+    public String previousGenerator() {
+        return new SecureRandom().ints(LENGTH, 0, 10)
+            .mapToObj(String::valueOf)
+            .collect(Collectors.joining());
+    }
+
+    @Benchmark
+    public String numeric() {
+        return this.randomCodeGenerator.generate(LENGTH, CodeAlphabet.NUMERIC);
+    }
+
+    @Benchmark
+    public String alphanumeric() {
+        return this.randomCodeGenerator.generate(
+            LENGTH,
+            CodeAlphabet.ALPHANUMERIC
+        );
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.danieldigiovanni.email.code;
+
+import com.danieldigiovanni.email.AddServletPathRequestPostProcessor;
+import com.danieldigiovanni.email.TestUtils;
+import com.danieldigiovanni.email.auth.dto.AuthResponse;
+import com.danieldigiovanni.email.auth.dto.RegisterRequest;
+import com.danieldigiovanni.email.code.dto.SendCodeRequest;
+import com.danieldigiovanni.email.code.dto.VerifyCodeRequest;
+import com.danieldigiovanni.email.customer.CustomerRepository;
+import com.danieldigiovanni.email.datasource.ShardRouting;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doReturn;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Sends and verifies codes while the third shard is being added, so that some
+ * emails still have their active code on their previous shard.
+ */
+@SpringBootTest(properties = "datasource.shard.previous-count=2")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ReshardingIntegrationTest {
+
+    @SpyBean
+    private CodeUtils codeUtils;
+
+    private final MockMvc mockMvc;
+    private final CodeRepository codeRepository;
+    private final ActiveCodeRepository activeCodeRepository;
+    private final CustomerRepository customerRepository;
+    private final ShardRouting shardRouting;
+    private final TransactionTemplate transactionTemplate;
+
+    private String token;
+
+    @Autowired
+    public ReshardingIntegrationTest(
+        MockMvc mockMvc,
+        CodeRepository codeRepository,
+        ActiveCodeRepository activeCodeRepository,
+        CustomerRepository customerRepository,
+        ShardRouting shardRouting,
+        TransactionTemplate transactionTemplate
+    ) {
+        this.mockMvc = mockMvc;
+        this.codeRepository = codeRepository;
+        this.activeCodeRepository = activeCodeRepository;
+        this.customerRepository = customerRepository;
+        this.shardRouting = shardRouting;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @BeforeAll
+    public void registerCustomerAndGetToken() throws Exception {
+        String path = "/register";
+        RegisterRequest registerBody = new RegisterRequest(
+            "Customer 5.1",
+            "customer5.1@email.com",
+            "Password123",
+            "Password123"
+        );
+
+        MvcResult response = this.mockMvc.perform(
+                post(path)
+                    .with(new AddServletPathRequestPostProcessor(path))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtils.generateJson(registerBody))
+            )
+            .andExpect(status().isOk())
+            .andReturn();
+
+        this.token = TestUtils.parseJson(
+            response.getResponse().getContentAsString(),
+            AuthResponse.class
+        ).getToken();
+    }
+
+    @Test
+    public void testSendCode_ActiveCodeOnPreviousShard_AlreadyExists() throws Exception {
+        doReturn("123").when(codeUtils).generateRandomCode(anyInt(), any());
+        String email = this.movedEmail("moved-a");
+        List<Integer> shards = this.shardRouting.candidateShardsOf(email);
+        int shard = shards.get(0);
+        int previousShard = shards.get(1);
+        Long customerId = this.customerRepository
+            .findByEmail("customer5.1@email.com")
+            .orElseThrow()
+            .getId();
+
+        // Sent before the re-sharding, on the previous shard of the email
+        this.shardRouting.onShard(previousShard, () ->
+            this.transactionTemplate.execute(status -> {
+                Code code = Code.builder()
+                    .customerId(customerId)
+                    .email(email)
+                    .digest(this.codeUtils.generateHash("456"))
+                    .createdAt(new Date())
+                    .maximumAttempts(5)
+                    .maximumDurationInMinutes(10)
+                    .build();
+                assertTrue(this.activeCodeRepository.claim(email, code.getExpiresAt(), new Date()));
+                return this.codeRepository.save(code);
+            })
+        );
+
+        this.sendCode(email).andExpect(status().isConflict());
+        assertTrue(this.hasActiveCode(email, previousShard));
+        assertEquals(0, this.countSlots(email, shard));
+
+        this.verifyCode(email, "456").andExpect(status().isNoContent());
+        assertEquals(0, this.countSlots(email, previousShard));
+
+        // Once the previous code is fulfilled, the email gets a new code on
+        // its shard, and its slot on the previous shard stays claimed
+        this.sendCode(email).andExpect(status().isOk());
+        assertTrue(this.hasActiveCode(email, shard));
+        assertEquals(1, this.countSlots(email, shard));
+        assertEquals(1, this.countSlots(email, previousShard));
+        this.sendCode(email).andExpect(status().isConflict());
+
+        this.verifyCode(email, "123").andExpect(status().isNoContent());
+        assertEquals(0, this.countSlots(email, shard));
+        assertEquals(0, this.countSlots(email, previousShard));
+    }
+
+    @Test
+    public void testSendCode_SlotTakenOnPreviousShard_AlreadyExists() throws Exception {
+        String email = this.movedEmail("moved-b");
+        List<Integer> shards = this.shardRouting.candidateShardsOf(email);
+
+        // Claimed by an instance that still uses the previous shard
+        this.shardRouting.onShard(shards.get(1), () ->
+            this.transactionTemplate.execute(status -> this.activeCodeRepository.claim(
+                email,
+                new Date(System.currentTimeMillis() + 600_000),
+                new Date()
+            ))
+        );
+
+        this.sendCode(email).andExpect(status().isConflict());
+        assertEquals(0, this.countSlots(email, shards.get(0)));
+        assertEquals(1, this.countSlots(email, shards.get(1)));
+    }
+
+    /**
+     * Finds an email that moved to the new shard.
+     */
+    private String movedEmail(String prefix) {
+        return IntStream.range(0, 1000)
+            .mapToObj(i -> prefix + i + "@email.com")
+            .filter(email -> this.shardRouting.candidateShardsOf(email).size() == 2)
+            .findFirst()
+            .orElseThrow();
+    }
+
+    private boolean hasActiveCode(String email, int shard) {
+        return this.shardRouting.onShard(shard, () ->
+            this.codeRepository.findActiveCodeByEmail(email).isPresent()
+        );
+    }
+
+    private long countSlots(String email, int shard) {
+        return this.shardRouting.onShard(shard, () ->
+            this.activeCodeRepository.findById(email).isPresent() ? 1L : 0L
+        );
+    }
+
+    private ResultActions sendCode(String email) throws Exception {
+        SendCodeRequest sendCodeRequest = new SendCodeRequest();
+        sendCodeRequest.setEmail(email);
+        sendCodeRequest.setLength(3);
+        sendCodeRequest.setMaximumAttempts(5);
+        sendCodeRequest.setMaximumDurationInMinutes(10);
+
+        String path = "/code/send";
+        return this.mockMvc.perform(
+            post(path)
+                .with(new AddServletPathRequestPostProcessor(path))
+                .header("Authorization", "Bearer " + this.token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(TestUtils.generateJson(sendCodeRequest))
+        );
+    }
+
+    private ResultActions verifyCode(String email, String code) throws Exception {
+        VerifyCodeRequest verifyCodeRequest = new VerifyCodeRequest();
+        verifyCodeRequest.setEmail(email);
+        verifyCodeRequest.setCode(code);
+
+        String path = "/code/verify";
+        return this.mockMvc.perform(
+            post(path)
+                .with(new AddServletPathRequestPostProcessor(path))
+                .header("Authorization", "Bearer " + this.token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(TestUtils.generateJson(verifyCodeRequest))
+        );
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.danieldigiovanni.email.config;
+
+import com.danieldigiovanni.email.emailer.EmailTemplate;
+import com.danieldigiovanni.email.emailer.EmailerCircuitBreaker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ApiEmailerConfigTest {
+
+    @Test
+    public void testBatchEnabledWithoutBatchUrl_FailsAtStartup() {
+        ApiEmailerConfig config = new ApiEmailerConfig(
+            "noreply@myemail.com",
+            "https://mail.api/send-email",
+            " ",
+            "https://mail.api/refresh-token",
+            "Bearer",
+            EmailTemplate.compile("{{code}} {{duration}}", "code", "duration"),
+            new RestTemplate(),
+            60000,
+            new ObjectMapper(),
+            2000,
+            5000,
+            new EmailerCircuitBreaker(32, 100, 20, 10, 0.5, 3000, 0.5, 30000, 3),
+            true,
+            100,
+            50
+        );
+
+        assertThrows(IllegalStateException.class, config::emailer);
+    }
+
+}
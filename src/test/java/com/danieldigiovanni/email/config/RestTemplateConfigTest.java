@@ -0,0 +1,138 @@
+package com.danieldigiovanni.email.config;
+
+import com.danieldigiovanni.email.emailer.RequestDeadline;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RestTemplateConfigTest {
+
+    private static final long READ_TIMEOUT_MILLIS = 3000;
+    // Leaves room for the first request of the JVM, which loads the client
+    private static final long DEADLINE_MILLIS = 2000;
+
+    private final RestTemplateConfig config = new RestTemplateConfig(
+        10,
+        5,
+        1000,
+        1000,
+        READ_TIMEOUT_MILLIS,
+        DEADLINE_MILLIS,
+        60000,
+        2000
+    );
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private HttpServer server;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private RequestDeadline requestDeadline;
+    private CloseableHttpClient httpClient;
+    private RestTemplate restTemplate;
+
+    @BeforeEach
+    public void createRestTemplate() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(this.serverExecutor);
+        this.server.createContext("/fast", exchange -> {
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        // Sends a byte well within the read timeout, for much longer than
+        // the deadline
+        this.server.createContext("/trickle", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                for (int i = 0; i < 40; i++) {
+                    body.write(' ');
+                    body.flush();
+                    Thread.sleep(READ_TIMEOUT_MILLIS / 10);
+                }
+            } catch (IOException exception) {
+                // The client aborted
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        this.server.start();
+
+        this.connectionManager = this.config.httpConnectionManager();
+        this.requestDeadline = this.config.requestDeadline();
+        this.httpClient = this.config.httpClient(this.connectionManager, this.requestDeadline);
+        this.restTemplate = this.config.restTemplate(this.httpClient);
+        this.requestDeadline.bindTo(this.registry);
+        this.config.httpConnectionPoolMetrics(this.connectionManager).bindTo(this.registry);
+    }
+
+    @AfterEach
+    public void close() throws IOException {
+        this.httpClient.close();
+        this.connectionManager.close();
+        this.requestDeadline.close();
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testSlowResponse_AbortedAtDeadline() {
+        long start = System.nanoTime();
+        // Aborted while reading the body, which Spring reports as a failure
+        // to extract the response
+        RestClientException exception = assertThrows(
+            RestClientException.class,
+            () -> this.restTemplate.getForObject(this.url("/trickle"), String.class)
+        );
+        assertInstanceOf(IOException.class, exception.getCause());
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(
+            elapsedMillis < DEADLINE_MILLIS + READ_TIMEOUT_MILLIS,
+            "Aborted after " + elapsedMillis + " ms"
+        );
+        assertEquals(1, this.registry.get("http.client.deadline.exceeded").functionCounter().count());
+    }
+
+    @Test
+    public void testFastResponse_NotAborted() throws InterruptedException {
+        assertEquals("{}", this.restTemplate.getForObject(this.url("/fast"), String.class));
+
+        Thread.sleep(DEADLINE_MILLIS + 500);
+        assertEquals(0, this.registry.get("http.client.deadline.exceeded").functionCounter().count());
+    }
+
+    @Test
+    public void testPoolGauges_Registered() {
+        this.restTemplate.getForObject(this.url("/fast"), String.class);
+
+        assertEquals(10, this.registry.get("http.client.pool.max").gauge().value());
+        assertEquals(0, this.registry.get("http.client.pool.leased").gauge().value());
+        assertEquals(0, this.registry.get("http.client.pool.pending").gauge().value());
+        assertTrue(this.registry.get("http.client.pool.available").gauge().value() <= 10);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + path;
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.danieldigiovanni.email.config;
+
+import com.danieldigiovanni.email.emailer.ApiEmailer;
+import com.danieldigiovanni.email.emailer.EmailTemplate;
+import com.danieldigiovanni.email.emailer.MailtrapEmailer;
+import com.danieldigiovanni.email.emailer.NoOpEmailer;
+import com.danieldigiovanni.email.emailer.RoutingEmailer;
+import com.danieldigiovanni.email.emailer.SmtpTransportPool;
+import jakarta.mail.Session;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RoutingEmailerConfigTest {
+
+    private final MockEnvironment environment = new MockEnvironment()
+        .withProperty("emailer.api.from-address", "noreply@myemail.com");
+
+    @Test
+    public void testProviders_ReadFromProperties() {
+        this.environment
+            .withProperty("emailer.routing.provider.primary.type", "api")
+            .withProperty("emailer.routing.provider.primary.weight", "3")
+            .withProperty("emailer.routing.provider.primary.send-email-url", "https://primary.mail.api/send-email")
+            .withProperty("emailer.routing.provider.primary.refresh-token-url", "https://primary.mail.api/refresh-token")
+            .withProperty("emailer.routing.provider.primary.auth-scheme", "Bearer")
+            .withProperty("emailer.routing.provider.relay.type", "mailtrap")
+            .withProperty("emailer.routing.provider.relay.weight", "1.5")
+            .withProperty("emailer.routing.provider.log.type", "no-op")
+            .withProperty("emailer.routing.provider.log.weight", "0.5");
+
+        try (RoutingEmailer emailer = this.createConfig(List.of("primary", "relay", "log")).routingEmailer()) {
+            List<RoutingEmailer.Provider> providers = emailer.getProviders();
+
+            assertEquals(
+                List.of("primary", "relay", "log"),
+                providers.stream().map(RoutingEmailer.Provider::getName).toList()
+            );
+            assertEquals(
+                List.of(3.0, 1.5, 0.5),
+                providers.stream().map(RoutingEmailer.Provider::getWeight).toList()
+            );
+            assertInstanceOf(ApiEmailer.class, providers.get(0).getEmailer());
+            assertInstanceOf(MailtrapEmailer.class, providers.get(1).getEmailer());
+            assertInstanceOf(NoOpEmailer.class, providers.get(2).getEmailer());
+        }
+    }
+
+    @Test
+    public void testProviderWithUnknownType_Throws() {
+        this.environment
+            .withProperty("emailer.routing.provider.other.type", "carrier-pigeon")
+            .withProperty("emailer.routing.provider.other.weight", "1");
+
+        RoutingEmailerConfig config = this.createConfig(List.of("other"));
+
+        assertThrows(IllegalStateException.class, config::routingEmailer);
+    }
+
+    @Test
+    public void testProviderWithoutWeight_Throws() {
+        this.environment.withProperty("emailer.routing.provider.log.type", "no-op");
+
+        RoutingEmailerConfig config = this.createConfig(List.of("log"));
+
+        assertThrows(IllegalStateException.class, config::routingEmailer);
+    }
+
+    @Test
+    public void testApiProviderWithoutUrl_Throws() {
+        this.environment
+            .withProperty("emailer.routing.provider.primary.type", "api")
+            .withProperty("emailer.routing.provider.primary.weight", "1")
+            .withProperty("emailer.routing.provider.primary.auth-scheme", "Bearer");
+
+        RoutingEmailerConfig config = this.createConfig(List.of("primary"));
+
+        assertThrows(IllegalStateException.class, config::routingEmailer);
+    }
+
+    private RoutingEmailerConfig createConfig(List<String> providerNames) {
+        return new RoutingEmailerConfig(
+            this.environment,
+            providerNames,
+            0.2,
+            EmailTemplate.compile("{{code}} {{duration}}", "code", "duration"),
+            new RestTemplate(),
+            new SmtpTransportPool(
+                Session.getInstance(new Properties()),
+                "localhost",
+                2525,
+                "username",
+                "password",
+                1,
+                100,
+                60000,
+                2000,
+                1000
+            ),
+            60000
+        );
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.danieldigiovanni.email.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+
+import java.util.concurrent.ThreadFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VirtualThreadsConfigTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+        .withUserConfiguration(VirtualThreadsConfig.class);
+
+    @Test
+    public void testProfileActive_VirtualThreadsOrStartupFailure() {
+        this.contextRunner
+            .withPropertyValues("spring.profiles.active=virtual-threads")
+            .run(context -> {
+                if (Runtime.version().feature() < 21) {
+                    // Virtual threads do not exist before Java 21
+                    Throwable failure = context.getStartupFailure();
+                    assertNotNull(failure);
+                    Throwable cause = failure;
+                    while (cause.getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    assertInstanceOf(IllegalStateException.class, cause);
+                    assertTrue(cause.getMessage().contains("needs Java 21 or later"));
+                    return;
+                }
+
+                assertEquals(1, context.getBeansOfType(TomcatProtocolHandlerCustomizer.class).size());
+                Thread thread = context.getBean(ThreadFactory.class)
+                    .newThread(() -> { });
+                assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread));
+                assertTrue(thread.getName().startsWith("email-dispatch-"));
+            });
+    }
+
+    @Test
+    public void testProfileInactive_NoBeans() {
+        this.contextRunner.run(context -> {
+            assertFalse(context.containsBean("emailDispatchThreadFactory"));
+            assertFalse(context.containsBean("virtualThreadsProtocolHandlerCustomizer"));
+        });
+    }
+
+}
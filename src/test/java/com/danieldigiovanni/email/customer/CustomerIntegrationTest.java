@@ -4,7 +4,12 @@ import com.danieldigiovanni.email.AddServletPathRequestPostProcessor;
 import com.danieldigiovanni.email.TestUtils;
 import com.danieldigiovanni.email.auth.dto.AuthResponse;
 import com.danieldigiovanni.email.auth.dto.RegisterRequest;
+import com.danieldigiovanni.email.code.ActiveCodeCache;
+import com.danieldigiovanni.email.code.dto.CodeResponse;
+import com.danieldigiovanni.email.code.dto.SendCodeRequest;
 import com.danieldigiovanni.email.customer.dto.UpdatePasswordRequest;
+import com.danieldigiovanni.email.datasource.ShardRouting;
+import com.danieldigiovanni.email.outbox.OutboxRepository;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -12,11 +17,13 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
 
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
@@ -29,10 +36,16 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 public class CustomerIntegrationTest {
 
     private final MockMvc mockMvc;
+    private final ActiveCodeCache activeCodeCache;
+    private final OutboxRepository outboxRepository;
+    private final ShardRouting shardRouting;
 
     @Autowired
-    public CustomerIntegrationTest(MockMvc mockMvc) {
+    public CustomerIntegrationTest(MockMvc mockMvc, ActiveCodeCache activeCodeCache, OutboxRepository outboxRepository, ShardRouting shardRouting) {
         this.mockMvc = mockMvc;
+        this.activeCodeCache = activeCodeCache;
+        this.outboxRepository = outboxRepository;
+        this.shardRouting = shardRouting;
     }
 
     @Test
@@ -573,4 +586,81 @@ public class CustomerIntegrationTest {
             .andReturn();
     }
 
+    @Test
+    public void testDeleteUser_ActiveCodesRemoved() throws Exception {
+        String deletedToken = this.register("Customer 2.10", "customer2.10@email.com");
+        String otherToken = this.register("Customer 2.11", "customer2.11@email.com");
+        String email = "deleted-customer-code@email.com";
+
+        this.sendCode(deletedToken, email).andExpect(status().isOk());
+        assertTrue(this.activeCodeCache.get(email).isPresent());
+
+        String path = "/customer";
+        this.mockMvc.perform(
+                delete(path)
+                    .header("Authorization", "Bearer " + deletedToken)
+                    .with(new AddServletPathRequestPostProcessor(path))
+            )
+            .andExpect(status().isNoContent());
+
+        // The code, its email, its slot and its cache entry are gone
+        assertTrue(this.activeCodeCache.get(email).isEmpty());
+        int shard = this.shardRouting.shardOf(email);
+        assertTrue(this.shardRouting.onShard(shard, () ->
+            this.outboxRepository.findAll().stream()
+                .noneMatch(message -> message.getToAddress().equals(email))
+        ));
+
+        // So another customer can send a code to the same email
+        MvcResult result = this.sendCode(otherToken, email)
+            .andExpect(status().isOk())
+            .andReturn();
+        CodeResponse codeResponse = TestUtils.parseJson(
+            result.getResponse().getContentAsString(),
+            CodeResponse.class
+        );
+        assertEquals(5, codeResponse.getRemainingAttempts());
+    }
+
+    private String register(String name, String email) throws Exception {
+        String path = "/register";
+        RegisterRequest body = new RegisterRequest(
+            name,
+            email,
+            "Password123",
+            "Password123"
+        );
+
+        MvcResult result = this.mockMvc.perform(
+                post(path)
+                    .with(new AddServletPathRequestPostProcessor(path))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtils.generateJson(body))
+            )
+            .andExpect(status().isOk())
+            .andReturn();
+
+        return TestUtils.parseJson(
+            result.getResponse().getContentAsString(),
+            AuthResponse.class
+        ).getToken();
+    }
+
+    private ResultActions sendCode(String token, String email) throws Exception {
+        SendCodeRequest sendCodeRequest = new SendCodeRequest();
+        sendCodeRequest.setEmail(email);
+        sendCodeRequest.setLength(6);
+        sendCodeRequest.setMaximumAttempts(5);
+        sendCodeRequest.setMaximumDurationInMinutes(10);
+
+        String path = "/code/send";
+        return this.mockMvc.perform(
+            post(path)
+                .with(new AddServletPathRequestPostProcessor(path))
+                .header("Authorization", "Bearer " + token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(TestUtils.generateJson(sendCodeRequest))
+        );
+    }
+
 }
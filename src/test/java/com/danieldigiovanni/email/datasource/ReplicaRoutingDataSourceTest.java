@@ -0,0 +1,165 @@
+package com.danieldigiovanni.email.datasource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Routes transactions between two H2 databases, a primary and a replica.
+ * <p>
+ * The databases are independent, so replication is stubbed: the lag seen by
+ * the {@link ReplicaLagMonitor} is set by writing the heartbeat of the replica
+ * directly.
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private static final long MAXIMUM_STALENESS_MILLIS = 1000;
+
+    private final ReadRouting readRouting = new ReadRouting();
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+    private ReplicaLagMonitor replicaLagMonitor;
+    private DataSource dataSource;
+    private DataSourceTransactionManager transactionManager;
+
+    @BeforeEach
+    public void createDataSources() {
+        DataSource primaryDataSource = ReplicaRoutingDataSourceTest.createDatabase("primary");
+        DataSource replicaDataSource = ReplicaRoutingDataSourceTest.createDatabase("replica");
+        this.primary = new JdbcTemplate(primaryDataSource);
+        this.replica = new JdbcTemplate(replicaDataSource);
+
+        List<Replica> replicas = List.of(new Replica("replica-0", replicaDataSource));
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(
+            primaryDataSource,
+            replicas,
+            this.readRouting
+        );
+        routingDataSource.afterPropertiesSet();
+        routingDataSource.bindTo(this.registry);
+
+        this.replicaLagMonitor = new ReplicaLagMonitor(
+            primaryDataSource,
+            replicas,
+            MAXIMUM_STALENESS_MILLIS,
+            1000
+        );
+        this.dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        this.transactionManager = new DataSourceTransactionManager(this.dataSource);
+    }
+
+    @Test
+    public void testReadOnly_FreshReplica_RoutedToReplica() {
+        this.replicate(100);
+
+        assertEquals("replica", this.readName(true));
+        assertEquals(1, this.registry.get("datasource.routing.replica.reads").functionCounter().count());
+        assertEquals(0, this.registry.get("datasource.routing.stale.fallbacks").functionCounter().count());
+    }
+
+    @Test
+    public void testReadOnly_StaleReplica_RoutedToPrimary() {
+        this.replicate(MAXIMUM_STALENESS_MILLIS * 10);
+
+        assertEquals("primary", this.readName(true));
+        assertEquals(0, this.registry.get("datasource.routing.replica.reads").functionCounter().count());
+        assertEquals(1, this.registry.get("datasource.routing.stale.fallbacks").functionCounter().count());
+    }
+
+    @Test
+    public void testReadOnly_ReplicaNotChecked_RoutedToPrimary() {
+        assertEquals("primary", this.readName(true));
+        assertEquals(1, this.registry.get("datasource.routing.stale.fallbacks").functionCounter().count());
+    }
+
+    @Test
+    public void testReadOnly_ReplicaCatchesUp_RoutedToReplica() {
+        this.replicate(MAXIMUM_STALENESS_MILLIS * 10);
+        assertEquals("primary", this.readName(true));
+
+        this.replicate(100);
+        assertEquals("replica", this.readName(true));
+    }
+
+    @Test
+    public void testReadOnly_OnPrimary_RoutedToPrimary() {
+        this.replicate(100);
+
+        assertEquals("primary", this.readRouting.onPrimary(() -> this.readName(true)));
+        assertEquals(0, this.registry.get("datasource.routing.replica.reads").functionCounter().count());
+        assertEquals(0, this.registry.get("datasource.routing.stale.fallbacks").functionCounter().count());
+        // Pinning only lasts for the action
+        assertEquals("replica", this.readName(true));
+    }
+
+    @Test
+    public void testReadWrite_FreshReplica_RoutedToPrimary() {
+        this.replicate(100);
+
+        assertEquals("primary", this.readName(false));
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(this.transactionManager);
+        transactionTemplate.executeWithoutResult(status ->
+            new JdbcTemplate(this.dataSource).update("insert into node (name) values ('written')")
+        );
+        assertEquals(2, this.primary.queryForObject("select count(*) from node", Integer.class));
+        assertEquals(1, this.replica.queryForObject("select count(*) from node", Integer.class));
+        assertEquals(0, this.registry.get("datasource.routing.replica.reads").functionCounter().count());
+    }
+
+    /**
+     * Stubs the replication of the heartbeat to the replica, as if it was
+     * behind the primary by a lag, and runs the lag monitor.
+     */
+    private void replicate(long lagMillis) {
+        Timestamp beatAt = new Timestamp(System.currentTimeMillis() - lagMillis);
+        this.replica.update("delete from replication_heartbeat");
+        this.replica.update(
+            "insert into replication_heartbeat (id, beat_at) values (1, ?)",
+            beatAt
+        );
+        this.replicaLagMonitor.beat();
+    }
+
+    /**
+     * Reads the name of the database a transaction was routed to.
+     */
+    private String readName(boolean readOnly) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(this.transactionManager);
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status ->
+            new JdbcTemplate(this.dataSource).queryForObject(
+                "select min(name) from node",
+                String.class
+            )
+        );
+    }
+
+    private static DataSource createDatabase(String name) {
+        DataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"
+        );
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table node (name varchar(16))");
+        jdbcTemplate.update("insert into node (name) values (?)", name);
+        jdbcTemplate.execute(
+            "create table replication_heartbeat (id int primary key, beat_at timestamp)"
+        );
+        return dataSource;
+    }
+
+}
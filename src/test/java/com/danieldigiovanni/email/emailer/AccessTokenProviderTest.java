@@ -0,0 +1,200 @@
+package com.danieldigiovanni.email.emailer;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AccessTokenProviderTest {
+
+    @Test
+    public void testShortLifetime_NotRefreshedInALoop() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        Supplier<AccessToken> requestToken = () -> new AccessToken(
+            "token-" + requests.incrementAndGet(),
+            System.currentTimeMillis() + 100
+        );
+
+        try (AccessTokenProvider provider = new AccessTokenProvider(requestToken, 60000)) {
+            provider.getAccessToken();
+            Thread.sleep(1500);
+        }
+
+        // Once when first used, then at most once per minimum delay
+        assertTrue(
+            requests.get() <= 3,
+            "Requested " + requests.get() + " tokens in 1.5 seconds"
+        );
+    }
+
+    @Test
+    public void testLifetimeShorterThanRefreshAhead_RefreshedHalfwayThrough() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        Supplier<AccessToken> requestToken = () -> new AccessToken(
+            "token-" + requests.incrementAndGet(),
+            System.currentTimeMillis() + 10000
+        );
+
+        try (AccessTokenProvider provider = new AccessTokenProvider(requestToken, 60000)) {
+            assertEquals("token-1", provider.getAccessToken());
+            Thread.sleep(1500);
+            assertEquals("token-1", provider.getAccessToken());
+        }
+
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testConcurrentCallers_SingleRequest() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        Supplier<AccessToken> requestToken = () -> {
+            int request = requests.incrementAndGet();
+            AccessTokenProviderTest.sleep(200);
+            return new AccessToken(
+                "token-" + request,
+                System.currentTimeMillis() + 3600000
+            );
+        };
+
+        try (AccessTokenProvider provider = new AccessTokenProvider(requestToken, 60000)) {
+            List<String> tokens = AccessTokenProviderTest.callConcurrently(
+                16,
+                provider::getAccessToken
+            );
+
+            assertEquals(1, requests.get());
+            assertTrue(tokens.stream().allMatch("token-1"::equals));
+        }
+    }
+
+    @Test
+    public void testConcurrentRejections_SingleReplacement() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        Supplier<AccessToken> requestToken = () -> {
+            int request = requests.incrementAndGet();
+            AccessTokenProviderTest.sleep(200);
+            return new AccessToken(
+                "token-" + request,
+                System.currentTimeMillis() + 3600000
+            );
+        };
+
+        try (AccessTokenProvider provider = new AccessTokenProvider(requestToken, 60000)) {
+            String rejected = provider.getAccessToken();
+            List<String> tokens = AccessTokenProviderTest.callConcurrently(
+                16,
+                () -> provider.replaceAccessToken(rejected)
+            );
+
+            assertEquals(2, requests.get());
+            assertTrue(tokens.stream().allMatch("token-2"::equals));
+        }
+    }
+
+    @Test
+    public void testFailedRequest_NotRepeatedDuringBackoff() {
+        AtomicInteger requests = new AtomicInteger();
+        Supplier<AccessToken> requestToken = () -> {
+            requests.incrementAndGet();
+            throw new IllegalStateException("Token API down");
+        };
+
+        try (AccessTokenProvider provider = new AccessTokenProvider(requestToken, 60000)) {
+            for (int i = 0; i < 10; i++) {
+                assertThrows(IllegalStateException.class, provider::getAccessToken);
+            }
+        }
+
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testRequestThrowsError_WaitersFailInsteadOfHanging() {
+        AtomicInteger requests = new AtomicInteger();
+        Supplier<AccessToken> requestToken = () -> {
+            requests.incrementAndGet();
+            throw new NoClassDefFoundError("Token API client");
+        };
+
+        try (AccessTokenProvider provider = new AccessTokenProvider(requestToken, 60000)) {
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertThrows(NoClassDefFoundError.class, provider::getAccessToken);
+                assertThrows(NoClassDefFoundError.class, provider::getAccessToken);
+            });
+        }
+
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testAsync_RequestedOffTheCallerThread() throws Exception {
+        Thread caller = Thread.currentThread();
+        AtomicReference<Thread> requester = new AtomicReference<>();
+        Supplier<AccessToken> requestToken = () -> {
+            requester.set(Thread.currentThread());
+            AccessTokenProviderTest.sleep(500);
+            return new AccessToken("token-1", System.currentTimeMillis() + 3600000);
+        };
+
+        try (AccessTokenProvider provider = new AccessTokenProvider(requestToken, 60000)) {
+            CompletableFuture<String> token = provider.getAccessTokenAsync();
+            assertFalse(token.isDone());
+            assertEquals("token-1", token.get(5, TimeUnit.SECONDS));
+
+            CompletableFuture<String> replacement = provider.replaceAccessTokenAsync("token-1");
+            assertFalse(replacement.isDone());
+            assertEquals("token-1", replacement.get(5, TimeUnit.SECONDS));
+        }
+
+        assertNotEquals(caller, requester.get());
+    }
+
+    private static List<String> callConcurrently(int threads, Supplier<String> call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return call.get();
+                }));
+            }
+            start.countDown();
+
+            List<String> results = new ArrayList<>();
+            for (Future<String> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
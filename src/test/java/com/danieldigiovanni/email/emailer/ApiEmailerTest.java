@@ -0,0 +1,143 @@
+package com.danieldigiovanni.email.emailer;
+
+import com.danieldigiovanni.email.emailer.exception.ApiCallResponseBodyException;
+import com.danieldigiovanni.email.emailer.exception.ApiCallStatusException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class ApiEmailerTest {
+
+    private static final String SEND_EMAIL_URL = "http://mail.test/send";
+    private static final String SEND_BATCH_URL = "http://mail.test/send-batch";
+    private static final String REFRESH_TOKEN_URL = "http://mail.test/token";
+
+    private MockRestServiceServer server;
+    private ApiEmailer apiEmailer;
+
+    @BeforeEach
+    public void createEmailer() {
+        // Like RestTemplateConfig, error statuses are returned, not thrown
+        RestTemplate restTemplate = new RestTemplate();
+        restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+            @Override
+            public void handleError(ClientHttpResponse response) { }
+        });
+        this.server = MockRestServiceServer.bindTo(restTemplate).build();
+        this.apiEmailer = new ApiEmailer(
+            "noreply@myemail.com",
+            SEND_EMAIL_URL,
+            SEND_BATCH_URL,
+            REFRESH_TOKEN_URL,
+            "Bearer",
+            EmailTemplate.compile("<p>{{code}} {{duration}}</p>", "code", "duration"),
+            restTemplate,
+            60000
+        );
+    }
+
+    @AfterEach
+    public void closeEmailer() {
+        this.apiEmailer.close();
+    }
+
+    @Test
+    public void testSendEmail_TokenRejected_ReplacedAndRetried() {
+        this.expectToken("token-1");
+        this.server.expect(requestTo(SEND_EMAIL_URL))
+            .andExpect(method(HttpMethod.POST))
+            .andExpect(header(HttpHeaders.AUTHORIZATION, "Bearer token-1"))
+            .andRespond(withStatus(HttpStatus.UNAUTHORIZED));
+        this.expectToken("token-2");
+        this.server.expect(requestTo(SEND_EMAIL_URL))
+            .andExpect(header(HttpHeaders.AUTHORIZATION, "Bearer token-2"))
+            .andRespond(withSuccess());
+
+        this.apiEmailer.sendEmail("customer@email.com", "Verification Code", "A1B2C3", 15);
+
+        this.server.verify();
+    }
+
+    @Test
+    public void testSendBatch_ResultsMappedToEmailsInOrder() {
+        this.expectToken("token-1");
+        this.server.expect(requestTo(SEND_BATCH_URL))
+            .andExpect(method(HttpMethod.POST))
+            .andExpect(jsonPath("$.messages.length()").value(3))
+            .andExpect(jsonPath("$.messages[1].toAddress").value("customer2@email.com"))
+            .andRespond(withSuccess(
+                "{\"results\":["
+                    + "{\"status\":202,\"id\":\"id-1\"},"
+                    + "{\"status\":422},"
+                    + "{\"status\":200,\"id\":\"id-3\"}"
+                    + "]}",
+                MediaType.APPLICATION_JSON
+            ));
+        List<PendingEmail> emails = List.of(
+            new PendingEmail("customer1@email.com", "Verification Code", "A1B2C3", 15),
+            new PendingEmail("customer2@email.com", "Verification Code", "D4E5F6", 15),
+            new PendingEmail("customer3@email.com", "Verification Code", "G7H8I9", 15)
+        );
+
+        this.apiEmailer.sendBatch(emails);
+
+        this.server.verify();
+        assertEquals("id-1", emails.get(0).getResult().join().getMessageId());
+        CompletionException failure = assertThrows(
+            CompletionException.class,
+            () -> emails.get(1).getResult().join()
+        );
+        assertInstanceOf(ApiCallStatusException.class, failure.getCause());
+        assertEquals("id-3", emails.get(2).getResult().join().getMessageId());
+    }
+
+    @Test
+    public void testSendBatch_ResultCountMismatch_Throws() {
+        this.expectToken("token-1");
+        this.server.expect(requestTo(SEND_BATCH_URL))
+            .andRespond(withSuccess(
+                "{\"results\":[{\"status\":202,\"id\":\"id-1\"}]}",
+                MediaType.APPLICATION_JSON
+            ));
+        List<PendingEmail> emails = List.of(
+            new PendingEmail("customer1@email.com", "Verification Code", "A1B2C3", 15),
+            new PendingEmail("customer2@email.com", "Verification Code", "D4E5F6", 15)
+        );
+
+        assertThrows(
+            ApiCallResponseBodyException.class,
+            () -> this.apiEmailer.sendBatch(emails)
+        );
+    }
+
+    private void expectToken(String accessToken) {
+        this.server.expect(requestTo(REFRESH_TOKEN_URL))
+            .andExpect(method(HttpMethod.POST))
+            .andRespond(withSuccess(
+                "{\"access_token\":\"" + accessToken + "\",\"expires_in\":3600}",
+                MediaType.APPLICATION_JSON
+            ));
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.danieldigiovanni.email.emailer;
+
+import com.danieldigiovanni.email.emailer.exception.ApiCallStatusException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncApiEmailerTest {
+
+    // Leaves room for the first request of the JVM, which loads the client
+    private static final long REQUEST_TIMEOUT_MILLIS = 1500;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private final List<JsonNode> requestBodies = new CopyOnWriteArrayList<>();
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private volatile SendHandler sendHandler;
+    private volatile long tokenDelayMillis = 0;
+    private HttpServer server;
+    private AsyncApiEmailer asyncApiEmailer;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(this.serverExecutor);
+        this.server.createContext("/token", exchange -> {
+            AsyncApiEmailerTest.sleep(this.tokenDelayMillis);
+            AsyncApiEmailerTest.respond(
+                exchange,
+                200,
+                "{\"access_token\":\"token-" + this.tokenRequests.incrementAndGet()
+                    + "\",\"expires_in\":3600}"
+            );
+        });
+        this.server.createContext("/send", exchange -> {
+            this.authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            this.requestBodies.add(this.objectMapper.readTree(exchange.getRequestBody()));
+            this.sendHandler.handle(exchange);
+        });
+        this.server.start();
+
+        String baseUrl = "http://127.0.0.1:" + this.server.getAddress().getPort();
+        this.asyncApiEmailer = new AsyncApiEmailer(
+            "noreply@myemail.com",
+            baseUrl + "/send",
+            baseUrl + "/token",
+            "Bearer",
+            EmailTemplate.compile("<p>{{code}} {{duration}}</p>", "code", "duration"),
+            HttpClient.newHttpClient(),
+            this.objectMapper,
+            REQUEST_TIMEOUT_MILLIS,
+            60000
+        );
+    }
+
+    @AfterEach
+    public void stopServer() {
+        this.asyncApiEmailer.close();
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testSendEmail_HappyPath() throws Exception {
+        this.sendHandler = exchange -> AsyncApiEmailerTest.respond(
+            exchange,
+            202,
+            "{\"id\":\"message-1\"}"
+        );
+
+        SendResult result = this.send().get(5, TimeUnit.SECONDS);
+
+        assertEquals("message-1", result.getMessageId());
+        assertEquals(List.of("Bearer token-1"), this.authorizations);
+        JsonNode requestBody = this.requestBodies.get(0);
+        assertEquals("noreply@myemail.com", requestBody.get("fromAddress").asText());
+        assertEquals("customer@email.com", requestBody.get("toAddress").asText());
+        assertEquals("Verification Code", requestBody.get("subject").asText());
+        assertEquals("<p>A1B2C3 15</p>", requestBody.get("content").asText());
+    }
+
+    @Test
+    public void testSendEmail_ErrorStatus() {
+        this.sendHandler = exchange -> AsyncApiEmailerTest.respond(
+            exchange,
+            503,
+            "{\"error\":\"Unavailable\"}"
+        );
+
+        ExecutionException exception = assertThrows(
+            ExecutionException.class,
+            () -> this.send().get(5, TimeUnit.SECONDS)
+        );
+        assertInstanceOf(ApiCallStatusException.class, exception.getCause());
+        assertThrows(
+            ApiCallStatusException.class,
+            () -> this.asyncApiEmailer.sendEmail("customer@email.com", "Verification Code", "A1B2C3", 15)
+        );
+    }
+
+    @Test
+    public void testSendEmail_TokenRejected_ReplacedAndRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        this.sendHandler = exchange -> {
+            if (calls.incrementAndGet() == 1) {
+                AsyncApiEmailerTest.respond(exchange, 401, "{}");
+            } else {
+                AsyncApiEmailerTest.respond(exchange, 200, "{\"id\":\"message-2\"}");
+            }
+        };
+
+        SendResult result = this.send().get(5, TimeUnit.SECONDS);
+
+        assertEquals("message-2", result.getMessageId());
+        assertEquals(List.of("Bearer token-1", "Bearer token-2"), this.authorizations);
+    }
+
+    @Test
+    public void testSendEmailAsync_SlowTokenApi_CallerNotBlocked() throws Exception {
+        this.tokenDelayMillis = 1000;
+        this.sendHandler = exchange -> AsyncApiEmailerTest.respond(
+            exchange,
+            202,
+            "{\"id\":\"message-1\"}"
+        );
+
+        long startNanos = System.nanoTime();
+        CompletableFuture<SendResult> result = this.send();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        assertTrue(elapsedMillis < 500, "Caller blocked for " + elapsedMillis + " ms");
+        assertEquals("message-1", result.get(5, TimeUnit.SECONDS).getMessageId());
+        assertEquals(List.of("Bearer token-1"), this.authorizations);
+    }
+
+    @Test
+    public void testSendEmail_SlowApi_TimesOut() {
+        this.sendHandler = exchange -> {
+            try {
+                Thread.sleep(REQUEST_TIMEOUT_MILLIS * 4);
+                AsyncApiEmailerTest.respond(exchange, 200, "{}");
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        ExecutionException exception = assertThrows(
+            ExecutionException.class,
+            () -> this.send().get(REQUEST_TIMEOUT_MILLIS * 3, TimeUnit.MILLISECONDS)
+        );
+        assertInstanceOf(HttpTimeoutException.class, exception.getCause());
+    }
+
+    private CompletableFuture<SendResult> send() {
+        return this.asyncApiEmailer.sendEmailAsync(
+            "customer@email.com",
+            "Verification Code",
+            "A1B2C3",
+            15
+        );
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface SendHandler {
+
+        void handle(HttpExchange exchange) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,174 @@
+package com.danieldigiovanni.email.emailer;
+
+import com.danieldigiovanni.email.emailer.exception.EmailerUnavailableException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchingEmailerTest {
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+    /**
+     * A breaker with a bulkhead of 2 calls, and a window of 4 calls that
+     * opens at half failed calls once 2 are recorded.
+     */
+    private final EmailerCircuitBreaker circuitBreaker = new EmailerCircuitBreaker(
+        2,
+        10,
+        4,
+        2,
+        0.5,
+        3000,
+        0.5,
+        30000,
+        1
+    );
+
+    @Test
+    public void testFullBatch_SentBeforeWindow() throws Exception {
+        try (BatchingEmailer emailer = new BatchingEmailer(this.sendAll(), this.circuitBreaker, 3, 10000)) {
+            List<CompletableFuture<SendResult>> results = List.of(
+                this.send(emailer, "customer1@email.com"),
+                this.send(emailer, "customer2@email.com"),
+                this.send(emailer, "customer3@email.com")
+            );
+
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(
+                    "customer" + (i + 1) + "@email.com",
+                    results.get(i).get(2, TimeUnit.SECONDS).getMessageId()
+                );
+            }
+            assertEquals(List.of(3), this.batchSizes);
+        }
+    }
+
+    @Test
+    public void testPartialBatch_SentAfterWindow() throws Exception {
+        try (BatchingEmailer emailer = new BatchingEmailer(this.sendAll(), this.circuitBreaker, 100, 200)) {
+            long start = System.nanoTime();
+            CompletableFuture<SendResult> first = this.send(emailer, "customer1@email.com");
+            CompletableFuture<SendResult> second = this.send(emailer, "customer2@email.com");
+
+            assertEquals("customer1@email.com", first.get(2, TimeUnit.SECONDS).getMessageId());
+            assertEquals("customer2@email.com", second.get(2, TimeUnit.SECONDS).getMessageId());
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsedMillis >= 150, "Sent after " + elapsedMillis + " ms");
+            assertEquals(List.of(2), this.batchSizes);
+        }
+    }
+
+    @Test
+    public void testPartialFailure_EachEmailGetsItsOwnResult() throws Exception {
+        IllegalStateException rejected = new IllegalStateException("Rejected");
+        BatchSender batchSender = emails -> {
+            emails.get(0).complete(new SendResult("id-1"));
+            emails.get(1).fail(rejected);
+            // The third email is left incomplete
+        };
+
+        try (BatchingEmailer emailer = new BatchingEmailer(batchSender, this.circuitBreaker, 3, 10000)) {
+            CompletableFuture<SendResult> first = this.send(emailer, "customer1@email.com");
+            CompletableFuture<SendResult> second = this.send(emailer, "customer2@email.com");
+            CompletableFuture<SendResult> third = this.send(emailer, "customer3@email.com");
+
+            assertEquals("id-1", first.get(2, TimeUnit.SECONDS).getMessageId());
+            assertSame(rejected, this.failure(second));
+            assertInstanceOf(IllegalStateException.class, this.failure(third));
+        }
+    }
+
+    @Test
+    public void testSenderThrowsError_BatchFailedAndNextBatchSent() throws Exception {
+        BatchSender sendAll = this.sendAll();
+        BatchSender batchSender = emails -> {
+            if (this.batchSizes.isEmpty()) {
+                this.batchSizes.add(emails.size());
+                throw new StackOverflowError();
+            }
+            sendAll.sendBatch(emails);
+        };
+
+        try (BatchingEmailer emailer = new BatchingEmailer(batchSender, this.circuitBreaker, 1, 10000)) {
+            CompletableFuture<SendResult> first = this.send(emailer, "customer1@email.com");
+            assertInstanceOf(StackOverflowError.class, this.failure(first));
+
+            CompletableFuture<SendResult> second = this.send(emailer, "customer2@email.com");
+            assertEquals("customer2@email.com", second.get(2, TimeUnit.SECONDS).getMessageId());
+        }
+    }
+
+    @Test
+    public void testFailedBatch_CountsAsOneFailedCall() throws Exception {
+        BatchSender batchSender = emails -> {
+            throw new IllegalStateException("Provider down");
+        };
+
+        try (BatchingEmailer emailer = new BatchingEmailer(batchSender, this.circuitBreaker, 5, 10000)) {
+            List<CompletableFuture<SendResult>> results = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                results.add(this.send(emailer, "customer" + i + "@email.com"));
+            }
+            for (CompletableFuture<SendResult> result : results) {
+                assertInstanceOf(IllegalStateException.class, this.failure(result));
+            }
+
+            // Five failed calls would have opened the circuit
+            assertEquals(EmailerCircuitBreaker.State.CLOSED, this.circuitBreaker.getState());
+        }
+    }
+
+    @Test
+    public void testCircuitOpen_BatchRejectedWithoutCallingSender() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            this.circuitBreaker.call(() -> CompletableFuture.failedFuture(
+                new IllegalStateException("Provider down")
+            ));
+        }
+        assertEquals(EmailerCircuitBreaker.State.OPEN, this.circuitBreaker.getState());
+
+        try (BatchingEmailer emailer = new BatchingEmailer(this.sendAll(), this.circuitBreaker, 2, 10000)) {
+            CompletableFuture<SendResult> first = this.send(emailer, "customer1@email.com");
+            CompletableFuture<SendResult> second = this.send(emailer, "customer2@email.com");
+
+            assertInstanceOf(EmailerUnavailableException.class, this.failure(first));
+            assertInstanceOf(EmailerUnavailableException.class, this.failure(second));
+            assertTrue(this.batchSizes.isEmpty());
+        }
+    }
+
+    /**
+     * A batch sender that sends every email, with its address as message id.
+     */
+    private BatchSender sendAll() {
+        return emails -> {
+            this.batchSizes.add(emails.size());
+            emails.forEach(email -> email.complete(new SendResult(email.getToAddress())));
+        };
+    }
+
+    private CompletableFuture<SendResult> send(BatchingEmailer emailer, String toAddress) {
+        return emailer.sendEmailAsync(toAddress, "Verification Code", "A1B2C3", 15);
+    }
+
+    private Throwable failure(CompletableFuture<SendResult> result) {
+        ExecutionException exception = assertThrows(
+            ExecutionException.class,
+            () -> result.get(2, TimeUnit.SECONDS)
+        );
+        return exception.getCause();
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.danieldigiovanni.email.emailer;
+
+import com.danieldigiovanni.email.emailer.dto.ApiEmailerRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link EmailTemplate} with the previous rendering of the email
+ * template, which replaced each placeholder in the template string with
+ * {@link String#replace(CharSequence, CharSequence)}, and then encoded the
+ * result to UTF-8 (directly, or through Jackson for the mail API).
+ * <p>
+ * This is not a test, it is run with the {@link #main(String[])} method (for
+ * example from the IDE, after {@code mvn test-compile}). The GC profiler
+ * reports the allocations per call as {@code gc.alloc.rate.norm}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+public class EmailTemplateBenchmark {
+
+    private static final String CODE = "A1B2C3";
+    private static final String DURATION = "15";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String template;
+    private EmailTemplate emailTemplate;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+            new OptionsBuilder()
+                .include(EmailTemplateBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        this.template = new String(
+            new ClassPathResource("emailTemplate.html")
+                .getInputStream()
+                .readAllBytes(),
+            StandardCharsets.UTF_8
+        );
+        this.emailTemplate = EmailTemplate.compile(
+            this.template,
+            "code",
+            "duration"
+        );
+    }
+
+    @Benchmark
+    public byte[] previousReplace() {
+        return this.template
+            .replace("{{code}}", CODE)
+            .replace("{{duration}}", DURATION)
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] compiled() {
+        return this.emailTemplate.render(CODE, DURATION);
+    }
+
+    @Benchmark
+    public byte[] previousRequestBody() throws JsonProcessingException {
+        return this.objectMapper.writeValueAsBytes(new PreviousRequest(
+            "noreply@myemail.com",
+            "customer@email.com",
+            "Verification Code",
+            this.template
+                .replace("{{code}}", CODE)
+                .replace("{{duration}}", DURATION)
+        ));
+    }
+
+    @Benchmark
+    public byte[] compiledRequestBody() throws JsonProcessingException {
+        return this.objectMapper.writeValueAsBytes(new ApiEmailerRequest(
+            "noreply@myemail.com",
+            "customer@email.com",
+            "Verification Code",
+            this.emailTemplate.render(CODE, DURATION)
+        ));
+    }
+
+    /**
+     * The previous request body of the mail API, whose content was a string.
+     */
+    public record PreviousRequest(String fromAddress, String toAddress, String subject, String content) {
+    }
+
+}
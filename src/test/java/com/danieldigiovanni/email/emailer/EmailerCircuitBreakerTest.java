@@ -0,0 +1,202 @@
+package com.danieldigiovanni.email.emailer;
+
+import com.danieldigiovanni.email.emailer.exception.ApiCallStatusException;
+import com.danieldigiovanni.email.emailer.exception.EmailerUnavailableException;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class EmailerCircuitBreakerTest {
+
+    private static final long SLOW_CALL_MILLIS = 50;
+    private static final long OPEN_MILLIS = 100;
+
+    /**
+     * A breaker with a bulkhead of 2 calls, a window of 4 calls that opens at
+     * half failed or slow calls, and 2 trial calls.
+     */
+    private final EmailerCircuitBreaker circuitBreaker = new EmailerCircuitBreaker(
+        2,
+        10,
+        4,
+        4,
+        0.5,
+        SLOW_CALL_MILLIS,
+        0.5,
+        OPEN_MILLIS,
+        2
+    );
+
+    @Test
+    public void testFailureRate_Opens() {
+        this.succeed(2);
+        this.fail(1);
+        assertEquals(EmailerCircuitBreaker.State.CLOSED, this.circuitBreaker.getState());
+
+        this.fail(1);
+        assertEquals(EmailerCircuitBreaker.State.OPEN, this.circuitBreaker.getState());
+
+        AtomicInteger calls = new AtomicInteger();
+        this.assertRejected(this.circuitBreaker.call(() -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }));
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void testSlowCallRate_Opens() {
+        this.succeed(2);
+        for (int i = 0; i < 2; i++) {
+            this.circuitBreaker.call(() -> CompletableFuture.supplyAsync(
+                () -> null,
+                CompletableFuture.delayedExecutor(
+                    SLOW_CALL_MILLIS + 20,
+                    TimeUnit.MILLISECONDS
+                )
+            )).join();
+        }
+
+        assertEquals(EmailerCircuitBreaker.State.OPEN, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void testHalfOpen_TrialCallsSucceed_Closes() throws InterruptedException {
+        this.fail(4);
+        Thread.sleep(OPEN_MILLIS + 20);
+
+        this.succeed(1);
+        assertEquals(EmailerCircuitBreaker.State.HALF_OPEN, this.circuitBreaker.getState());
+        this.succeed(1);
+        assertEquals(EmailerCircuitBreaker.State.CLOSED, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void testHalfOpen_TrialCallFails_OpensAgain() throws InterruptedException {
+        this.fail(4);
+        Thread.sleep(OPEN_MILLIS + 20);
+
+        this.fail(1);
+        assertEquals(EmailerCircuitBreaker.State.OPEN, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void testHalfOpen_CallLetThroughWhileClosed_NotCountedAsTrial() throws InterruptedException {
+        CompletableFuture<Void> lateCall = new CompletableFuture<>();
+        CompletableFuture<Void> lateResult = this.circuitBreaker.call(() -> lateCall);
+
+        this.fail(4);
+        Thread.sleep(OPEN_MILLIS + 20);
+        this.succeed(1);
+        assertEquals(EmailerCircuitBreaker.State.HALF_OPEN, this.circuitBreaker.getState());
+
+        lateCall.completeExceptionally(new IllegalStateException("Provider down"));
+        assertThrows(CompletionException.class, lateResult::join);
+        assertEquals(EmailerCircuitBreaker.State.HALF_OPEN, this.circuitBreaker.getState());
+
+        this.succeed(1);
+        assertEquals(EmailerCircuitBreaker.State.CLOSED, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void testClientErrors_NotRecorded() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        this.circuitBreaker.bindTo(registry);
+
+        this.failWith(HttpStatus.BAD_REQUEST, 4);
+        this.failWith(HttpStatus.UNPROCESSABLE_ENTITY, 4);
+        assertEquals(EmailerCircuitBreaker.State.CLOSED, this.circuitBreaker.getState());
+        assertEquals(8, registry.get("emailer.circuit.client.errors").functionCounter().count());
+        assertEquals(0, registry.get("emailer.circuit.failed").functionCounter().count());
+
+        this.failWith(HttpStatus.SERVICE_UNAVAILABLE, 2);
+        this.failWith(HttpStatus.TOO_MANY_REQUESTS, 2);
+        assertEquals(EmailerCircuitBreaker.State.OPEN, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void testHalfOpen_ClientError_TrialGivenBack() throws InterruptedException {
+        this.fail(4);
+        Thread.sleep(OPEN_MILLIS + 20);
+
+        this.failWith(HttpStatus.BAD_REQUEST, 3);
+        assertEquals(EmailerCircuitBreaker.State.HALF_OPEN, this.circuitBreaker.getState());
+
+        this.succeed(2);
+        assertEquals(EmailerCircuitBreaker.State.CLOSED, this.circuitBreaker.getState());
+    }
+
+    @Test
+    public void testBulkheadFull_Rejected() {
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        this.circuitBreaker.call(() -> first);
+        this.circuitBreaker.call(() -> second);
+
+        AtomicInteger calls = new AtomicInteger();
+        this.assertRejected(this.circuitBreaker.call(() -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }));
+        assertEquals(0, calls.get());
+
+        first.complete(null);
+        this.succeed(1);
+        assertEquals(EmailerCircuitBreaker.State.CLOSED, this.circuitBreaker.getState());
+    }
+
+    private void succeed(int calls) {
+        for (int i = 0; i < calls; i++) {
+            this.circuitBreaker.call(() -> CompletableFuture.completedFuture(null))
+                .join();
+        }
+    }
+
+    private void fail(int calls) {
+        for (int i = 0; i < calls; i++) {
+            CompletableFuture<Object> result = this.circuitBreaker.call(
+                () -> CompletableFuture.failedFuture(
+                    new IllegalStateException("Provider down")
+                )
+            );
+            assertThrows(CompletionException.class, result::join);
+        }
+    }
+
+    private void failWith(HttpStatus status, int calls) {
+        for (int i = 0; i < calls; i++) {
+            CompletableFuture<Object> result = this.circuitBreaker.call(
+                () -> CompletableFuture.failedFuture(new ApiCallStatusException(
+                    "Error calling send mail API",
+                    status,
+                    JsonNodeFactory.instance.objectNode()
+                ))
+            );
+            CompletionException exception = assertThrows(
+                CompletionException.class,
+                result::join
+            );
+            assertInstanceOf(ApiCallStatusException.class, exception.getCause());
+        }
+    }
+
+    private void assertRejected(CompletableFuture<?> result) {
+        CompletionException exception = assertThrows(
+            CompletionException.class,
+            result::join
+        );
+        assertInstanceOf(EmailerUnavailableException.class, exception.getCause());
+    }
+
+}
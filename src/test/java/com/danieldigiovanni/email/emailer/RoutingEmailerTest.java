@@ -0,0 +1,178 @@
+package com.danieldigiovanni.email.emailer;
+
+import com.danieldigiovanni.email.emailer.exception.ApiCallStatusException;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RoutingEmailerTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    public void testHealthyProviders_SplitByWeight() {
+        AtomicInteger heavyCalls = new AtomicInteger();
+        AtomicInteger lightCalls = new AtomicInteger();
+        RoutingEmailer emailer = this.createEmailer(
+            new RoutingEmailer.Provider("heavy", RoutingEmailerTest.counting(heavyCalls), 3),
+            new RoutingEmailer.Provider("light", RoutingEmailerTest.counting(lightCalls), 1)
+        );
+
+        this.send(emailer, 4000);
+
+        assertEquals(4000, heavyCalls.get() + lightCalls.get());
+        assertTrue(
+            heavyCalls.get() > 2700 && heavyCalls.get() < 3300,
+            "Heavy provider sent " + heavyCalls.get() + " of 4000 emails"
+        );
+    }
+
+    @Test
+    public void testProviderFails_FailsOverToAnother() {
+        AtomicInteger downCalls = new AtomicInteger();
+        AtomicInteger upCalls = new AtomicInteger();
+        RoutingEmailer emailer = this.createEmailer(
+            new RoutingEmailer.Provider("down", RoutingEmailerTest.failing(downCalls, new AtomicBoolean(true)), 1),
+            new RoutingEmailer.Provider("up", RoutingEmailerTest.counting(upCalls), 1)
+        );
+
+        this.send(emailer, 100);
+
+        assertEquals(100, upCalls.get());
+        assertTrue(downCalls.get() > 0);
+        assertEquals(
+            downCalls.get(),
+            this.registry.get("emailer.routing.failovers").functionCounter().count()
+        );
+        assertEquals(
+            downCalls.get(),
+            this.registry.get("emailer.routing.failed").tag("provider", "down").functionCounter().count()
+        );
+    }
+
+    @Test
+    public void testEveryProviderFails_LastFailureThrown() {
+        AtomicBoolean down = new AtomicBoolean(true);
+        RoutingEmailer emailer = this.createEmailer(
+            new RoutingEmailer.Provider("first", RoutingEmailerTest.failing(new AtomicInteger(), down), 1),
+            new RoutingEmailer.Provider("second", RoutingEmailerTest.failing(new AtomicInteger(), down), 1)
+        );
+
+        assertThrows(
+            IllegalStateException.class,
+            () -> emailer.sendEmail("customer@email.com", "Verification Code", "A1B2C3", 15)
+        );
+        assertEquals(1, this.registry.get("emailer.routing.failovers").functionCounter().count());
+    }
+
+    @Test
+    public void testClientError_ThrownWithoutFailover() {
+        AtomicInteger firstCalls = new AtomicInteger();
+        AtomicInteger secondCalls = new AtomicInteger();
+        RoutingEmailer emailer = this.createEmailer(
+            new RoutingEmailer.Provider("first", RoutingEmailerTest.rejecting(firstCalls), 1),
+            new RoutingEmailer.Provider("second", RoutingEmailerTest.rejecting(secondCalls), 1)
+        );
+
+        for (int i = 0; i < 50; i++) {
+            ApiCallStatusException exception = assertThrows(
+                ApiCallStatusException.class,
+                () -> emailer.sendEmail("invalid", "Verification Code", "A1B2C3", 15)
+            );
+            assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        }
+
+        assertEquals(50, firstCalls.get() + secondCalls.get());
+        assertEquals(0, this.registry.get("emailer.routing.failovers").functionCounter().count());
+        for (String provider : List.of("first", "second")) {
+            assertEquals(
+                0,
+                this.registry.get("emailer.routing.failed").tag("provider", provider).functionCounter().count()
+            );
+            assertEquals(
+                0,
+                this.registry.get("emailer.routing.error.rate").tag("provider", provider).gauge().value()
+            );
+        }
+    }
+
+    @Test
+    public void testUnhealthyProvider_CooledDownUntilItRecovers() {
+        AtomicInteger flakyCalls = new AtomicInteger();
+        AtomicBoolean flakyDown = new AtomicBoolean(true);
+        RoutingEmailer emailer = this.createEmailer(
+            new RoutingEmailer.Provider("flaky", RoutingEmailerTest.failing(flakyCalls, flakyDown), 1),
+            new RoutingEmailer.Provider("steady", RoutingEmailerTest.counting(new AtomicInteger()), 1)
+        );
+
+        // Once its error rate is high, the failing provider only keeps about
+        // the minimum share of its weight
+        this.send(emailer, 200);
+        flakyCalls.set(0);
+        this.send(emailer, 1000);
+        assertTrue(
+            flakyCalls.get() < 100,
+            "Failing provider was tried for " + flakyCalls.get() + " of 1000 emails"
+        );
+        assertTrue(this.share("flaky") < 0.1);
+
+        // Still probed, so it gets its traffic back once it recovers
+        flakyDown.set(false);
+        this.send(emailer, 1000);
+        assertTrue(
+            this.share("flaky") > 0.4,
+            "Recovered provider has a share of " + this.share("flaky")
+        );
+    }
+
+    private RoutingEmailer createEmailer(RoutingEmailer.Provider... providers) {
+        RoutingEmailer emailer = new RoutingEmailer(List.of(providers), 0.2);
+        emailer.bindTo(this.registry);
+        return emailer;
+    }
+
+    private void send(RoutingEmailer emailer, int emails) {
+        for (int i = 0; i < emails; i++) {
+            emailer.sendEmail("customer" + i + "@email.com", "Verification Code", "A1B2C3", 15);
+        }
+    }
+
+    private double share(String provider) {
+        return this.registry.get("emailer.routing.share").tag("provider", provider).gauge().value();
+    }
+
+    private static Emailer counting(AtomicInteger calls) {
+        return (toAddress, subject, code, duration) -> calls.incrementAndGet();
+    }
+
+    private static Emailer failing(AtomicInteger calls, AtomicBoolean down) {
+        return (toAddress, subject, code, duration) -> {
+            calls.incrementAndGet();
+            if (down.get()) {
+                throw new IllegalStateException("Provider down");
+            }
+        };
+    }
+
+    private static Emailer rejecting(AtomicInteger calls) {
+        return (toAddress, subject, code, duration) -> {
+            calls.incrementAndGet();
+            throw new ApiCallStatusException(
+                "Invalid recipient",
+                HttpStatus.BAD_REQUEST,
+                JsonNodeFactory.instance.objectNode()
+            );
+        };
+    }
+
+}
@@ -0,0 +1,296 @@
+package com.danieldigiovanni.email.emailer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class SmtpTransportPoolTest {
+
+    private FakeSmtpServer server;
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        this.server = new FakeSmtpServer();
+    }
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        this.server.close();
+    }
+
+    @Test
+    public void testIdleConnection_CheckedBeforeReuse() throws MessagingException {
+        try (SmtpTransportPool pool = this.createPool(100, 60000, 0)) {
+            pool.send(this.createMessage(pool, "customer1@email.com"));
+            pool.send(this.createMessage(pool, "customer2@email.com"));
+
+            assertEquals(1, this.count("smtp.pool.connects"));
+            assertEquals(1, this.server.noops.get());
+            assertEquals(2, this.server.messages.get());
+        }
+    }
+
+    @Test
+    public void testIdleConnectionDroppedByServer_Reconnected() throws MessagingException {
+        try (SmtpTransportPool pool = this.createPool(100, 60000, 0)) {
+            this.server.dropAfterMessages = 1;
+            pool.send(this.createMessage(pool, "customer1@email.com"));
+            pool.send(this.createMessage(pool, "customer2@email.com"));
+
+            assertEquals(2, this.count("smtp.pool.connects"));
+            assertEquals(2, this.server.messages.get());
+            assertEquals(1, this.gauge("smtp.pool.open"));
+        }
+    }
+
+    @Test
+    public void testMessagesPerConnection_Capped() throws MessagingException {
+        try (SmtpTransportPool pool = this.createPool(2, 60000, 60000)) {
+            for (int i = 0; i < 5; i++) {
+                pool.send(this.createMessage(pool, "customer" + i + "@email.com"));
+            }
+
+            assertEquals(3, this.count("smtp.pool.connects"));
+            assertEquals(5, this.count("smtp.pool.messages"));
+            assertEquals(1, this.gauge("smtp.pool.open"));
+        }
+    }
+
+    @Test
+    public void testMessagesPerConnection_CappedWithinBatch() throws MessagingException {
+        try (SmtpTransportPool pool = this.createPool(2, 60000, 60000)) {
+            List<MimeMessage> messages = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                messages.add(this.createMessage(pool, "customer" + i + "@email.com"));
+            }
+
+            List<MessagingException> failures = pool.sendAll(messages);
+
+            failures.forEach(Assertions::assertNull);
+            assertEquals(3, this.count("smtp.pool.connects"));
+            assertEquals(5, this.count("smtp.pool.messages"));
+            assertEquals(1, this.gauge("smtp.pool.open"));
+        }
+    }
+
+    @Test
+    public void testConnectionBreaksWhileSending_MessageRetriedOnAnotherTransport() throws MessagingException {
+        try (SmtpTransportPool pool = this.createPool(100, 60000, 60000)) {
+            this.server.dropAfterMessages = 1;
+            List<MimeMessage> messages = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                messages.add(this.createMessage(pool, "customer" + i + "@email.com"));
+            }
+
+            List<MessagingException> failures = pool.sendAll(messages);
+
+            failures.forEach(Assertions::assertNull);
+            assertEquals(3, this.server.messages.get());
+            assertEquals(2, this.count("smtp.pool.broken"));
+            assertEquals(3, this.count("smtp.pool.connects"));
+            assertEquals(1, this.gauge("smtp.pool.open"));
+        }
+    }
+
+    @Test
+    public void testConnectionBreaksTwice_MessageFails() throws MessagingException {
+        try (SmtpTransportPool pool = this.createPool(100, 60000, 60000)) {
+            this.server.dropBeforeMessages = true;
+
+            List<MessagingException> failures = pool.sendAll(List.of(
+                this.createMessage(pool, "customer1@email.com")
+            ));
+
+            assertNotNull(failures.get(0));
+            assertEquals(0, this.server.messages.get());
+            assertEquals(2, this.count("smtp.pool.broken"));
+            assertEquals(0, this.gauge("smtp.pool.open"));
+        }
+    }
+
+    @Test
+    public void testRecipientRejected_ConnectionKept() throws MessagingException {
+        try (SmtpTransportPool pool = this.createPool(100, 60000, 60000)) {
+            List<MessagingException> failures = pool.sendAll(List.of(
+                this.createMessage(pool, "customer1@email.com"),
+                this.createMessage(pool, "reject@email.com"),
+                this.createMessage(pool, "customer3@email.com")
+            ));
+
+            assertNull(failures.get(0));
+            assertNotNull(failures.get(1));
+            assertNull(failures.get(2));
+            assertEquals(0, this.count("smtp.pool.broken"));
+            assertEquals(1, this.count("smtp.pool.connects"));
+        }
+    }
+
+    private SmtpTransportPool createPool(int maximumMessagesPerConnection, long idleTimeoutMillis, long validateAfterInactivityMillis) {
+        Properties properties = new Properties();
+        properties.put("mail.smtp.auth", "true");
+        properties.put("mail.smtp.connectiontimeout", "2000");
+        properties.put("mail.smtp.timeout", "2000");
+
+        SmtpTransportPool pool = new SmtpTransportPool(
+            Session.getInstance(properties),
+            "localhost",
+            this.server.getPort(),
+            "username",
+            "password",
+            2,
+            maximumMessagesPerConnection,
+            idleTimeoutMillis,
+            validateAfterInactivityMillis,
+            1000
+        );
+        pool.bindTo(this.registry);
+        return pool;
+    }
+
+    private MimeMessage createMessage(SmtpTransportPool pool, String toAddress) throws MessagingException {
+        MimeMessage message = new MimeMessage(pool.getSession());
+        message.setFrom(new InternetAddress("noreply@myemail.com"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress(toAddress));
+        message.setSubject("Verification Code");
+        message.setText("A1B2C3");
+        return message;
+    }
+
+    private double count(String name) {
+        return this.registry.get(name).functionCounter().count();
+    }
+
+    private double gauge(String name) {
+        return this.registry.get(name).gauge().value();
+    }
+
+    /**
+     * A minimal SMTP server that accepts every message, except those to
+     * {@code reject@email.com}, and counts the messages and {@code NOOP}s it
+     * receives.
+     */
+    private static class FakeSmtpServer implements AutoCloseable {
+
+        private final ServerSocket serverSocket = new ServerSocket(0);
+        private final AtomicInteger messages = new AtomicInteger();
+        private final AtomicInteger noops = new AtomicInteger();
+        /**
+         * Closes each connection after this many messages, 0 to never close.
+         */
+        private volatile int dropAfterMessages = 0;
+        /**
+         * Closes each connection when a message is about to be sent.
+         */
+        private volatile boolean dropBeforeMessages = false;
+
+        private FakeSmtpServer() throws IOException {
+            Thread acceptor = new Thread(this::acceptUntilClosed, "fake-smtp-server");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private int getPort() {
+            return this.serverSocket.getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.serverSocket.close();
+        }
+
+        private void acceptUntilClosed() {
+            while (!this.serverSocket.isClosed()) {
+                try {
+                    Socket socket = this.serverSocket.accept();
+                    Thread handler = new Thread(() -> this.handle(socket));
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException exception) {
+                    return;
+                }
+            }
+        }
+
+        private void handle(Socket socket) {
+            try (socket) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(),
+                    StandardCharsets.ISO_8859_1
+                ));
+                OutputStream out = socket.getOutputStream();
+                FakeSmtpServer.reply(out, "220 localhost ESMTP");
+
+                int received = 0;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.toUpperCase();
+                    if (command.startsWith("EHLO")) {
+                        FakeSmtpServer.reply(out, "250-localhost\r\n250 AUTH PLAIN");
+                    } else if (command.equals("AUTH PLAIN")) {
+                        FakeSmtpServer.reply(out, "334 ");
+                        in.readLine();
+                        FakeSmtpServer.reply(out, "235 Authenticated");
+                    } else if (command.startsWith("AUTH PLAIN ")) {
+                        FakeSmtpServer.reply(out, "235 Authenticated");
+                    } else if (command.startsWith("RCPT TO") && command.contains("REJECT@")) {
+                        FakeSmtpServer.reply(out, "550 No such user");
+                    } else if (command.equals("DATA") && this.dropBeforeMessages) {
+                        return;
+                    } else if (command.equals("DATA")) {
+                        FakeSmtpServer.reply(out, "354 End data with .");
+                        while (!".".equals(in.readLine())) {
+                            // Skips the message
+                        }
+                        this.messages.incrementAndGet();
+                        FakeSmtpServer.reply(out, "250 Queued");
+                        if (++received == this.dropAfterMessages) {
+                            return;
+                        }
+                    } else if (command.equals("NOOP")) {
+                        this.noops.incrementAndGet();
+                        FakeSmtpServer.reply(out, "250 OK");
+                    } else if (command.equals("QUIT")) {
+                        FakeSmtpServer.reply(out, "221 Bye");
+                        return;
+                    } else {
+                        FakeSmtpServer.reply(out, "250 OK");
+                    }
+                }
+            } catch (IOException exception) {
+                // The client went away
+            }
+        }
+
+        private static void reply(OutputStream out, String reply) throws IOException {
+            out.write((reply + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+        }
+
+    }
+
+}
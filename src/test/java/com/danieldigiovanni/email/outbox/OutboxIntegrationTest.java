@@ -0,0 +1,178 @@
+package com.danieldigiovanni.email.outbox;
+
+import com.danieldigiovanni.email.AddServletPathRequestPostProcessor;
+import com.danieldigiovanni.email.TestUtils;
+import com.danieldigiovanni.email.auth.dto.AuthResponse;
+import com.danieldigiovanni.email.auth.dto.RegisterRequest;
+import com.danieldigiovanni.email.code.dto.SendCodeRequest;
+import com.danieldigiovanni.email.emailer.Emailer;
+import com.danieldigiovanni.email.outbox.dto.DeadLetterResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class OutboxIntegrationTest {
+
+    @SpyBean
+    private Emailer emailer;
+
+    private final MockMvc mockMvc;
+
+    private String customerToken;
+    private String operatorToken;
+
+    @Autowired
+    public OutboxIntegrationTest(MockMvc mockMvc) {
+        this.mockMvc = mockMvc;
+    }
+
+    @BeforeAll
+    public void registerCustomersAndGetTokens() throws Exception {
+        this.customerToken = this.register("customer4.1@email.com");
+        this.operatorToken = this.register("operator@email.com");
+    }
+
+    @Test
+    public void testFailedEmail_DeadLetteredAndReplayed() throws Exception {
+        doThrow(new IllegalStateException("Provider down"))
+            .when(this.emailer)
+            .sendEmail(eq("dead1@email.com"), anyString(), anyString(), any());
+
+        SendCodeRequest sendCodeRequest = new SendCodeRequest();
+        sendCodeRequest.setEmail("dead1@email.com");
+        sendCodeRequest.setLength(6);
+        sendCodeRequest.setMaximumAttempts(5);
+        sendCodeRequest.setMaximumDurationInMinutes(10);
+
+        String path = "/code/send";
+        this.mockMvc.perform(
+                post(path)
+                    .with(new AddServletPathRequestPostProcessor(path))
+                    .header("Authorization", "Bearer " + this.customerToken)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtils.generateJson(sendCodeRequest))
+            )
+            .andExpect(status().isOk());
+
+        // Every attempt fails, until the message is given up on
+        verify(this.emailer, timeout(10000).times(3))
+            .sendEmail(eq("dead1@email.com"), anyString(), anyString(), any());
+        DeadLetterResponse deadLetter = null;
+        for (int i = 0; i < 50 && deadLetter == null; i++) {
+            deadLetter = this.findDeadLetter("dead1@email.com").orElse(null);
+            Thread.sleep(100);
+        }
+        assertTrue(deadLetter != null);
+        assertEquals(3, deadLetter.getAttempts());
+        assertTrue(deadLetter.getLastError().contains("Provider down"));
+
+        // Once the provider is back, the dead letter is sent again
+        doCallRealMethod()
+            .when(this.emailer)
+            .sendEmail(eq("dead1@email.com"), anyString(), anyString(), any());
+
+        path = "/outbox/dead-letters/" + deadLetter.getId() + "/replay";
+        this.mockMvc.perform(
+                post(path)
+                    .with(new AddServletPathRequestPostProcessor(path))
+                    .header("Authorization", "Bearer " + this.operatorToken)
+            )
+            .andExpect(status().isNoContent());
+
+        verify(this.emailer, timeout(5000).times(4))
+            .sendEmail(eq("dead1@email.com"), anyString(), anyString(), any());
+        assertTrue(this.findDeadLetter("dead1@email.com").isEmpty());
+
+        this.mockMvc.perform(
+                post(path)
+                    .with(new AddServletPathRequestPostProcessor(path))
+                    .header("Authorization", "Bearer " + this.operatorToken)
+            )
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testGetDeadLetters_NotAnOperator() throws Exception {
+        String path = "/outbox/dead-letters";
+        this.mockMvc.perform(
+                get(path)
+                    .with(new AddServletPathRequestPostProcessor(path))
+                    .header("Authorization", "Bearer " + this.customerToken)
+            )
+            .andExpect(status().isForbidden());
+    }
+
+    private Optional<DeadLetterResponse> findDeadLetter(String toAddress) throws Exception {
+        String path = "/outbox/dead-letters";
+        MvcResult result = this.mockMvc.perform(
+                get(path)
+                    .with(new AddServletPathRequestPostProcessor(path))
+                    .header("Authorization", "Bearer " + this.operatorToken)
+            )
+            .andExpect(status().isOk())
+            .andReturn();
+
+        List<DeadLetterResponse> deadLetters = Arrays.asList(
+            new ObjectMapper().readValue(
+                result.getResponse().getContentAsString(),
+                DeadLetterResponse[].class
+            )
+        );
+        return deadLetters.stream()
+            .filter(deadLetter -> deadLetter.getToAddress().equals(toAddress))
+            .findFirst();
+    }
+
+    private String register(String email) throws Exception {
+        String path = "/register";
+        RegisterRequest registerBody = new RegisterRequest(
+            "Customer",
+            email,
+            "Password123",
+            "Password123"
+        );
+
+        MvcResult response = this.mockMvc.perform(
+                post(path)
+                    .with(new AddServletPathRequestPostProcessor(path))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(TestUtils.generateJson(registerBody))
+            )
+            .andExpect(status().isOk())
+            .andReturn();
+
+        return TestUtils.parseJson(
+            response.getResponse().getContentAsString(),
+            AuthResponse.class
+        ).getToken();
+    }
+
+}